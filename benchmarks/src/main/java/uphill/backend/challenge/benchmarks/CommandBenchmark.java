@@ -0,0 +1,83 @@
+package uphill.backend.challenge.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uphill.backend.challenge.handlers.CommandDispatcher;
+import uphill.backend.challenge.handlers.CommandLine;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol lines going through tokenizing and dispatch into a graph with the server's default
+ * settings, the same path a session handler takes for every line it reads. Replies go to a
+ * session that discards them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    private static final int SIZE = 10000;
+    private static final int LINES = 1024;
+
+    CommandDispatcher dispatcher;
+    Session session = SyntheticGraph.discardingSession();
+    CommandLine command = new CommandLine();
+    String[] shortestPathLines = new String[LINES];
+    String[] closerThanLines = new String[LINES];
+    String[] addExistingNodeLines = new String[LINES];
+    int next;
+
+    @Setup
+    public void buildGraph() {
+        Graph graph = SyntheticGraph.build(GraphShape.SPARSE_RANDOM, SIZE, 42);
+        dispatcher = new CommandDispatcher(graph);
+        dispatcher.register(session);
+        Random random = new Random(7);
+        for (int i = 0; i < LINES; i++) {
+            String source = SyntheticGraph.nodeName(random.nextInt(SIZE));
+            String target = SyntheticGraph.nodeName(random.nextInt(SIZE));
+            shortestPathLines[i] = "SHORTEST PATH " + source + " " + target;
+            closerThanLines[i] = "CLOSER THAN 100 " + source;
+            addExistingNodeLines[i] = "ADD NODE " + target;
+        }
+    }
+
+    @Benchmark
+    public void shortestPath() {
+        dispatcher.dispatch(session, command, shortestPathLines[nextLine()]);
+    }
+
+    @Benchmark
+    public void closerThan() {
+        dispatcher.dispatch(session, command, closerThanLines[nextLine()]);
+    }
+
+    @Benchmark
+    public void addExistingNode() {
+        dispatcher.dispatch(session, command, addExistingNodeLines[nextLine()]);
+    }
+
+    @Benchmark
+    public void unknownCommand() {
+        dispatcher.dispatch(session, command, "WHAT IS THE SHORTEST PATH");
+    }
+
+    private int nextLine() {
+        return next++ & (LINES - 1);
+    }
+}
@@ -0,0 +1,91 @@
+package uphill.backend.challenge.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single mutations against a freshly built graph. Every iteration starts from the same graph and
+ * reports the time of {@value #OPERATIONS} consecutive mutations, so removals never run out of
+ * nodes and additions never pile up across iterations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = GraphMutationBenchmark.OPERATIONS)
+@Measurement(iterations = 10, batchSize = GraphMutationBenchmark.OPERATIONS)
+@Fork(1)
+public class GraphMutationBenchmark {
+
+    static final int OPERATIONS = 1000;
+
+    @Param({"SPARSE_RANDOM", "GRID", "SCALE_FREE"})
+    GraphShape shape;
+
+    @Param({"1000", "100000"})
+    int size;
+
+    Graph graph;
+    Session session = SyntheticGraph.discardingSession();
+    String[] sources = new String[OPERATIONS];
+    String[] targets = new String[OPERATIONS];
+    int[] weights = new int[OPERATIONS];
+    String[] newNodes = new String[OPERATIONS];
+    int next;
+
+    @Setup(Level.Trial)
+    public void pickOperands() {
+        Random random = new Random(7);
+        // Distinct nodes to remove, the first OPERATIONS entries of a random permutation
+        int[] nodes = new int[size];
+        for (int i = 0; i < size; i++) {
+            nodes[i] = i;
+        }
+        for (int i = 0; i < OPERATIONS; i++) {
+            int swap = i + random.nextInt(size - i);
+            int node = nodes[swap];
+            nodes[swap] = nodes[i];
+            nodes[i] = node;
+            sources[i] = SyntheticGraph.nodeName(node);
+            targets[i] = SyntheticGraph.nodeName(random.nextInt(size));
+            weights[i] = 1 + random.nextInt(SyntheticGraph.MAX_WEIGHT);
+            newNodes[i] = "NEW" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void buildGraph() {
+        graph = SyntheticGraph.build(shape, size, 42);
+        next = 0;
+    }
+
+    @Benchmark
+    public void addNode() {
+        graph.addNode(newNodes[next++], session);
+    }
+
+    @Benchmark
+    public void addEdge() {
+        int i = next++;
+        graph.addEdge(sources[i], targets[i], weights[i], session);
+    }
+
+    @Benchmark
+    public void removeNode() {
+        graph.removeNode(sources[next++], session);
+    }
+}
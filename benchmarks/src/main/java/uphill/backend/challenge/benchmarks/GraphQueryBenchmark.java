@@ -0,0 +1,93 @@
+package uphill.backend.challenge.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries on a graph that does not change. The reply cache and hot sources are disabled so every
+ * call runs a search; landmarks are selected in the background during warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphQueryBenchmark {
+
+    private static final int PAIRS = 1024;
+    private static final int ROUTES = 10;
+
+    @Param({"SPARSE_RANDOM", "GRID", "SCALE_FREE"})
+    GraphShape shape;
+
+    @Param({"1000", "100000"})
+    int size;
+
+    @Param({"100", "300"})
+    int distance;
+
+    Graph graph;
+    String[] sources = new String[PAIRS];
+    String[] targets = new String[PAIRS];
+
+    @Setup
+    public void buildGraph() {
+        graph = new Graph(0, Graph.DEFAULT_LANDMARKS, 0);
+        SyntheticGraph.fill(graph, shape, size, 42);
+        Random random = new Random(7);
+        for (int i = 0; i < PAIRS; i++) {
+            sources[i] = SyntheticGraph.nodeName(random.nextInt(size));
+            targets[i] = SyntheticGraph.nodeName(random.nextInt(size));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        final Session session = SyntheticGraph.discardingSession();
+        int next;
+
+        int nextPair() {
+            return next++ & (PAIRS - 1);
+        }
+    }
+
+    @Benchmark
+    public void shortestPath(Client client) {
+        int i = client.nextPair();
+        graph.shortestPath(sources[i], targets[i], client.session);
+    }
+
+    @Benchmark
+    public void shortestRoute(Client client) {
+        int i = client.nextPair();
+        graph.shortestRoute(sources[i], targets[i], client.session);
+    }
+
+    // Compare with ROUTES times shortestRoute
+    @Benchmark
+    public void shortestRoutes(Client client) {
+        int i = client.nextPair();
+        graph.shortestRoutes(ROUTES, sources[i], targets[i], client.session);
+    }
+
+    @Benchmark
+    public void findNodesCloserThan(Client client) {
+        graph.findNodesCloserThan(distance, sources[client.nextPair()], client.session);
+    }
+}
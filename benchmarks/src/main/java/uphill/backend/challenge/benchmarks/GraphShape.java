@@ -0,0 +1,13 @@
+package uphill.backend.challenge.benchmarks;
+
+/**
+ * Topologies of the synthetic graphs the benchmarks run on.
+ */
+public enum GraphShape {
+    // Four edges from every node to random other nodes
+    SPARSE_RANDOM,
+    // Square grid with edges both ways between horizontal and vertical neighbours
+    GRID,
+    // Preferential attachment, a few hubs collect most of the edges
+    SCALE_FREE
+}
@@ -0,0 +1,48 @@
+package uphill.backend.challenge.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import uphill.backend.challenge.metrics.CommandType;
+import uphill.backend.challenge.metrics.ServerMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording one command's timings, shared by several threads as in the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+
+    ServerMetrics metrics = new ServerMetrics();
+
+    @State(Scope.Thread)
+    public static class Timings {
+
+        long value = 1000;
+
+        long next() {
+            // Spread over a few buckets like real timings
+            value = value * 1103515245 + 12345;
+            return (value >>> 40) & 0xFFFF;
+        }
+    }
+
+    @Benchmark
+    public void recordCommand(Timings timings) {
+        metrics.recordCommand(CommandType.SHORTEST, timings.next(), 0, timings.next(), timings.next());
+    }
+}
@@ -0,0 +1,82 @@
+package uphill.backend.challenge.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.DeltaSteppingSearch;
+import uphill.backend.challenge.engine.ShortestPathSearch;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-source searches settling everything within a radius, sequential Dijkstra against
+ * delta-stepping on a pool of the given parallelism. Comparing the parallelism values shows how
+ * the parallel search scales with cores; {@code dijkstra} does not depend on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelSearchBenchmark {
+
+    private static final int SOURCES = 64;
+
+    @Param({"SPARSE_RANDOM", "GRID", "SCALE_FREE"})
+    GraphShape shape;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"1", "2", "4", "8"})
+    int parallelism;
+
+    @Param({"300", "1000"})
+    int radius;
+
+    CsrGraph graph;
+    ForkJoinPool pool;
+    DeltaSteppingSearch parallelSearch;
+    ShortestPathSearch sequentialSearch = new ShortestPathSearch();
+    int[] sources = new int[SOURCES];
+    int next;
+
+    @Setup
+    public void buildGraph() {
+        graph = SyntheticGraph.adjacency(shape, size, 42);
+        pool = new ForkJoinPool(parallelism);
+        parallelSearch = new DeltaSteppingSearch(pool);
+        Random random = new Random(7);
+        for (int i = 0; i < SOURCES; i++) {
+            sources[i] = random.nextInt(size);
+        }
+    }
+
+    @TearDown
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int deltaStepping() {
+        return parallelSearch.settleWithin(graph, sources[next++ & (SOURCES - 1)], radius);
+    }
+
+    @Benchmark
+    public int dijkstra() {
+        return sequentialSearch.settleWithin(graph, sources[next++ & (SOURCES - 1)], radius);
+    }
+}
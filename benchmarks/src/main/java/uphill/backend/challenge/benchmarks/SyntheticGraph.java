@@ -0,0 +1,149 @@
+package uphill.backend.challenge.benchmarks;
+
+import uphill.backend.challenge.engine.OutgoingAdjacency;
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.EdgeVisitor;
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds reproducible graphs of a given {@link GraphShape} and size. Nodes are named {@code N0}
+ * to {@code N<size - 1>}, edge weights are between 1 and 100.
+ */
+public class SyntheticGraph {
+
+    public static final int MAX_WEIGHT = 100;
+
+    private static final int RANDOM_OUT_DEGREE = 4;
+    private static final int ATTACHMENT_EDGES = 2;
+
+    private SyntheticGraph() {
+    }
+
+    public static String nodeName(int node) {
+        return "N" + node;
+    }
+
+    /**
+     * Graph with the server's default settings filled with the synthetic nodes and edges.
+     */
+    public static Graph build(GraphShape shape, int size, long seed) {
+        Graph graph = new Graph();
+        fill(graph, shape, size, seed);
+        return graph;
+    }
+
+    public static void fill(Graph graph, GraphShape shape, int size, long seed) {
+        graph.commit(batch(shape, size, seed), discardingSession());
+    }
+
+    public static Batch batch(GraphShape shape, int size, long seed) {
+        Random random = new Random(seed);
+        Batch batch = new Batch();
+        for (int node = 0; node < size; node++) {
+            batch.addNode(nodeName(node));
+        }
+        switch (shape) {
+            case SPARSE_RANDOM:
+                addRandomEdges(batch, size, random);
+                break;
+            case GRID:
+                addGridEdges(batch, size, random);
+                break;
+            case SCALE_FREE:
+                addPreferentialEdges(batch, size, random);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+        return batch;
+    }
+
+    /**
+     * The synthetic edges alone, with node {@code Ni} under id i, for benchmarks of the search
+     * engine without a {@link Graph} around it.
+     */
+    public static CsrGraph adjacency(GraphShape shape, int size, long seed) {
+        Batch batch = batch(shape, size, seed);
+        List<List<int[]>> edges = new ArrayList<>(size);
+        for (int node = 0; node < size; node++) {
+            edges.add(new ArrayList<>());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.kind(i) == Batch.ADD_EDGE) {
+                int from = Integer.parseInt(batch.source(i).substring(1));
+                int to = Integer.parseInt(batch.destination(i).substring(1));
+                edges.get(from).add(new int[]{to, batch.weight(i)});
+            }
+        }
+        return CsrGraph.copyOf(new OutgoingAdjacency() {
+            @Override
+            public int capacity() {
+                return size;
+            }
+
+            @Override
+            public void forEachOutgoing(int node, EdgeVisitor visitor) {
+                for (int[] edge : edges.get(node)) {
+                    visitor.visit(edge[0], edge[1]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Session whose replies are thrown away.
+     */
+    public static Session discardingSession() {
+        return new Session(UUID.randomUUID(), new PrintWriter(Writer.nullWriter()), System.currentTimeMillis());
+    }
+
+    private static void addRandomEdges(Batch batch, int size, Random random) {
+        for (int node = 0; node < size; node++) {
+            for (int i = 0; i < RANDOM_OUT_DEGREE; i++) {
+                addEdge(batch, node, random.nextInt(size), random);
+            }
+        }
+    }
+
+    private static void addGridEdges(Batch batch, int size, Random random) {
+        int side = (int) Math.ceil(Math.sqrt(size));
+        for (int node = 0; node < size; node++) {
+            if ((node + 1) % side != 0 && node + 1 < size) {
+                addEdge(batch, node, node + 1, random);
+                addEdge(batch, node + 1, node, random);
+            }
+            if (node + side < size) {
+                addEdge(batch, node, node + side, random);
+                addEdge(batch, node + side, node, random);
+            }
+        }
+    }
+
+    private static void addPreferentialEdges(Batch batch, int size, Random random) {
+        // Every edge end is listed once, so picking a random entry favours high degree nodes
+        int[] ends = new int[2 * ATTACHMENT_EDGES * size + 2];
+        int endCount = 0;
+        for (int node = 1; node < size; node++) {
+            for (int i = 0; i < ATTACHMENT_EDGES; i++) {
+                int target = endCount == 0 ? 0 : ends[random.nextInt(endCount)];
+                addEdge(batch, node, target, random);
+                addEdge(batch, target, node, random);
+                ends[endCount++] = node;
+                ends[endCount++] = target;
+            }
+        }
+    }
+
+    private static void addEdge(Batch batch, int from, int to, Random random) {
+        batch.addEdge(nodeName(from), nodeName(to), 1 + random.nextInt(MAX_WEIGHT));
+    }
+}
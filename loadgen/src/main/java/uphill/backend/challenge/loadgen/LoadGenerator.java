@@ -0,0 +1,118 @@
+package uphill.backend.challenge.loadgen;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens concurrent sessions against a running server and drives a mix of operations at a target
+ * rate, then reports throughput and latency percentiles. Operations are spread evenly over the
+ * sessions and each session sends its share on a fixed schedule, see {@link SessionWorker}.
+ */
+public class LoadGenerator {
+
+    public static final String BATCH_STARTED = "BATCH STARTED";
+    public static final String BATCH_COMMITTED = "BATCH COMMITTED";
+
+    // Time to start every session's thread before the first operation is due
+    private static final long START_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final LoadGeneratorOptions options;
+
+    public LoadGenerator(LoadGeneratorOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        LoadGeneratorOptions options;
+        try {
+            options = new LoadGeneratorOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (options.isHelp()) {
+            options.printUsage(new PrintWriter(System.out));
+            return;
+        }
+        try {
+            new LoadGenerator(options).run().print(System.out);
+        } catch (IOException | ExecutionException e) {
+            System.err.println("Load generation failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    public LoadReport run() throws IOException, InterruptedException, ExecutionException {
+        if (options.isPopulate()) {
+            populate();
+        }
+        int sessions = options.getSessions();
+        List<ProtocolClient> clients = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        try {
+            for (int i = 0; i < sessions; i++) {
+                clients.add(ProtocolClient.connect(options.getHost(), options.getPort(), "loadgen-" + i));
+            }
+            long interval = TimeUnit.SECONDS.toNanos(1) * sessions / options.getRate();
+            long start = System.nanoTime() + START_DELAY_NANOS;
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+            List<Future<SessionWorker>> futures = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                // Sessions are staggered so their operations do not all start at the same instants
+                futures.add(executor.submit(new SessionWorker(clients.get(i), options.getMix(), options.getNodes(),
+                        options.getSeed() + i, start + interval * i / sessions, interval, measureFrom, end)));
+            }
+            List<SessionWorker> workers = new ArrayList<>();
+            for (Future<SessionWorker> future : futures) {
+                workers.add(future.get());
+            }
+            long elapsed = System.nanoTime() - measureFrom;
+            return new LoadReport(sessions, options.getRate(), elapsed, workers);
+        } finally {
+            executor.shutdownNow();
+            for (ProtocolClient client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Adds the nodes and random edges between them in one batch. A graph that already has them
+     * rejects the batch and is used as it is.
+     */
+    private void populate() throws IOException {
+        Random random = new Random(options.getSeed());
+        try (ProtocolClient client = ProtocolClient.connect(options.getHost(), options.getPort(), "loadgen-populate")) {
+            String reply = client.request("BEGIN");
+            if (!BATCH_STARTED.equals(reply)) {
+                throw new IOException("Unexpected reply to BEGIN '" + reply + "'");
+            }
+            for (int node = 0; node < options.getNodes(); node++) {
+                client.send("ADD NODE " + Operation.nodeName(node));
+            }
+            for (int node = 0; node < options.getNodes(); node++) {
+                for (int i = 0; i < options.getEdgesPerNode(); i++) {
+                    client.send("ADD EDGE " + Operation.nodeName(node) + " "
+                            + Operation.randomNode(random, options.getNodes()) + " " + Operation.randomWeight(random));
+                }
+            }
+            reply = client.request("COMMIT");
+            if (!reply.startsWith(BATCH_COMMITTED)) {
+                System.err.println("Keeping the server's graph as it is, populating it failed with '" + reply + "'");
+            }
+        }
+    }
+}
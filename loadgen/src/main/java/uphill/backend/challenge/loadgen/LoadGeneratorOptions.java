@@ -0,0 +1,141 @@
+package uphill.backend.challenge.loadgen;
+
+import org.apache.commons.cli.*;
+
+import java.io.PrintWriter;
+
+public class LoadGeneratorOptions {
+
+    private static final String USAGE = "java -jar loadgen.jar [options]";
+
+    private final Options options = new Options();
+    private String host = "localhost";
+    private int port = 12345;
+    private int sessions = 16;
+    private int rate = 1000;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private OperationMix mix = OperationMix.parse(OperationMix.DEFAULT);
+    private int nodes = 1000;
+    private int edgesPerNode = 4;
+    private long seed = 1;
+    private boolean populate = true;
+    private boolean help;
+
+    /**
+     * @throws IllegalArgumentException if the arguments cannot be parsed
+     */
+    public LoadGeneratorOptions(String[] args) {
+        options.addOption("h", "host", true, "Server host (default: localhost)");
+        options.addOption("p", "port", true, "Server port (default: 12345)");
+        options.addOption("s", "sessions", true, "Number of concurrent sessions (default: 16)");
+        options.addOption("r", "rate", true, "Target operations per second over all sessions (default: 1000)");
+        options.addOption("d", "duration", true, "Seconds of measured load (default: 30)");
+        options.addOption("w", "warmup", true, "Seconds of load before measuring starts (default: 5)");
+        options.addOption(null, "mix", true, "Relative weights of add, remove, shortest and closer operations (default: " + OperationMix.DEFAULT + ")");
+        options.addOption("n", "nodes", true, "Number of nodes the operations pick from (default: 1000)");
+        options.addOption(null, "edges-per-node", true, "Random edges added from every node when populating (default: 4)");
+        options.addOption(null, "seed", true, "Seed of the random operations (default: 1)");
+        options.addOption(null, "no-populate", false, "Do not add the nodes and edges before starting, the server already has them");
+        options.addOption(null, "help", false, "Print this help");
+
+        try {
+            CommandLine cmd = new DefaultParser().parse(options, args);
+            help = cmd.hasOption("help");
+            if (cmd.hasOption("host")) {
+                host = cmd.getOptionValue("host");
+            }
+            if (cmd.hasOption("port")) {
+                port = Integer.parseInt(cmd.getOptionValue("port"));
+            }
+            if (cmd.hasOption("sessions")) {
+                sessions = positive("sessions", Integer.parseInt(cmd.getOptionValue("sessions")));
+            }
+            if (cmd.hasOption("rate")) {
+                rate = positive("rate", Integer.parseInt(cmd.getOptionValue("rate")));
+            }
+            if (cmd.hasOption("duration")) {
+                durationSeconds = positive("duration", Integer.parseInt(cmd.getOptionValue("duration")));
+            }
+            if (cmd.hasOption("warmup")) {
+                warmupSeconds = Integer.parseInt(cmd.getOptionValue("warmup"));
+            }
+            if (cmd.hasOption("mix")) {
+                mix = OperationMix.parse(cmd.getOptionValue("mix"));
+            }
+            if (cmd.hasOption("nodes")) {
+                nodes = positive("nodes", Integer.parseInt(cmd.getOptionValue("nodes")));
+            }
+            if (cmd.hasOption("edges-per-node")) {
+                edgesPerNode = Integer.parseInt(cmd.getOptionValue("edges-per-node"));
+            }
+            if (cmd.hasOption("seed")) {
+                seed = Long.parseLong(cmd.getOptionValue("seed"));
+            }
+            populate = !cmd.hasOption("no-populate");
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    public void printUsage(PrintWriter out) {
+        new HelpFormatter().printHelp(out, HelpFormatter.DEFAULT_WIDTH, USAGE, null, options,
+                HelpFormatter.DEFAULT_LEFT_PAD, HelpFormatter.DEFAULT_DESC_PAD, null);
+        out.flush();
+    }
+
+    private static int positive(String option, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("--" + option + " must be positive");
+        }
+        return value;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public OperationMix getMix() {
+        return mix;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getEdgesPerNode() {
+        return edgesPerNode;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public boolean isPopulate() {
+        return populate;
+    }
+
+    public boolean isHelp() {
+        return help;
+    }
+}
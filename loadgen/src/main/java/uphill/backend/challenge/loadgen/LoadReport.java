@@ -0,0 +1,101 @@
+package uphill.backend.challenge.loadgen;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles over the measured part of a run, merged from every session.
+ */
+public class LoadReport {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final int sessions;
+    private final int targetRate;
+    private final long elapsedNanos;
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LatencyHistogram allLatencies = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private long unexpectedReplies;
+
+    LoadReport(int sessions, int targetRate, long elapsedNanos, List<SessionWorker> workers) {
+        this.sessions = sessions;
+        this.targetRate = targetRate;
+        this.elapsedNanos = elapsedNanos;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+        for (SessionWorker worker : workers) {
+            for (Operation operation : Operation.values()) {
+                latencies.get(operation).add(worker.latencies(operation));
+                allLatencies.add(worker.latencies(operation));
+            }
+            serviceTimes.add(worker.serviceTimes());
+            unexpectedReplies += worker.unexpectedReplies();
+        }
+    }
+
+    public long getOperations() {
+        return allLatencies.getTotalCount();
+    }
+
+    public double getThroughput() {
+        return getOperations() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    public long getUnexpectedReplies() {
+        return unexpectedReplies;
+    }
+
+    /**
+     * Latencies measured from the intended start of every operation.
+     */
+    public LatencyHistogram getLatencies() {
+        return allLatencies;
+    }
+
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    /**
+     * Latencies measured from when every operation was actually sent.
+     */
+    public LatencyHistogram getServiceTimes() {
+        return serviceTimes;
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Sessions: %d, target rate: %d ops/s%n", sessions, targetRate);
+        out.printf("Throughput: %.1f ops/s (%d operations in %.1f s, %d unexpected replies)%n",
+                getThroughput(), getOperations(), elapsedNanos / 1e9, unexpectedReplies);
+        out.println();
+        out.println("Latency in ms from intended start (corrected for coordinated omission)");
+        printHeader(out);
+        for (Operation operation : Operation.values()) {
+            if (latencies.get(operation).getTotalCount() > 0) {
+                printRow(out, operation.getKey(), latencies.get(operation));
+            }
+        }
+        printRow(out, "all", allLatencies);
+        out.println();
+        out.println("Service time in ms from actual send (uncorrected)");
+        printHeader(out);
+        printRow(out, "all", serviceTimes);
+    }
+
+    private static void printHeader(PrintStream out) {
+        out.printf("%-10s %10s %10s %10s %10s %10s%n", "operation", "count", "p50", "p99", "p999", "max");
+    }
+
+    private static void printRow(PrintStream out, String name, LatencyHistogram histogram) {
+        out.printf("%-10s %10d", name, histogram.getTotalCount());
+        for (double quantile : QUANTILES) {
+            out.printf(" %10.3f", histogram.valueAtQuantile(quantile) / 1e6);
+        }
+        out.printf(" %10.3f%n", histogram.getMax() / 1e6);
+    }
+}
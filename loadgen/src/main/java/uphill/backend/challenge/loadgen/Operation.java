@@ -0,0 +1,63 @@
+package uphill.backend.challenge.loadgen;
+
+import java.util.Random;
+
+/**
+ * Kinds of protocol commands the generator sends, all between nodes of the populated key space.
+ */
+public enum Operation {
+    ADD("add") {
+        @Override
+        String line(Random random, int nodes) {
+            return "ADD EDGE " + randomNode(random, nodes) + " " + randomNode(random, nodes) + " " + randomWeight(random);
+        }
+    },
+    REMOVE("remove") {
+        @Override
+        String line(Random random, int nodes) {
+            return "REMOVE EDGE " + randomNode(random, nodes) + " " + randomNode(random, nodes);
+        }
+    },
+    SHORTEST_PATH("shortest") {
+        @Override
+        String line(Random random, int nodes) {
+            return "SHORTEST PATH " + randomNode(random, nodes) + " " + randomNode(random, nodes);
+        }
+    },
+    CLOSER_THAN("closer") {
+        @Override
+        String line(Random random, int nodes) {
+            return "CLOSER THAN " + CLOSER_THAN_DISTANCE + " " + randomNode(random, nodes);
+        }
+    };
+
+    public static final int MAX_WEIGHT = 100;
+    static final int CLOSER_THAN_DISTANCE = 2 * MAX_WEIGHT;
+
+    private final String key;
+
+    Operation(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Name of the operation in a {@link OperationMix} specification.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    abstract String line(Random random, int nodes);
+
+    public static String nodeName(int node) {
+        return "N" + node;
+    }
+
+    static String randomNode(Random random, int nodes) {
+        return nodeName(random.nextInt(nodes));
+    }
+
+    static int randomWeight(Random random) {
+        return 1 + random.nextInt(MAX_WEIGHT);
+    }
+}
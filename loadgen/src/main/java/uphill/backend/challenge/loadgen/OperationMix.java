@@ -0,0 +1,69 @@
+package uphill.backend.challenge.loadgen;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Relative weights of the operations sent, parsed from a specification like
+ * {@code add=10,remove=10,shortest=60,closer=20}. Operations left out are never sent.
+ */
+public class OperationMix {
+
+    public static final String DEFAULT = "add=10,remove=10,shortest=60,closer=20";
+
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private OperationMix(Operation[] operations, int[] cumulativeWeights) {
+        this.operations = operations;
+        this.cumulativeWeights = cumulativeWeights;
+    }
+
+    public static OperationMix parse(String specification) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : specification.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight but got '" + entry + "'");
+            }
+            Operation operation = byKey(parts[0].trim());
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + operation.getKey());
+            }
+            weights.put(operation, weight);
+        }
+        Operation[] operations = new Operation[weights.size()];
+        int[] cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            total += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulativeWeights[i++] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The operation mix has no weight");
+        }
+        return new OperationMix(operations, cumulativeWeights);
+    }
+
+    public Operation pick(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (value >= cumulativeWeights[i]) {
+            i++;
+        }
+        return operations[i];
+    }
+
+    private static Operation byKey(String key) {
+        for (Operation operation : Operation.values()) {
+            if (operation.getKey().equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation '" + key + "'");
+    }
+}
@@ -0,0 +1,78 @@
+package uphill.backend.challenge.loadgen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+
+/**
+ * One session with the server, opened with the {@code HI, I AM} handshake.
+ */
+public class ProtocolClient implements Closeable {
+
+    static final String GREETING = "HI, I AM ";
+
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final Writer writer;
+
+    private ProtocolClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socket.setTcpNoDelay(true);
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+    }
+
+    public static ProtocolClient connect(String host, int port, String name) throws IOException {
+        ProtocolClient client = new ProtocolClient(new Socket(host, port));
+        try {
+            String greeting = client.reader.readLine();
+            if (greeting == null || !greeting.startsWith(GREETING)) {
+                throw new IOException("Unexpected greeting '" + greeting + "'");
+            }
+            String reply = client.request(GREETING + name);
+            if (!("HI " + name).equals(reply)) {
+                throw new IOException("Unexpected handshake reply '" + reply + "'");
+            }
+        } catch (IOException e) {
+            client.close();
+            throw e;
+        }
+        return client;
+    }
+
+    /**
+     * Sends a line and waits for its reply.
+     */
+    public String request(String line) throws IOException {
+        send(line);
+        flush();
+        return receive();
+    }
+
+    public void send(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    public String receive() throws IOException {
+        String reply = reader.readLine();
+        if (reply == null) {
+            throw new IOException("Server closed the session");
+        }
+        return reply;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,86 @@
+package uphill.backend.challenge.loadgen;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the operations of one session on a fixed schedule. Every operation has an intended start
+ * time, and its latency is measured from that time rather than from when it was actually sent.
+ * A slow reply delays the operations queued behind it, and that wait counts toward their
+ * latency just as it would for a client that keeps issuing requests at the target rate, instead
+ * of being hidden by a generator that stops sending while it waits (coordinated omission).
+ */
+class SessionWorker implements Callable<SessionWorker> {
+
+    private final ProtocolClient client;
+    private final OperationMix mix;
+    private final int nodes;
+    private final Random random;
+    private final long firstStart;
+    private final long interval;
+    private final long measureFrom;
+    private final long end;
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private long unexpectedReplies;
+
+    /**
+     * @param firstStart  intended start of the first operation, in {@link System#nanoTime()} terms
+     * @param interval    nanoseconds between intended starts
+     * @param measureFrom operations intended to start before this are warmup and not recorded
+     * @param end         no operation is intended to start at or after this
+     */
+    SessionWorker(ProtocolClient client, OperationMix mix, int nodes, long seed,
+                  long firstStart, long interval, long measureFrom, long end) {
+        this.client = client;
+        this.mix = mix;
+        this.nodes = nodes;
+        this.random = new Random(seed);
+        this.firstStart = firstStart;
+        this.interval = interval;
+        this.measureFrom = measureFrom;
+        this.end = end;
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public SessionWorker call() throws IOException {
+        for (long intended = firstStart; intended < end; intended += interval) {
+            Operation operation = mix.pick(random);
+            String line = operation.line(random, nodes);
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            String reply = client.request(line);
+            long done = System.nanoTime();
+            if (intended >= measureFrom) {
+                latencies.get(operation).record(done - intended);
+                serviceTimes.record(done - now);
+                if (reply.startsWith("SORRY")) {
+                    unexpectedReplies++;
+                }
+            }
+        }
+        return this;
+    }
+
+    LatencyHistogram latencies(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    LatencyHistogram serviceTimes() {
+        return serviceTimes;
+    }
+
+    long unexpectedReplies() {
+        return unexpectedReplies;
+    }
+}
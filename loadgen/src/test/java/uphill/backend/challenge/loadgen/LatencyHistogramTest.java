@@ -0,0 +1,66 @@
+package uphill.backend.challenge.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsKeepValuesWithinOnePercent() {
+        Random random = new Random(5);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertTrue(value <= upper);
+            assertTrue(upper - value <= value / LatencyHistogram.SUB_BUCKETS, value + " -> " + upper);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+        }
+        assertEquals(0, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(0)));
+    }
+
+    @Test
+    void quantilesMatchSortedValues() {
+        Random random = new Random(9);
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(50_000_000);
+            (i % 2 == 0 ? first : second).record(values[i]);
+        }
+        first.add(second);
+        Arrays.sort(values);
+
+        assertEquals(values.length, first.getTotalCount());
+        assertEquals(values[values.length - 1], first.getMax());
+        for (double quantile : new double[]{0.5, 0.99, 0.999}) {
+            long expected = values[(int) Math.ceil(quantile * values.length) - 1];
+            long actual = first.valueAtQuantile(quantile);
+            assertTrue(actual >= expected && actual - expected <= expected / LatencyHistogram.SUB_BUCKETS,
+                    quantile + ": " + expected + " vs " + actual);
+        }
+        assertEquals(0, new LatencyHistogram().valueAtQuantile(0.99));
+    }
+
+    @Test
+    void mixOnlyPicksWeightedOperations() {
+        OperationMix mix = OperationMix.parse("shortest=3, closer=1, add=0");
+        Random random = new Random(1);
+        int shortest = 0;
+        for (int i = 0; i < 4000; i++) {
+            Operation operation = mix.pick(random);
+            assertNotEquals(Operation.ADD, operation);
+            assertNotEquals(Operation.REMOVE, operation);
+            if (operation == Operation.SHORTEST_PATH) {
+                shortest++;
+            }
+        }
+        assertTrue(shortest > 2800 && shortest < 3200, String.valueOf(shortest));
+        assertThrows(IllegalArgumentException.class, () -> OperationMix.parse("delete=1"));
+    }
+}
@@ -0,0 +1,36 @@
+package uphill.backend.challenge.loadgen;
+
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.BlockingServer;
+import uphill.backend.challenge.handlers.CommandDispatcher;
+import uphill.backend.challenge.handlers.SessionHandler;
+import uphill.backend.challenge.handlers.SessionTimeoutWheel;
+import uphill.backend.challenge.model.Graph;
+
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+    @Test
+    void drivesTheTargetRateAgainstAServer() throws Exception {
+        try (SessionTimeoutWheel timeoutWheel = new SessionTimeoutWheel(SessionHandler.SESSION_TIMEOUT);
+             BlockingServer server = new BlockingServer(0, new CommandDispatcher(new Graph()),
+                     Executors.newCachedThreadPool(), timeoutWheel)) {
+            server.start();
+            LoadGeneratorOptions options = new LoadGeneratorOptions(new String[]{
+                    "--port", String.valueOf(server.getPort()), "--sessions", "4", "--rate", "200",
+                    "--duration", "1", "--warmup", "0", "--nodes", "50"});
+
+            LoadReport report = new LoadGenerator(options).run();
+
+            // Every operation scheduled within the second was sent and answered
+            assertEquals(200, report.getOperations());
+            assertEquals(0, report.getUnexpectedReplies());
+            assertTrue(report.getLatencies(Operation.SHORTEST_PATH).getTotalCount() > 0);
+            // Latency from the intended start includes any wait before sending
+            assertTrue(report.getLatencies().valueAtQuantile(0.99) >= report.getServiceTimes().valueAtQuantile(0.99));
+        }
+    }
+}
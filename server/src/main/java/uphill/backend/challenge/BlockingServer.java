@@ -0,0 +1,103 @@
+package uphill.backend.challenge;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.handlers.AdmissionControl;
+import uphill.backend.challenge.handlers.CommandDispatcher;
+import uphill.backend.challenge.handlers.SessionHandler;
+import uphill.backend.challenge.handlers.SessionTimeoutWheel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Accepts clients on a dedicated thread and runs one {@link SessionHandler} per client on the
+ * given executor. Clients beyond the {@link AdmissionControl}'s session limit, or that the executor
+ * refuses to queue, are told the server is busy and disconnected.
+ */
+public class BlockingServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(BlockingServer.class);
+
+    private final int port;
+    private final CommandDispatcher dispatcher;
+    private final ExecutorService executorService;
+    private final SessionTimeoutWheel timeoutWheel;
+    private final AdmissionControl admission;
+    private ServerSocket serverSocket;
+
+    public BlockingServer(int port, CommandDispatcher dispatcher, ExecutorService executorService,
+                          SessionTimeoutWheel timeoutWheel) {
+        this(port, dispatcher, executorService, timeoutWheel, AdmissionControl.UNLIMITED);
+    }
+
+    public BlockingServer(int port, CommandDispatcher dispatcher, ExecutorService executorService,
+                          SessionTimeoutWheel timeoutWheel, AdmissionControl admission) {
+        this.port = port;
+        this.dispatcher = dispatcher;
+        this.executorService = executorService;
+        this.timeoutWheel = timeoutWheel;
+        this.admission = admission;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        new Thread(this::acceptClients, "session-acceptor").start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    private void acceptClients() {
+        try {
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                if (!admission.tryAdmit()) {
+                    reject(clientSocket);
+                    continue;
+                }
+                // Start a new session for each client
+                SessionHandler sessionHandler = new SessionHandler(clientSocket, dispatcher, timeoutWheel,
+                        admission.getMaxPipelinedCommands());
+                try {
+                    executorService.execute(() -> {
+                        try {
+                            sessionHandler.run();
+                        } finally {
+                            admission.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    admission.release();
+                    reject(clientSocket);
+                }
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                LOGGER.error("Some error occurred while connecting server and client -> " + e.getMessage());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    // A fresh socket's send buffer takes the short reply without blocking the acceptor
+    private void reject(Socket clientSocket) {
+        dispatcher.getMetrics().sessionRejected();
+        try (clientSocket) {
+            clientSocket.getOutputStream().write((AdmissionControl.SERVER_BUSY + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOGGER.debug("Could not reject client -> " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package uphill.backend.challenge;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.handlers.AdmissionControl;
+import uphill.backend.challenge.handlers.CommandDispatcher;
+import uphill.backend.challenge.handlers.NioSessionHandler;
+import uphill.backend.challenge.handlers.SessionTimeoutWheel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector based front end. The first event loop accepts connections and hands them out round
+ * robin, every loop then serves its connections without a thread per client. Connections beyond
+ * the {@link AdmissionControl}'s session limit are told the server is busy and closed on accept.
+ */
+public class NioServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(NioServer.class);
+
+    private final int port;
+    private final CommandDispatcher dispatcher;
+    private final SessionTimeoutWheel timeoutWheel;
+    private final AdmissionControl admission;
+    private final EventLoop[] eventLoops;
+    private ServerSocketChannel serverChannel;
+    private int nextEventLoop;
+    private volatile boolean running;
+
+    public NioServer(int port, CommandDispatcher dispatcher, SessionTimeoutWheel timeoutWheel, int eventLoopCount) {
+        this(port, dispatcher, timeoutWheel, eventLoopCount, AdmissionControl.UNLIMITED);
+    }
+
+    public NioServer(int port, CommandDispatcher dispatcher, SessionTimeoutWheel timeoutWheel, int eventLoopCount,
+                     AdmissionControl admission) {
+        this.port = port;
+        this.dispatcher = dispatcher;
+        this.timeoutWheel = timeoutWheel;
+        this.admission = admission;
+        this.eventLoops = new EventLoop[Math.max(1, eventLoopCount)];
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        running = true;
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop(Selector.open());
+        }
+        serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+        for (int i = 0; i < eventLoops.length; i++) {
+            Thread thread = new Thread(eventLoops[i], "nio-event-loop-" + i);
+            thread.start();
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.selector.wakeup();
+            }
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (!admission.tryAdmit()) {
+                reject(channel);
+                continue;
+            }
+            channel.configureBlocking(false);
+            EventLoop eventLoop = eventLoops[nextEventLoop];
+            nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            eventLoop.pendingChannels.add(channel);
+            eventLoop.selector.wakeup();
+        }
+    }
+
+    // Still blocking, the fresh channel writes the short reply in full
+    private void reject(SocketChannel channel) {
+        dispatcher.getMetrics().sessionRejected();
+        try (channel) {
+            channel.write(ByteBuffer.wrap((AdmissionControl.SERVER_BUSY + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            LOGGER.debug("Could not reject client -> " + e.getMessage());
+        }
+    }
+
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerPendingChannels();
+                    runTasks();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Event loop stopped after an error -> " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioSessionHandler) {
+                        ((NioSessionHandler) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOGGER.error(e.getMessage());
+                }
+            }
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                NioSessionHandler handler = null;
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    handler = new NioSessionHandler(channel, key, dispatcher, admission);
+                    key.attach(handler);
+                    // Expired sessions are closed on this loop, which owns the handler
+                    NioSessionHandler opened = handler;
+                    handler.open(timeoutWheel.register(() -> execute(opened::expire)));
+                } catch (IOException e) {
+                    LOGGER.error("Some error occurred while connecting server and client -> " + e.getMessage());
+                    if (handler != null) {
+                        handler.close();
+                        continue;
+                    }
+                    admission.release();
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // already failing, nothing left to release
+                    }
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                try {
+                    accept();
+                } catch (IOException e) {
+                    LOGGER.error("Some error occurred while connecting server and client -> " + e.getMessage());
+                }
+                return;
+            }
+            NioSessionHandler handler = (NioSessionHandler) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    handler.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    handler.onWritable();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Some error occurred and client disconnected. (" + e.getMessage() + ")");
+                handler.close();
+            }
+        }
+
+        private void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+}
@@ -3,21 +3,43 @@ package uphill.backend.challenge;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import uphill.backend.challenge.command.CommandLineOptions;
+import uphill.backend.challenge.handlers.AdmissionControl;
+import uphill.backend.challenge.handlers.CommandDispatcher;
 import uphill.backend.challenge.handlers.SessionHandler;
+import uphill.backend.challenge.handlers.SessionTimeoutWheel;
+import uphill.backend.challenge.metrics.ReplicationMetrics;
+import uphill.backend.challenge.metrics.ServerMetrics;
+import uphill.backend.challenge.metrics.StatsReporter;
 import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
+import uphill.backend.challenge.model.MutationLog;
+import uphill.backend.challenge.persistence.GraphPersistence;
+import uphill.backend.challenge.persistence.WriteAheadLog;
+import uphill.backend.challenge.replication.ReplicationFollower;
+import uphill.backend.challenge.replication.ReplicationLeader;
+import uphill.backend.challenge.replication.ReplicationLog;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class Server {
 
     private static final Logger LOGGER = Logger.getLogger(Server.class);
-    private static final int PORT = 12345;
-    private static final int MAX_THREADS = 100;
+    public static final int DEFAULT_PORT = 12345;
+    public static final int MAX_THREADS = 100;
+    public static final int DEFAULT_MAX_QUEUED_SESSIONS = 100;
     public static final String SERVER_STARTED = "Server started. Listening on port ";
+    public static final String NAMED_GRAPHS_DIRECTORY = "graphs";
+    private static final String QUERY_CACHE_BEAN = "uphill.backend.challenge:type=QueryCache";
 
     public static void main(String[] args) {
         CommandLineOptions commandLineOptions = new CommandLineOptions(args);
@@ -31,24 +53,168 @@ public class Server {
         } else {
             Logger.getRootLogger().setLevel(Level.INFO);
         }
-        startServer();
+        startServer(commandLineOptions);
     }
 
-    private static void startServer() {
-        ExecutorService executorService = Executors.newFixedThreadPool(MAX_THREADS);
-        Graph graph = new Graph();
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            LOGGER.info(SERVER_STARTED + PORT);
-            while (true) {
-                Socket clientSocket = serverSocket.accept();
-                // Start a new session for each client
-                SessionHandler sessionHandler = new SessionHandler(clientSocket, graph);
-                executorService.submit(sessionHandler);
+    private static void startServer(CommandLineOptions commandLineOptions) {
+        boolean follower = commandLineOptions.getLeaderHost() != null;
+        if (follower && commandLineOptions.getReplicationPort() > 0) {
+            LOGGER.error("A replication follower cannot lead replication as well");
+            return;
+        }
+        Graph graph = createGraph(commandLineOptions);
+        registerMBean(graph.getQueryCache(), QUERY_CACHE_BEAN);
+        GraphPersistence persistence = null;
+        if (follower && commandLineOptions.getDataDir() != null) {
+            LOGGER.warn("Replication followers keep their graph in memory, ignoring the data directory");
+        } else if (commandLineOptions.getDataDir() != null) {
+            try {
+                persistence = openPersistence(graph, Paths.get(commandLineOptions.getDataDir()), commandLineOptions);
+            } catch (IOException e) {
+                LOGGER.error("Could not recover the graph from " + commandLineOptions.getDataDir() + " -> " + e.getMessage());
+                return;
+            }
+        }
+        ServerMetrics metrics = new ServerMetrics();
+        GraphRegistry graphs;
+        if (follower) {
+            // Only the default graph is replicated, and mutations run on the follower thread
+            graphs = new GraphRegistry(graph, name -> {
+                throw new IOException("only the default graph is replicated");
+            }, 0);
+            ReplicationMetrics replication = ReplicationMetrics.follower();
+            metrics.setReplication(replication);
+            new ReplicationFollower(commandLineOptions.getLeaderHost(), commandLineOptions.getLeaderPort(), graphs,
+                    () -> createReplicaGraph(commandLineOptions), replication);
+        } else {
+            graphs = new GraphRegistry(graph, name -> createNamedGraph(name, commandLineOptions),
+                    commandLineOptions.getShards());
+            if (commandLineOptions.getReplicationPort() > 0) {
+                try {
+                    startReplicationLeader(graph, persistence, metrics, commandLineOptions.getReplicationPort());
+                } catch (IOException e) {
+                    LOGGER.error("Could not lead replication on port " + commandLineOptions.getReplicationPort()
+                            + " -> " + e.getMessage());
+                    return;
+                }
             }
+        }
+        if (commandLineOptions.getStatsInterval() > 0) {
+            new StatsReporter(metrics, graph.getLockTimes(), commandLineOptions.getStatsInterval());
+        }
+        CommandDispatcher dispatcher = new CommandDispatcher(graphs, metrics, follower);
+        SessionTimeoutWheel timeoutWheel = new SessionTimeoutWheel(SessionHandler.SESSION_TIMEOUT);
+        int port = commandLineOptions.getPort();
+        AdmissionControl admission = new AdmissionControl(commandLineOptions.getMaxSessions(),
+                commandLineOptions.getMaxPipelinedCommands());
+        switch (commandLineOptions.getMode()) {
+            case NIO:
+                startNioServer(port, dispatcher, timeoutWheel, commandLineOptions.getEventLoops(), admission);
+                break;
+            case VIRTUAL:
+                startBlockingServer(port, dispatcher, timeoutWheel, SessionExecutors.newVirtualThreadPerTaskExecutor(),
+                        admission);
+                break;
+            default:
+                startBlockingServer(port, dispatcher, timeoutWheel,
+                        newSessionThreadPool(commandLineOptions.getMaxQueuedSessions()), admission);
+        }
+    }
+
+    // Sessions beyond the pool's threads wait in a bounded queue, so a full server refuses clients
+    static ExecutorService newSessionThreadPool(int maxQueuedSessions) {
+        return new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 0, TimeUnit.MILLISECONDS,
+                maxQueuedSessions > 0 ? new ArrayBlockingQueue<>(maxQueuedSessions) : new LinkedBlockingQueue<>());
+    }
+
+    // Logs the default graph's mutations for followers as well as to its mutation log, if any
+    private static void startReplicationLeader(Graph graph, GraphPersistence persistence, ServerMetrics metrics,
+                                               int port) throws IOException {
+        ReplicationLog log = new ReplicationLog(persistence == null ? MutationLog.NONE : persistence.getLog());
+        graph.setMutationLog(log);
+        ReplicationMetrics replication = ReplicationMetrics.leader(log::sequence);
+        metrics.setReplication(replication);
+        ReplicationLeader leader = new ReplicationLeader(port, graph, log, replication);
+        LOGGER.info("Leading replication on port " + leader.getPort());
+    }
+
+    private static void startNioServer(int port, CommandDispatcher dispatcher, SessionTimeoutWheel timeoutWheel,
+                                       int eventLoops, AdmissionControl admission) {
+        NioServer nioServer = new NioServer(port, dispatcher, timeoutWheel, eventLoops, admission);
+        try {
+            nioServer.start();
+            LOGGER.info(SERVER_STARTED + port + " with " + eventLoops + " event loop(s)");
+        } catch (IOException e) {
+            LOGGER.error("Some error occurred while connecting server and client -> " + e.getMessage());
+        }
+    }
+
+    private static void startBlockingServer(int port, CommandDispatcher dispatcher, SessionTimeoutWheel timeoutWheel,
+                                            ExecutorService executorService, AdmissionControl admission) {
+        BlockingServer blockingServer = new BlockingServer(port, dispatcher, executorService, timeoutWheel, admission);
+        try {
+            blockingServer.start();
+            LOGGER.info(SERVER_STARTED + port);
         } catch (IOException e) {
             LOGGER.error("Some error occurred while connecting server and client -> " + e.getMessage());
-        } finally {
             executorService.shutdown();
         }
     }
+
+    private static Graph createGraph(CommandLineOptions commandLineOptions) {
+        Graph graph = new Graph(commandLineOptions.getQueryCacheSize(), commandLineOptions.getLandmarks(),
+                commandLineOptions.getHotSources(), commandLineOptions.getStorage());
+        graph.setParallelSearchNodes(commandLineOptions.getParallelSearchNodes());
+        graph.setContractionHierarchy(commandLineOptions.isContractionHierarchy());
+        graph.setQueryBudget(commandLineOptions.getQueryMaxNodes(), commandLineOptions.getQueryMaxMillis());
+        return graph;
+    }
+
+    // Every snapshot from the leader comes as a new graph, which takes over the default graph's bean
+    private static Graph createReplicaGraph(CommandLineOptions commandLineOptions) {
+        Graph graph = createGraph(commandLineOptions);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(QUERY_CACHE_BEAN));
+        } catch (JMException e) {
+            LOGGER.debug("Could not unregister " + QUERY_CACHE_BEAN + " -> " + e.getMessage());
+        }
+        registerMBean(graph.getQueryCache(), QUERY_CACHE_BEAN);
+        return graph;
+    }
+
+    // Graphs other than the default one are kept in their own directory under the data directory
+    private static Graph createNamedGraph(String name, CommandLineOptions commandLineOptions) throws IOException {
+        Graph graph = createGraph(commandLineOptions);
+        if (commandLineOptions.getDataDir() != null) {
+            openPersistence(graph, Paths.get(commandLineOptions.getDataDir(), NAMED_GRAPHS_DIRECTORY, name),
+                    commandLineOptions);
+        }
+        registerMBean(graph.getQueryCache(), QUERY_CACHE_BEAN + ",graph=" + name);
+        LOGGER.info("Created graph '" + name + "'");
+        return graph;
+    }
+
+    // Recovers the graph from the directory and keeps it durable there
+    private static GraphPersistence openPersistence(Graph graph, Path directory, CommandLineOptions commandLineOptions)
+            throws IOException {
+        GraphPersistence persistence = GraphPersistence.open(directory, graph,
+                commandLineOptions.getFsyncInterval(), WriteAheadLog.DEFAULT_SEGMENT_BYTES,
+                commandLineOptions.getSnapshotInterval());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                persistence.close();
+            } catch (IOException e) {
+                LOGGER.error("Some error occurred while closing the mutation log -> " + e.getMessage());
+            }
+        }));
+        return persistence;
+    }
+
+    private static void registerMBean(Object bean, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+        } catch (JMException e) {
+            LOGGER.error("Could not register " + name + " -> " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,10 @@
+package uphill.backend.challenge;
+
+public enum ServerMode {
+    // One thread per connected client, taken from a fixed pool
+    BLOCKING,
+    // Same blocking sessions, each on its own virtual thread (Java 21+)
+    VIRTUAL,
+    // A few selector event loops serving every client
+    NIO
+}
@@ -0,0 +1,48 @@
+package uphill.backend.challenge;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executor that runs blocking {@link uphill.backend.challenge.handlers.SessionHandler}s.
+ * Virtual threads are looked up reflectively so the server still builds and runs on Java 17.
+ */
+public class SessionExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionExecutors.class);
+
+    private SessionExecutors() {
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return virtualThreadFactoryMethod() != null;
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor on Java 21 and later, otherwise an unbounded
+     * cached thread pool so the session count is still not capped.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        Method method = virtualThreadFactoryMethod();
+        if (method != null) {
+            try {
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.error("Could not create virtual thread executor -> " + e.getMessage());
+            }
+        }
+        LOGGER.warn("Virtual threads need Java 21 or later, falling back to a cached thread pool");
+        return Executors.newCachedThreadPool();
+    }
+
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
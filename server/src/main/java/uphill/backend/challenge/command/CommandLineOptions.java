@@ -3,27 +3,240 @@ package uphill.backend.challenge.command;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
 import uphill.backend.challenge.Server;
+import uphill.backend.challenge.ServerMode;
+import uphill.backend.challenge.handlers.AdmissionControl;
+import uphill.backend.challenge.metrics.StatsReporter;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
+import uphill.backend.challenge.model.QueryCache;
+import uphill.backend.challenge.model.StorageBackend;
+import uphill.backend.challenge.persistence.GraphPersistence;
+import uphill.backend.challenge.persistence.WriteAheadLog;
 
 public class CommandLineOptions {
 
     private static final Logger LOGGER = Logger.getLogger(Server.class);
     private boolean debug;
+    private ServerMode mode = ServerMode.BLOCKING;
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+    private int queryCacheSize = QueryCache.DEFAULT_CAPACITY;
+    private int landmarks = Graph.DEFAULT_LANDMARKS;
+    private int hotSources = Graph.DEFAULT_HOT_SOURCES;
+    private int parallelSearchNodes = Graph.DEFAULT_PARALLEL_SEARCH_NODES;
+    private boolean contractionHierarchy;
+    private StorageBackend storage = StorageBackend.OBJECTS;
+    private int shards = GraphRegistry.DEFAULT_SHARDS;
+    private String dataDir;
+    private long fsyncInterval = WriteAheadLog.DEFAULT_SYNC_INTERVAL_MILLIS;
+    private long snapshotInterval = GraphPersistence.DEFAULT_SNAPSHOT_INTERVAL_SECONDS;
+    private long statsInterval = StatsReporter.DEFAULT_INTERVAL_SECONDS;
+    private int port = Server.DEFAULT_PORT;
+    private long queryMaxNodes;
+    private long queryMaxMillis;
+    private int maxSessions = AdmissionControl.DEFAULT_MAX_SESSIONS;
+    private int maxQueuedSessions = Server.DEFAULT_MAX_QUEUED_SESSIONS;
+    private int maxPipelinedCommands = AdmissionControl.DEFAULT_MAX_PIPELINED_COMMANDS;
+    private int replicationPort;
+    private String leaderHost;
+    private int leaderPort;
 
     public CommandLineOptions(String[] args) {
         Options options = new Options();
         options.addOption("d", "debug", false, "Enable debug mode");
+        options.addOption("m", "mode", true, "Server mode: blocking (default), virtual or nio");
+        options.addOption("p", "port", true, "Port clients connect to (default: " + Server.DEFAULT_PORT + ")");
+        options.addOption("l", "event-loops", true, "Number of event loop threads in nio mode (default: number of cores)");
+        options.addOption(null, "landmarks", true, "Number of landmarks guiding SHORTEST PATH searches, 0 disables them (default: " + Graph.DEFAULT_LANDMARKS + ")");
+        options.addOption(null, "hot-sources", true, "Number of CLOSER THAN sources whose distances are maintained incrementally, 0 disables them (default: " + Graph.DEFAULT_HOT_SOURCES + ")");
+        options.addOption(null, "parallel-search-nodes", true, "Number of nodes from which CLOSER THAN searches run in parallel, 0 keeps them sequential (default: " + Graph.DEFAULT_PARALLEL_SEARCH_NODES + ")");
+        options.addOption(null, "contraction-hierarchy", false, "Answer SHORTEST PATH from a contraction hierarchy rebuilt in the background once mutations pause");
+        options.addOption(null, "storage", true, "How edges are kept in memory: objects (default) or arrays, which takes far less heap");
+        options.addOption(null, "shards", true, "Number of worker threads running the mutations of named graphs, each graph pinned to one; the default graph always mutates on session threads, and 0 runs every graph's mutations there (default: " + GraphRegistry.DEFAULT_SHARDS + ")");
+        options.addOption(null, "data-dir", true, "Directory where mutations are logged and recovered from on startup (default: graph is kept in memory only)");
+        options.addOption(null, "fsync-interval", true, "Milliseconds between fsyncs of the mutation log, 0 acknowledges mutations only once fsynced (default: " + WriteAheadLog.DEFAULT_SYNC_INTERVAL_MILLIS + ")");
+        options.addOption(null, "snapshot-interval", true, "Seconds between background snapshots of the graph in the data directory, 0 disables them (default: " + GraphPersistence.DEFAULT_SNAPSHOT_INTERVAL_SECONDS + ")");
+        options.addOption(null, "stats-interval", true, "Seconds between logged dumps of the STATS report, 0 disables them (default: " + StatsReporter.DEFAULT_INTERVAL_SECONDS + ")");
+        options.addOption(null, "query-max-nodes", true, "Maximum number of nodes the search of one SHORTEST PATH or CLOSER THAN may settle, 0 for no limit (default: 0)");
+        options.addOption(null, "query-max-millis", true, "Maximum milliseconds the search of one SHORTEST PATH or CLOSER THAN may run, 0 for no limit (default: 0)");
+        options.addOption(null, "max-sessions", true, "Maximum number of sessions at once, clients beyond it are answered " + AdmissionControl.SERVER_BUSY + " and disconnected; 0 for no limit (default: " + AdmissionControl.DEFAULT_MAX_SESSIONS + ")");
+        options.addOption(null, "max-queued-sessions", true, "Maximum number of sessions waiting for a thread in blocking mode before clients are turned away, 0 for no limit (default: " + Server.DEFAULT_MAX_QUEUED_SESSIONS + ")");
+        options.addOption(null, "max-pipelined-commands", true, "Maximum number of commands of one session answered before their replies are written, further input waits; 0 for no limit (default: " + AdmissionControl.DEFAULT_MAX_PIPELINED_COMMANDS + ")");
+        options.addOption(null, "replication-port", true, "Port on which this server leads replication, streaming its default graph to followers (default: no replication)");
+        options.addOption(null, "replicate-from", true, "host:port of a replication leader whose default graph this server follows, refusing mutations from clients");
+        options.addOption(null, "query-cache-size", true, "Maximum number of cached query replies, 0 disables the cache (default: " + QueryCache.DEFAULT_CAPACITY + ")");
 
         CommandLineParser parser = new DefaultParser();
 
         try {
             CommandLine cmd = parser.parse(options, args);
             debug = cmd.hasOption("debug");
-        } catch (ParseException e) {
-            LOGGER.error("An error occurred while parsing debug command line option. Error: " + e.getMessage());
+            if (cmd.hasOption("mode")) {
+                mode = ServerMode.valueOf(cmd.getOptionValue("mode").toUpperCase());
+            }
+            if (cmd.hasOption("event-loops")) {
+                eventLoops = Integer.parseInt(cmd.getOptionValue("event-loops"));
+            }
+            if (cmd.hasOption("landmarks")) {
+                landmarks = Integer.parseInt(cmd.getOptionValue("landmarks"));
+            }
+            if (cmd.hasOption("hot-sources")) {
+                hotSources = Integer.parseInt(cmd.getOptionValue("hot-sources"));
+            }
+            if (cmd.hasOption("parallel-search-nodes")) {
+                parallelSearchNodes = Integer.parseInt(cmd.getOptionValue("parallel-search-nodes"));
+            }
+            contractionHierarchy = cmd.hasOption("contraction-hierarchy");
+            if (cmd.hasOption("storage")) {
+                storage = StorageBackend.valueOf(cmd.getOptionValue("storage").toUpperCase());
+            }
+            if (cmd.hasOption("shards")) {
+                shards = Integer.parseInt(cmd.getOptionValue("shards"));
+            }
+            if (cmd.hasOption("data-dir")) {
+                dataDir = cmd.getOptionValue("data-dir");
+            }
+            if (cmd.hasOption("fsync-interval")) {
+                fsyncInterval = Long.parseLong(cmd.getOptionValue("fsync-interval"));
+            }
+            if (cmd.hasOption("snapshot-interval")) {
+                snapshotInterval = Long.parseLong(cmd.getOptionValue("snapshot-interval"));
+            }
+            if (cmd.hasOption("stats-interval")) {
+                statsInterval = Long.parseLong(cmd.getOptionValue("stats-interval"));
+            }
+            if (cmd.hasOption("query-cache-size")) {
+                queryCacheSize = Integer.parseInt(cmd.getOptionValue("query-cache-size"));
+            }
+            if (cmd.hasOption("port")) {
+                port = Integer.parseInt(cmd.getOptionValue("port"));
+            }
+            if (cmd.hasOption("query-max-nodes")) {
+                queryMaxNodes = Long.parseLong(cmd.getOptionValue("query-max-nodes"));
+            }
+            if (cmd.hasOption("query-max-millis")) {
+                queryMaxMillis = Long.parseLong(cmd.getOptionValue("query-max-millis"));
+            }
+            if (cmd.hasOption("max-sessions")) {
+                maxSessions = Integer.parseInt(cmd.getOptionValue("max-sessions"));
+            }
+            if (cmd.hasOption("max-queued-sessions")) {
+                maxQueuedSessions = Integer.parseInt(cmd.getOptionValue("max-queued-sessions"));
+            }
+            if (cmd.hasOption("max-pipelined-commands")) {
+                maxPipelinedCommands = Integer.parseInt(cmd.getOptionValue("max-pipelined-commands"));
+            }
+            if (cmd.hasOption("replication-port")) {
+                replicationPort = Integer.parseInt(cmd.getOptionValue("replication-port"));
+            }
+            if (cmd.hasOption("replicate-from")) {
+                String leader = cmd.getOptionValue("replicate-from");
+                int separator = leader.lastIndexOf(':');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("replicate-from expects host:port, got " + leader);
+                }
+                leaderPort = Integer.parseInt(leader.substring(separator + 1));
+                leaderHost = leader.substring(0, separator);
+            }
+        } catch (ParseException | IllegalArgumentException e) {
+            LOGGER.error("An error occurred while parsing command line options. Error: " + e.getMessage());
         }
     }
 
     public boolean isDebug() {
         return debug;
     }
+
+    public ServerMode getMode() {
+        return mode;
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    public int getLandmarks() {
+        return landmarks;
+    }
+
+    public int getHotSources() {
+        return hotSources;
+    }
+
+    public int getParallelSearchNodes() {
+        return parallelSearchNodes;
+    }
+
+    public boolean isContractionHierarchy() {
+        return contractionHierarchy;
+    }
+
+    public StorageBackend getStorage() {
+        return storage;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public long getFsyncInterval() {
+        return fsyncInterval;
+    }
+
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public long getStatsInterval() {
+        return statsInterval;
+    }
+
+    public long getQueryMaxNodes() {
+        return queryMaxNodes;
+    }
+
+    public long getQueryMaxMillis() {
+        return queryMaxMillis;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public int getMaxQueuedSessions() {
+        return maxQueuedSessions;
+    }
+
+    public int getMaxPipelinedCommands() {
+        return maxPipelinedCommands;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Port to lead replication on, 0 when this server does not lead.
+     */
+    public int getReplicationPort() {
+        return replicationPort;
+    }
+
+    /**
+     * Host of the replication leader to follow, null when this server does not follow one.
+     */
+    public String getLeaderHost() {
+        return leaderHost;
+    }
+
+    public int getLeaderPort() {
+        return leaderPort;
+    }
 }
@@ -0,0 +1,12 @@
+package uphill.backend.challenge.engine;
+
+/**
+ * Read-only view of a graph whose nodes are identified by dense int ids, in both directions.
+ */
+public interface Adjacency extends OutgoingAdjacency {
+
+    /**
+     * Visits the edges pointing at node, passing each edge's source as the visited node.
+     */
+    void forEachIncoming(int node, EdgeVisitor visitor);
+}
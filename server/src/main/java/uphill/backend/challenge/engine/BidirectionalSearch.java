@@ -0,0 +1,157 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+import static uphill.backend.challenge.engine.ShortestPathSearch.UNREACHABLE;
+
+/**
+ * Point-to-point shortest path search running Dijkstra forward from the source and backward from
+ * the target until the two frontiers prove the best meeting point. With {@link Landmarks} both
+ * searches are guided by the average of the forward and backward ALT potentials, which keeps
+ * the reduced edge costs non-negative so the result stays exact.
+ * Instances are not thread safe.
+ */
+public class BidirectionalSearch {
+
+    private final Direction forward = new Direction(true);
+    private final Direction backward = new Direction(false);
+    private int[] potentials = new int[0];
+    private int[] potentialEpochs = new int[0];
+    private int epoch;
+    private Landmarks landmarks;
+    private int source;
+    private int target;
+    private long best;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+
+    /**
+     * Returns the weight of the shortest path from source to target, or
+     * {@link ShortestPathSearch#UNREACHABLE}. Landmarks may be null and must otherwise match
+     * the graph being searched. Edge weights must not be negative.
+     */
+    public int distance(Adjacency graph, int source, int target, Landmarks landmarks) {
+        return distance(graph, source, target, landmarks, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Like {@link #distance(Adjacency, int, int, Landmarks)}, throwing
+     * {@link SearchAbortedException} once the budget runs out.
+     */
+    public int distance(Adjacency graph, int source, int target, Landmarks landmarks, SearchBudget budget) {
+        this.budget = budget;
+        start(graph, source, target, landmarks);
+        while (!forward.heap.isEmpty() && !backward.heap.isEmpty()) {
+            // Keys hold twice the distance plus or minus the potential, see potential()
+            if (forward.heap.peekKey() + backward.heap.peekKey() >= 2 * best) {
+                break;
+            }
+            if (forward.heap.peekKey() <= backward.heap.peekKey()) {
+                forward.settleNext(graph);
+            } else {
+                backward.settleNext(graph);
+            }
+        }
+        return best >= UNREACHABLE ? UNREACHABLE : (int) best;
+    }
+
+    private void start(Adjacency graph, int source, int target, Landmarks landmarks) {
+        int capacity = graph.capacity();
+        if (potentials.length < capacity) {
+            int length = Math.max(capacity, potentials.length * 2);
+            potentials = Arrays.copyOf(potentials, length);
+            potentialEpochs = Arrays.copyOf(potentialEpochs, length);
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(potentialEpochs, 0);
+            epoch = 1;
+        }
+        this.landmarks = landmarks;
+        this.source = source;
+        this.target = target;
+        this.best = UNREACHABLE;
+        forward.start(capacity, source);
+        backward.start(capacity, target);
+    }
+
+    /**
+     * Twice the average potential, (lower bound to target - lower bound from source), kept as an
+     * int so keys never need fractions.
+     */
+    private int potential(int node) {
+        if (landmarks == null) {
+            return 0;
+        }
+        if (potentialEpochs[node] != epoch) {
+            potentials[node] = landmarks.lowerBoundTo(node, target) - landmarks.lowerBoundTo(source, node);
+            potentialEpochs[node] = epoch;
+        }
+        return potentials[node];
+    }
+
+    private class Direction implements EdgeVisitor {
+
+        private final boolean outgoing;
+        private final IndexedMinHeap heap = new IndexedMinHeap();
+        private int[] distances = new int[0];
+        private int[] reachedEpochs = new int[0];
+        private int[] settledEpochs = new int[0];
+        private int currentDistance;
+
+        Direction(boolean outgoing) {
+            this.outgoing = outgoing;
+        }
+
+        void start(int capacity, int node) {
+            if (distances.length < capacity) {
+                int length = Math.max(capacity, distances.length * 2);
+                distances = Arrays.copyOf(distances, length);
+                reachedEpochs = Arrays.copyOf(reachedEpochs, length);
+                settledEpochs = Arrays.copyOf(settledEpochs, length);
+            }
+            if (epoch == 1) {
+                Arrays.fill(reachedEpochs, 0);
+                Arrays.fill(settledEpochs, 0);
+            }
+            heap.clear();
+            distances[node] = 0;
+            reachedEpochs[node] = epoch;
+            heap.offer(node, key(node, 0));
+        }
+
+        void settleNext(Adjacency graph) {
+            budget.settled();
+            int node = heap.poll();
+            settledEpochs[node] = epoch;
+            currentDistance = distances[node];
+            if (outgoing) {
+                graph.forEachOutgoing(node, this);
+            } else {
+                graph.forEachIncoming(node, this);
+            }
+        }
+
+        @Override
+        public void visit(int node, int weight) {
+            if (settledEpochs[node] == epoch) {
+                return;
+            }
+            long distance = (long) currentDistance + weight;
+            if (distance >= UNREACHABLE) {
+                return;
+            }
+            if (reachedEpochs[node] != epoch || distance < distances[node]) {
+                distances[node] = (int) distance;
+                reachedEpochs[node] = epoch;
+                heap.offer(node, key(node, distance));
+                Direction other = outgoing ? backward : forward;
+                if (other.reachedEpochs[node] == epoch) {
+                    best = Math.min(best, distance + other.distances[node]);
+                }
+            }
+        }
+
+        private long key(int node, long distance) {
+            return 2 * distance + (outgoing ? potential(node) : -potential(node));
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+import static uphill.backend.challenge.engine.ShortestPathSearch.UNREACHABLE;
+
+/**
+ * Contraction hierarchy over one graph version. Nodes are contracted one at a time, least
+ * important first: contracting a node adds a shortcut between two of its remaining neighbours
+ * wherever the path through it may be the only shortest one between them. Every shortest path of
+ * the graph then has a counterpart that only climbs to higher contracted nodes from the source
+ * and only descends towards the target, which {@link ContractionHierarchySearch} finds by two
+ * small upward searches.
+ * <p>
+ * Importance weighs the edge difference, shortcuts added minus edges removed, against the number
+ * of neighbours contracted already and how many levels of contracted nodes lie below the node,
+ * which spread contraction evenly and keep the hierarchy shallow. Witness searches that look for
+ * paths around a node are bounded, so a few shortcuts may be redundant but none is missing.
+ * Edge weights must not be negative. The hierarchy only holds for the version it was built from.
+ */
+public class ContractionHierarchy {
+
+    // Witness searches give up after this many settled nodes and keep the shortcut
+    private static final int WITNESS_SETTLED_LIMIT = 128;
+    // Graphs without much hierarchy need ever more shortcuts, contraction gives up past this many per edge
+    private static final int MAX_SHORTCUTS_PER_EDGE = 4;
+
+    private final long version;
+    // Nodes in contraction order, reused when the next version is contracted
+    private final int[] order;
+    private final int shortcutCount;
+    // Edges to higher nodes, and edges from higher nodes stored at their target, in rows per node
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final int[] upWeights;
+    private final int[] downOffsets;
+    private final int[] downSources;
+    private final int[] downWeights;
+
+    private ContractionHierarchy(long version, int[] order, int shortcutCount, EdgeRows up, EdgeRows down) {
+        this.version = version;
+        this.order = order;
+        this.shortcutCount = shortcutCount;
+        this.upOffsets = up.offsets;
+        this.upTargets = up.others;
+        this.upWeights = up.weights;
+        this.downOffsets = down.offsets;
+        this.downSources = down.others;
+        this.downWeights = down.weights;
+    }
+
+    /**
+     * Orders and contracts every node of the graph. Returns null if the graph needs too many
+     * shortcuts to be worth it.
+     */
+    public static ContractionHierarchy build(CsrGraph graph, long version) {
+        return new Contraction(graph).contractByImportance(version);
+    }
+
+    /**
+     * Contracts the graph in the order of a hierarchy built for an earlier version, which skips
+     * ordering and so takes a fraction of {@link #build}. Nodes the earlier hierarchy did not know
+     * are contracted first. Any order gives exact distances, an outdated one only adds shortcuts.
+     * Returns null if the graph needs too many of them.
+     */
+    public static ContractionHierarchy rebuild(CsrGraph graph, ContractionHierarchy previous, long version) {
+        int capacity = graph.capacity();
+        int[] order = new int[capacity];
+        int next = 0;
+        for (int node = previous.order.length; node < capacity; node++) {
+            order[next++] = node;
+        }
+        for (int node : previous.order) {
+            if (node < capacity) {
+                order[next++] = node;
+            }
+        }
+        return new Contraction(graph).contractInOrder(order, version);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int shortcutCount() {
+        return shortcutCount;
+    }
+
+    public int capacity() {
+        return upOffsets.length - 1;
+    }
+
+    void forEachUpward(int node, EdgeVisitor visitor) {
+        for (int i = upOffsets[node]; i < upOffsets[node + 1]; i++) {
+            visitor.visit(upTargets[i], upWeights[i]);
+        }
+    }
+
+    void forEachDownward(int node, EdgeVisitor visitor) {
+        for (int i = downOffsets[node]; i < downOffsets[node + 1]; i++) {
+            visitor.visit(downSources[i], downWeights[i]);
+        }
+    }
+
+    /**
+     * The remaining graph while nodes are contracted, with an unsorted row of outgoing and one of
+     * incoming edges per node. Contracted nodes are taken out of their neighbours' rows.
+     */
+    private static final class Contraction {
+
+        private final int capacity;
+        private final int maxShortcuts;
+        private final int[][] outTargets;
+        private final int[][] outWeights;
+        private final int[] outCounts;
+        private final int[][] inSources;
+        private final int[][] inWeights;
+        private final int[] inCounts;
+        private final int[] contractedNeighbours;
+        // Length of the longest chain of contracted nodes below each node
+        private final int[] levels;
+        private final EdgeList up = new EdgeList();
+        private final EdgeList down = new EdgeList();
+        private int shortcuts;
+
+        private final IndexedMinHeap witnessHeap = new IndexedMinHeap();
+        private final long[] witnessDistances;
+        private final int[] witnessEpochs;
+        private final int[] targetEpochs;
+        private int epoch;
+
+        Contraction(CsrGraph graph) {
+            capacity = graph.capacity();
+            maxShortcuts = MAX_SHORTCUTS_PER_EDGE * Math.max(graph.edgeCount(), capacity);
+            outTargets = new int[capacity][];
+            outWeights = new int[capacity][];
+            outCounts = new int[capacity];
+            inSources = new int[capacity][];
+            inWeights = new int[capacity][];
+            inCounts = new int[capacity];
+            contractedNeighbours = new int[capacity];
+            levels = new int[capacity];
+            witnessDistances = new long[capacity];
+            witnessEpochs = new int[capacity];
+            targetEpochs = new int[capacity];
+            copyEdges(graph);
+        }
+
+        ContractionHierarchy contractByImportance(long version) {
+            IndexedMinHeap queue = new IndexedMinHeap();
+            for (int node = 0; node < capacity; node++) {
+                queue.offer(node, importance(node));
+            }
+            int[] order = new int[capacity];
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                // Priorities go stale as neighbours are contracted, recheck before taking the node
+                long importance = importance(node);
+                if (!queue.isEmpty() && importance > queue.peekKey()) {
+                    queue.offer(node, importance);
+                    continue;
+                }
+                order[next++] = node;
+                if (!contract(node)) {
+                    return null;
+                }
+            }
+            return finish(order, version);
+        }
+
+        ContractionHierarchy contractInOrder(int[] order, long version) {
+            for (int node : order) {
+                if (!contract(node)) {
+                    return null;
+                }
+            }
+            return finish(order, version);
+        }
+
+        // Merges parallel edges into the lightest one and drops self loops
+        private void copyEdges(CsrGraph graph) {
+            int[] slotOwners = new int[capacity];
+            int[] slots = new int[capacity];
+            Arrays.fill(slotOwners, -1);
+            for (int node = 0; node < capacity; node++) {
+                int source = node;
+                int[] targets = new int[graph.outDegree(node)];
+                int[] weights = new int[targets.length];
+                graph.forEachOutgoing(node, (target, weight) -> {
+                    if (target == source) {
+                        return;
+                    }
+                    if (slotOwners[target] == source) {
+                        weights[slots[target]] = Math.min(weights[slots[target]], weight);
+                        return;
+                    }
+                    slotOwners[target] = source;
+                    slots[target] = outCounts[source];
+                    targets[outCounts[source]] = target;
+                    weights[outCounts[source]++] = weight;
+                    inCounts[target]++;
+                });
+                outTargets[node] = targets;
+                outWeights[node] = weights;
+            }
+            for (int node = 0; node < capacity; node++) {
+                inSources[node] = new int[inCounts[node]];
+                inWeights[node] = new int[inCounts[node]];
+                inCounts[node] = 0;
+            }
+            for (int node = 0; node < capacity; node++) {
+                for (int i = 0; i < outCounts[node]; i++) {
+                    int target = outTargets[node][i];
+                    inSources[target][inCounts[target]] = node;
+                    inWeights[target][inCounts[target]++] = outWeights[node][i];
+                }
+            }
+        }
+
+        private long importance(int node) {
+            return 2L * (shortcutsFor(node, false) - outCounts[node] - inCounts[node]) + contractedNeighbours[node]
+                    + levels[node];
+        }
+
+        // Returns false once the shortcut limit is exceeded
+        private boolean contract(int node) {
+            for (int i = 0; i < outCounts[node]; i++) {
+                up.add(node, outTargets[node][i], outWeights[node][i]);
+            }
+            for (int i = 0; i < inCounts[node]; i++) {
+                down.add(node, inSources[node][i], inWeights[node][i]);
+            }
+            shortcutsFor(node, true);
+            for (int i = 0; i < outCounts[node]; i++) {
+                int target = outTargets[node][i];
+                inCounts[target] = remove(inSources[target], inWeights[target], inCounts[target], node);
+                contractedNeighbours[target]++;
+                levels[target] = Math.max(levels[target], levels[node] + 1);
+            }
+            for (int i = 0; i < inCounts[node]; i++) {
+                int source = inSources[node][i];
+                outCounts[source] = remove(outTargets[source], outWeights[source], outCounts[source], node);
+                contractedNeighbours[source]++;
+                levels[source] = Math.max(levels[source], levels[node] + 1);
+            }
+            outTargets[node] = null;
+            outWeights[node] = null;
+            inSources[node] = null;
+            inWeights[node] = null;
+            return shortcuts <= maxShortcuts;
+        }
+
+        // Counts, and with add also inserts, the shortcuts contracting the node needs
+        private int shortcutsFor(int node, boolean add) {
+            long maxOutWeight = 0;
+            nextEpoch();
+            for (int i = 0; i < outCounts[node]; i++) {
+                maxOutWeight = Math.max(maxOutWeight, outWeights[node][i]);
+                targetEpochs[outTargets[node][i]] = epoch;
+            }
+            int targetEpoch = epoch;
+            int needed = 0;
+            for (int i = 0; i < inCounts[node]; i++) {
+                int source = inSources[node][i];
+                long inWeight = inWeights[node][i];
+                searchWitnesses(source, node, inWeight + maxOutWeight, targetEpoch, outCounts[node]);
+                for (int j = 0; j < outCounts[node]; j++) {
+                    int target = outTargets[node][j];
+                    long through = inWeight + outWeights[node][j];
+                    if (target == source || through >= UNREACHABLE) {
+                        continue;
+                    }
+                    if (witnessEpochs[target] == epoch && witnessDistances[target] <= through) {
+                        continue;
+                    }
+                    needed++;
+                    if (add) {
+                        addShortcut(source, target, (int) through);
+                    }
+                }
+            }
+            return needed;
+        }
+
+        // Dijkstra from source around the node being contracted, until every target is settled or past maxDistance
+        private void searchWitnesses(int source, int avoided, long maxDistance, int targetEpoch, int targets) {
+            nextEpoch();
+            witnessHeap.clear();
+            witnessDistances[source] = 0;
+            witnessEpochs[source] = epoch;
+            witnessHeap.offer(source, 0);
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && witnessHeap.peekKey() <= maxDistance && settled++ < WITNESS_SETTLED_LIMIT) {
+                int node = witnessHeap.poll();
+                if (targetEpochs[node] == targetEpoch && --targets == 0) {
+                    return;
+                }
+                long distance = witnessDistances[node];
+                for (int i = 0; i < outCounts[node]; i++) {
+                    int target = outTargets[node][i];
+                    if (target == avoided) {
+                        continue;
+                    }
+                    long reached = distance + outWeights[node][i];
+                    if (witnessEpochs[target] != epoch || reached < witnessDistances[target]) {
+                        witnessDistances[target] = reached;
+                        witnessEpochs[target] = epoch;
+                        witnessHeap.offer(target, reached);
+                    }
+                }
+            }
+        }
+
+        private void nextEpoch() {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(witnessEpochs, 0);
+                Arrays.fill(targetEpochs, 0);
+                epoch = 1;
+            }
+        }
+
+        private void addShortcut(int source, int target, int weight) {
+            int[] targets = outTargets[source];
+            for (int i = 0; i < outCounts[source]; i++) {
+                if (targets[i] == target) {
+                    if (weight < outWeights[source][i]) {
+                        outWeights[source][i] = weight;
+                        int[] sources = inSources[target];
+                        for (int j = 0; j < inCounts[target]; j++) {
+                            if (sources[j] == source) {
+                                inWeights[target][j] = weight;
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+            shortcuts++;
+            if (outCounts[source] == targets.length) {
+                outTargets[source] = Arrays.copyOf(targets, Math.max(4, targets.length * 2));
+                outWeights[source] = Arrays.copyOf(outWeights[source], outTargets[source].length);
+            }
+            outTargets[source][outCounts[source]] = target;
+            outWeights[source][outCounts[source]++] = weight;
+            if (inCounts[target] == inSources[target].length) {
+                inSources[target] = Arrays.copyOf(inSources[target], Math.max(4, inCounts[target] * 2));
+                inWeights[target] = Arrays.copyOf(inWeights[target], inSources[target].length);
+            }
+            inSources[target][inCounts[target]] = source;
+            inWeights[target][inCounts[target]++] = weight;
+        }
+
+        // Swaps the node's entry with the last one of the row, returns the new row length
+        private static int remove(int[] nodes, int[] weights, int count, int node) {
+            for (int i = 0; i < count; i++) {
+                if (nodes[i] == node) {
+                    nodes[i] = nodes[count - 1];
+                    weights[i] = weights[count - 1];
+                    return count - 1;
+                }
+            }
+            return count;
+        }
+
+        private ContractionHierarchy finish(int[] order, long version) {
+            return new ContractionHierarchy(version, order, shortcuts, up.toRows(capacity), down.toRows(capacity));
+        }
+    }
+
+    /**
+     * Hierarchy edges in the order they were recorded, each kept at one of its endpoints.
+     */
+    private static final class EdgeList {
+
+        private int[] nodes = new int[64];
+        private int[] others = new int[64];
+        private int[] weights = new int[64];
+        private int size;
+
+        void add(int node, int other, int weight) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                others = Arrays.copyOf(others, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            nodes[size] = node;
+            others[size] = other;
+            weights[size++] = weight;
+        }
+
+        EdgeRows toRows(int capacity) {
+            int[] offsets = new int[capacity + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[nodes[i] + 1]++;
+            }
+            for (int node = 0; node < capacity; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] next = Arrays.copyOf(offsets, capacity);
+            int[] rowOthers = new int[size];
+            int[] rowWeights = new int[size];
+            for (int i = 0; i < size; i++) {
+                int position = next[nodes[i]]++;
+                rowOthers[position] = others[i];
+                rowWeights[position] = weights[i];
+            }
+            return new EdgeRows(offsets, rowOthers, rowWeights);
+        }
+    }
+
+    private static final class EdgeRows {
+
+        final int[] offsets;
+        final int[] others;
+        final int[] weights;
+
+        EdgeRows(int[] offsets, int[] others, int[] weights) {
+            this.offsets = offsets;
+            this.others = others;
+            this.weights = weights;
+        }
+    }
+}
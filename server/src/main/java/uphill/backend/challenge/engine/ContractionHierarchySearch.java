@@ -0,0 +1,136 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+import static uphill.backend.challenge.engine.ShortestPathSearch.UNREACHABLE;
+
+/**
+ * Point-to-point query over a {@link ContractionHierarchy}: Dijkstra upward from the source and,
+ * over reversed edges, upward from the target, each stopping once its frontier is past the best
+ * meeting point. A node that can be reached more cheaply from a higher node seen already is
+ * stalled rather than expanded, since no shortest path goes through it from that side.
+ * Instances are not thread safe.
+ */
+public class ContractionHierarchySearch {
+
+    private final Direction forward = new Direction(true);
+    private final Direction backward = new Direction(false);
+    private int epoch;
+    private ContractionHierarchy hierarchy;
+    private long best;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+
+    /**
+     * Returns the weight of the shortest path from source to target in the graph the hierarchy
+     * was built from, or {@link ShortestPathSearch#UNREACHABLE}.
+     */
+    public int distance(ContractionHierarchy hierarchy, int source, int target) {
+        return distance(hierarchy, source, target, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Like {@link #distance(ContractionHierarchy, int, int)}, throwing
+     * {@link SearchAbortedException} once the budget runs out.
+     */
+    public int distance(ContractionHierarchy hierarchy, int source, int target, SearchBudget budget) {
+        if (source == target) {
+            return 0;
+        }
+        this.hierarchy = hierarchy;
+        this.budget = budget;
+        this.best = UNREACHABLE;
+        if (++epoch == Integer.MAX_VALUE) {
+            epoch = 1;
+        }
+        forward.start(hierarchy.capacity(), source);
+        backward.start(hierarchy.capacity(), target);
+        while (true) {
+            boolean forwardOpen = !forward.heap.isEmpty() && forward.heap.peekKey() < best;
+            boolean backwardOpen = !backward.heap.isEmpty() && backward.heap.peekKey() < best;
+            if (forwardOpen && (!backwardOpen || forward.heap.peekKey() <= backward.heap.peekKey())) {
+                forward.settleNext();
+            } else if (backwardOpen) {
+                backward.settleNext();
+            } else {
+                break;
+            }
+        }
+        return best >= UNREACHABLE ? UNREACHABLE : (int) best;
+    }
+
+    private class Direction implements EdgeVisitor {
+
+        private final boolean outgoing;
+        private final IndexedMinHeap heap = new IndexedMinHeap();
+        private final StallCheck stallCheck = new StallCheck();
+        private long[] distances = new long[0];
+        private int[] reachedEpochs = new int[0];
+        private long currentDistance;
+
+        Direction(boolean outgoing) {
+            this.outgoing = outgoing;
+        }
+
+        void start(int capacity, int node) {
+            if (distances.length < capacity) {
+                int length = Math.max(capacity, distances.length * 2);
+                distances = Arrays.copyOf(distances, length);
+                reachedEpochs = Arrays.copyOf(reachedEpochs, length);
+            }
+            if (epoch == 1) {
+                Arrays.fill(reachedEpochs, 0);
+            }
+            heap.clear();
+            distances[node] = 0;
+            reachedEpochs[node] = epoch;
+            heap.offer(node, 0);
+        }
+
+        void settleNext() {
+            budget.settled();
+            int node = heap.poll();
+            currentDistance = distances[node];
+            stallCheck.stalled = false;
+            if (outgoing) {
+                hierarchy.forEachDownward(node, stallCheck);
+            } else {
+                hierarchy.forEachUpward(node, stallCheck);
+            }
+            if (stallCheck.stalled) {
+                return;
+            }
+            if (outgoing) {
+                hierarchy.forEachUpward(node, this);
+            } else {
+                hierarchy.forEachDownward(node, this);
+            }
+        }
+
+        @Override
+        public void visit(int node, int weight) {
+            long distance = currentDistance + weight;
+            if (reachedEpochs[node] != epoch || distance < distances[node]) {
+                distances[node] = distance;
+                reachedEpochs[node] = epoch;
+                heap.offer(node, distance);
+                Direction other = outgoing ? backward : forward;
+                if (other.reachedEpochs[node] == epoch) {
+                    best = Math.min(best, distance + other.distances[node]);
+                }
+            }
+        }
+
+        // Looks at edges into the settled node from higher nodes this direction reached already
+        private class StallCheck implements EdgeVisitor {
+
+            private boolean stalled;
+
+            @Override
+            public void visit(int higher, int weight) {
+                if (reachedEpochs[higher] == epoch && distances[higher] + weight < currentDistance) {
+                    stalled = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package uphill.backend.challenge.engine;
+
+/**
+ * Immutable copy of an {@link OutgoingAdjacency} in compressed sparse row form, one row of targets and
+ * weights per node for each direction.
+ */
+public class CsrGraph implements Adjacency {
+
+    private final int capacity;
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final int[] outWeights;
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final int[] inWeights;
+
+    private CsrGraph(int capacity, int[] outOffsets, int[] outTargets, int[] outWeights,
+                     int[] inOffsets, int[] inSources, int[] inWeights) {
+        this.capacity = capacity;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outWeights = outWeights;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inWeights = inWeights;
+    }
+
+    public static CsrGraph copyOf(OutgoingAdjacency graph) {
+        int capacity = graph.capacity();
+        int[] outOffsets = new int[capacity + 1];
+        int[] inOffsets = new int[capacity + 1];
+        for (int node = 0; node < capacity; node++) {
+            int from = node;
+            graph.forEachOutgoing(node, (target, weight) -> {
+                outOffsets[from + 1]++;
+                inOffsets[target + 1]++;
+            });
+        }
+        for (int node = 0; node < capacity; node++) {
+            outOffsets[node + 1] += outOffsets[node];
+            inOffsets[node + 1] += inOffsets[node];
+        }
+        int edges = outOffsets[capacity];
+        int[] outTargets = new int[edges];
+        int[] outWeights = new int[edges];
+        int[] inSources = new int[edges];
+        int[] inWeights = new int[edges];
+        int[] outFill = new int[capacity];
+        int[] inFill = new int[capacity];
+        for (int node = 0; node < capacity; node++) {
+            int from = node;
+            graph.forEachOutgoing(node, (target, weight) -> {
+                int out = outOffsets[from] + outFill[from]++;
+                outTargets[out] = target;
+                outWeights[out] = weight;
+                int in = inOffsets[target] + inFill[target]++;
+                inSources[in] = from;
+                inWeights[in] = weight;
+            });
+        }
+        return new CsrGraph(capacity, outOffsets, outTargets, outWeights, inOffsets, inSources, inWeights);
+    }
+
+    public int edgeCount() {
+        return outTargets.length;
+    }
+
+    public int outDegree(int node) {
+        return outOffsets[node + 1] - outOffsets[node];
+    }
+
+    public int inDegree(int node) {
+        return inOffsets[node + 1] - inOffsets[node];
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void forEachOutgoing(int node, EdgeVisitor visitor) {
+        for (int i = outOffsets[node], end = outOffsets[node + 1]; i < end; i++) {
+            visitor.visit(outTargets[i], outWeights[i]);
+        }
+    }
+
+    @Override
+    public void forEachIncoming(int node, EdgeVisitor visitor) {
+        for (int i = inOffsets[node], end = inOffsets[node + 1]; i < end; i++) {
+            visitor.visit(inSources[i], inWeights[i]);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parallel single-source search over non-negative weights, settling the same nodes as
+ * {@link ShortestPathSearch#settleWithin}. Reached nodes are kept in buckets of distance width
+ * delta; the nodes of the lowest bucket have their edges relaxed on a {@link ForkJoinPool} until
+ * the bucket stops changing, light edges (not heavier than delta) repeatedly and heavy ones once
+ * the bucket is final. Distances are updated with compare-and-set and stamped with an epoch, so
+ * instances can be reused across queries. Instances are not thread safe.
+ */
+public class DeltaSteppingSearch {
+
+    // Frontiers up to this many nodes are relaxed by one task
+    static final int LEAF_NODES = 256;
+    private static final int DELTA_SAMPLE_NODES = 256;
+
+    private final ForkJoinPool pool;
+    // Each slot holds the epoch in the high half and the distance in the low half
+    private AtomicLongArray states = new AtomicLongArray(0);
+    private int[] roundStamps = new int[0];
+    private int[] settledEpochs = new int[0];
+    private int[] settled = new int[64];
+    private int settledCount;
+    private int epoch;
+    private int round;
+    private int delta;
+    private int limit;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+
+    public DeltaSteppingSearch(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Settles every node whose distance from source is lower than limit and returns how many
+     * were settled, source included. They can be read back with {@link #settledNode(int)}, in no
+     * particular order.
+     */
+    public int settleWithin(Adjacency graph, int source, int limit) {
+        return settleWithin(graph, source, limit, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Like {@link #settleWithin(Adjacency, int, int)}, throwing {@link SearchAbortedException}
+     * once the budget runs out. The budget is charged as buckets are settled, from the calling
+     * thread only.
+     */
+    public int settleWithin(Adjacency graph, int source, int limit, SearchBudget budget) {
+        this.budget = budget;
+        start(graph, source, limit);
+        if (limit <= 0) {
+            return 0;
+        }
+        TreeMap<Long, NodeList> buckets = new TreeMap<>();
+        buckets.put(0L, NodeList.of(source));
+        NodeList frontier = new NodeList();
+        NodeList bucketNodes = new NodeList();
+        while (!buckets.isEmpty()) {
+            Map.Entry<Long, NodeList> bucket = buckets.pollFirstEntry();
+            long index = bucket.getKey();
+            NodeList candidates = bucket.getValue();
+            bucketNodes.clear();
+            while (candidates.size > 0) {
+                nextRound();
+                frontier.clear();
+                for (int i = 0; i < candidates.size; i++) {
+                    int node = candidates.nodes[i];
+                    // Entries are stale once the node moved to a lower bucket
+                    if (roundStamps[node] != round && distanceTo(node) / delta == index) {
+                        roundStamps[node] = round;
+                        frontier.add(node);
+                        if (settledEpochs[node] != epoch) {
+                            settledEpochs[node] = epoch;
+                            bucketNodes.add(node);
+                        }
+                    }
+                }
+                NodeList improved = relax(graph, frontier, true);
+                candidates = new NodeList();
+                distribute(improved, index, candidates, buckets);
+            }
+            // Nothing can reach this bucket any more, so its nodes are final
+            for (int i = 0; i < bucketNodes.size; i++) {
+                settle(bucketNodes.nodes[i]);
+            }
+            distribute(relax(graph, bucketNodes, false), index, null, buckets);
+        }
+        return settledCount;
+    }
+
+    public int settledNode(int index) {
+        return settled[index];
+    }
+
+    public int distanceTo(int node) {
+        if (node >= states.length()) {
+            return ShortestPathSearch.UNREACHABLE;
+        }
+        long state = states.get(node);
+        return (int) (state >>> 32) == epoch ? (int) state : ShortestPathSearch.UNREACHABLE;
+    }
+
+    /**
+     * Bucket width for the graph: the mean weight of the edges of a sample of nodes, so a bucket
+     * roughly spans one more edge of the search.
+     */
+    static int estimateDelta(Adjacency graph) {
+        int capacity = graph.capacity();
+        int step = Math.max(1, capacity / DELTA_SAMPLE_NODES);
+        long[] sum = new long[2];
+        for (int node = 0; node < capacity; node += step) {
+            graph.forEachOutgoing(node, (target, weight) -> {
+                sum[0] += Math.max(weight, 0);
+                sum[1]++;
+            });
+        }
+        return sum[1] == 0 ? 1 : (int) Math.max(1, sum[0] / sum[1]);
+    }
+
+    private void start(Adjacency graph, int source, int limit) {
+        int capacity = graph.capacity();
+        if (states.length() < capacity) {
+            int length = Math.max(capacity, states.length() * 2);
+            AtomicLongArray grown = new AtomicLongArray(length);
+            for (int i = 0; i < states.length(); i++) {
+                grown.set(i, states.get(i));
+            }
+            states = grown;
+            roundStamps = Arrays.copyOf(roundStamps, length);
+            settledEpochs = Arrays.copyOf(settledEpochs, length);
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            for (int i = 0; i < states.length(); i++) {
+                states.set(i, 0);
+            }
+            Arrays.fill(settledEpochs, 0);
+            epoch = 1;
+        }
+        settledCount = 0;
+        this.limit = limit;
+        this.delta = estimateDelta(graph);
+        states.set(source, pack(0));
+    }
+
+    private void nextRound() {
+        if (++round == Integer.MAX_VALUE) {
+            Arrays.fill(roundStamps, 0);
+            round = 1;
+        }
+    }
+
+    private void settle(int node) {
+        budget.settled();
+        if (settledCount == settled.length) {
+            settled = Arrays.copyOf(settled, settledCount * 2);
+        }
+        settled[settledCount++] = node;
+    }
+
+    // Light improvements staying in the current bucket go back to candidates, the rest to later buckets
+    private void distribute(NodeList improved, long index, NodeList candidates,
+                            TreeMap<Long, NodeList> buckets) {
+        for (int i = 0; i < improved.size; i++) {
+            int node = improved.nodes[i];
+            long target = distanceTo(node) / delta;
+            if (target == index && candidates != null) {
+                candidates.add(node);
+            } else {
+                buckets.computeIfAbsent(target, key -> new NodeList()).add(node);
+            }
+        }
+    }
+
+    private NodeList relax(Adjacency graph, NodeList nodes, boolean light) {
+        RelaxTask task = new RelaxTask(graph, nodes.nodes, 0, nodes.size, light);
+        return nodes.size <= LEAF_NODES ? task.compute() : pool.invoke(task);
+    }
+
+    private long pack(int distance) {
+        return ((long) epoch << 32) | distance;
+    }
+
+    private class RelaxTask extends RecursiveTask<NodeList> implements EdgeVisitor {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Adjacency graph;
+        private final int[] nodes;
+        private final int from;
+        private final int to;
+        private final boolean light;
+        private NodeList improved;
+        private int currentDistance;
+
+        RelaxTask(Adjacency graph, int[] nodes, int from, int to, boolean light) {
+            this.graph = graph;
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.light = light;
+        }
+
+        @Override
+        protected NodeList compute() {
+            if (to - from > LEAF_NODES) {
+                int middle = (from + to) >>> 1;
+                RelaxTask left = new RelaxTask(graph, nodes, from, middle, light);
+                left.fork();
+                NodeList right = new RelaxTask(graph, nodes, middle, to, light).compute();
+                return left.join().addAll(right);
+            }
+            improved = new NodeList();
+            for (int i = from; i < to; i++) {
+                currentDistance = distanceTo(nodes[i]);
+                graph.forEachOutgoing(nodes[i], this);
+            }
+            return improved;
+        }
+
+        @Override
+        public void visit(int target, int weight) {
+            if ((weight <= delta) != light) {
+                return;
+            }
+            long distance = (long) currentDistance + weight;
+            if (distance >= limit) {
+                return;
+            }
+            long next = pack((int) distance);
+            while (true) {
+                long state = states.get(target);
+                if ((int) (state >>> 32) == epoch && (int) state <= distance) {
+                    return;
+                }
+                if (states.compareAndSet(target, state, next)) {
+                    improved.add(target);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static class NodeList {
+
+        int[] nodes = new int[16];
+        int size;
+
+        static NodeList of(int node) {
+            NodeList list = new NodeList();
+            list.add(node);
+            return list;
+        }
+
+        void add(int node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            nodes[size++] = node;
+        }
+
+        NodeList addAll(NodeList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.nodes[i]);
+            }
+            return this;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path tree of a single source that is kept up to date across edge insertions and
+ * deletions instead of being recomputed. An update only resets the subtrees hanging from deleted
+ * tree edges, seeds them and the heads of inserted edges from their unaffected neighbours, and
+ * lets Dijkstra settle what actually changed. Weights must not be negative. Instances are not
+ * thread safe.
+ */
+public class DynamicShortestPaths {
+
+    private static final int NO_PARENT = -1;
+
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    private final EdgeChanges changes = new EdgeChanges();
+    private final EdgeVisitor relaxVisitor = this::relax;
+    private final EdgeVisitor childVisitor = this::collectChild;
+    private final EdgeVisitor seedVisitor = this::seed;
+    private int source = -1;
+    private long version = -1;
+    private int[] distances = new int[0];
+    private int[] parents = new int[0];
+    private boolean[] affected = new boolean[0];
+    private int[] affectedNodes = new int[64];
+    private int affectedCount;
+    private int currentNode;
+    private int currentDistance;
+
+    // reachable nodes ordered by distance, rebuilt on the first range lookup after a change
+    private int[] orderedNodes = new int[0];
+    private int[] orderedDistances = new int[0];
+    private int orderedCount = -1;
+
+    public int source() {
+        return source;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int distanceTo(int node) {
+        return node < distances.length ? distances[node] : ShortestPathSearch.UNREACHABLE;
+    }
+
+    /**
+     * Brings the tree to the given graph version, applying the logged edge changes when the log
+     * still covers them and recomputing it from scratch otherwise.
+     */
+    public void catchUp(Adjacency graph, int source, long version, EdgeChangeLog log) {
+        if (source != this.source || this.version < 0) {
+            rebuild(graph, source, version);
+        } else if (this.version < version) {
+            if (log.collect(this.version, version, changes)) {
+                update(graph, changes, version);
+            } else {
+                rebuild(graph, source, version);
+            }
+        }
+    }
+
+    public void rebuild(Adjacency graph, int source, long version) {
+        ensureCapacity(graph.capacity());
+        Arrays.fill(distances, ShortestPathSearch.UNREACHABLE);
+        Arrays.fill(parents, NO_PARENT);
+        this.source = source;
+        distances[source] = 0;
+        heap.clear();
+        heap.offer(source, 0);
+        settle(graph);
+        this.version = version;
+        orderedCount = -1;
+    }
+
+    /**
+     * Applies edge changes that graph already reflects, in the order they were made.
+     */
+    public void update(Adjacency graph, EdgeChanges changes, long version) {
+        ensureCapacity(graph.capacity());
+        heap.clear();
+        affectedCount = 0;
+        for (int i = 0; i < changes.size(); i++) {
+            if (!changes.isAddition(i) && parents[changes.to(i)] == changes.from(i)) {
+                markAffected(changes.to(i));
+            }
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            currentNode = affectedNodes[i];
+            graph.forEachOutgoing(currentNode, childVisitor);
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            int node = affectedNodes[i];
+            distances[node] = ShortestPathSearch.UNREACHABLE;
+            parents[node] = NO_PARENT;
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            currentNode = affectedNodes[i];
+            graph.forEachIncoming(currentNode, seedVisitor);
+            if (distances[currentNode] != ShortestPathSearch.UNREACHABLE) {
+                heap.offer(currentNode, distances[currentNode]);
+            }
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            affected[affectedNodes[i]] = false;
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            int from = changes.from(i);
+            if (changes.isAddition(i) && distances[from] != ShortestPathSearch.UNREACHABLE) {
+                currentNode = from;
+                currentDistance = distances[from];
+                graph.forEachOutgoing(from, relaxVisitor);
+            }
+        }
+        settle(graph);
+        this.version = version;
+        orderedCount = -1;
+    }
+
+    /**
+     * Returns how many nodes are closer than limit to the source, source included. They are the
+     * first ones returned by {@link #nodeByDistance(int)}.
+     */
+    public int countCloserThan(int limit) {
+        if (orderedCount < 0) {
+            orderByDistance();
+        }
+        int low = 0;
+        int high = orderedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (orderedDistances[middle] < limit) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int nodeByDistance(int index) {
+        return orderedNodes[index];
+    }
+
+    private void settle(Adjacency graph) {
+        while (!heap.isEmpty()) {
+            currentNode = heap.poll();
+            currentDistance = distances[currentNode];
+            graph.forEachOutgoing(currentNode, relaxVisitor);
+        }
+    }
+
+    private void relax(int target, int weight) {
+        long distance = (long) currentDistance + weight;
+        if (distance < distances[target]) {
+            distances[target] = (int) distance;
+            parents[target] = currentNode;
+            heap.offer(target, distance);
+        }
+    }
+
+    private void collectChild(int target, int weight) {
+        if (parents[target] == currentNode && !affected[target]) {
+            markAffected(target);
+        }
+    }
+
+    private void seed(int from, int weight) {
+        if (affected[from] || distances[from] == ShortestPathSearch.UNREACHABLE) {
+            return;
+        }
+        long distance = (long) distances[from] + weight;
+        if (distance < distances[currentNode]) {
+            distances[currentNode] = (int) distance;
+            parents[currentNode] = from;
+        }
+    }
+
+    private void markAffected(int node) {
+        affected[node] = true;
+        if (affectedCount == affectedNodes.length) {
+            affectedNodes = Arrays.copyOf(affectedNodes, affectedCount * 2);
+        }
+        affectedNodes[affectedCount++] = node;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (distances.length < capacity) {
+            int previous = distances.length;
+            int length = Math.max(capacity, previous * 2);
+            distances = Arrays.copyOf(distances, length);
+            parents = Arrays.copyOf(parents, length);
+            affected = Arrays.copyOf(affected, length);
+            Arrays.fill(distances, previous, length, ShortestPathSearch.UNREACHABLE);
+            Arrays.fill(parents, previous, length, NO_PARENT);
+        }
+    }
+
+    private void orderByDistance() {
+        long[] keys = new long[distances.length];
+        int count = 0;
+        for (int node = 0; node < distances.length; node++) {
+            if (distances[node] != ShortestPathSearch.UNREACHABLE) {
+                keys[count++] = (long) distances[node] << 32 | node;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        if (orderedNodes.length < count) {
+            orderedNodes = new int[keys.length];
+            orderedDistances = new int[keys.length];
+        }
+        for (int i = 0; i < count; i++) {
+            orderedNodes[i] = (int) keys[i];
+            orderedDistances[i] = (int) (keys[i] >>> 32);
+        }
+        orderedCount = count;
+    }
+}
@@ -0,0 +1,93 @@
+package uphill.backend.challenge.engine;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of the edge changes made by each graph version, so structures computed at
+ * an older version can catch up incrementally. Changes that cannot be expressed as edge
+ * insertions or deletions are logged as a reset, which forces a full recomputation.
+ */
+public class EdgeChangeLog {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final byte ADDED = 0;
+    private static final byte REMOVED = 1;
+    private static final byte RESET = 2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] versions;
+    private final int[] froms;
+    private final int[] tos;
+    private final byte[] kinds;
+    private long written;
+    // every change of a later version is still in the buffer
+    private long overwrittenVersion;
+
+    public EdgeChangeLog(int capacity) {
+        this.versions = new long[capacity];
+        this.froms = new int[capacity];
+        this.tos = new int[capacity];
+        this.kinds = new byte[capacity];
+    }
+
+    public void edgeAdded(long version, int from, int to) {
+        append(version, from, to, ADDED);
+    }
+
+    public void edgeRemoved(long version, int from, int to) {
+        append(version, from, to, REMOVED);
+    }
+
+    public void reset(long version) {
+        append(version, -1, -1, RESET);
+    }
+
+    /**
+     * Copies the changes of the versions after afterVersion up to and including upToVersion.
+     * Returns false when some of them are no longer retained or one of them is a reset.
+     */
+    public boolean collect(long afterVersion, long upToVersion, EdgeChanges changes) {
+        changes.clear();
+        lock.lock();
+        try {
+            if (afterVersion < overwrittenVersion) {
+                return false;
+            }
+            long first = Math.max(0, written - versions.length);
+            for (long i = first; i < written; i++) {
+                int slot = (int) (i % versions.length);
+                long version = versions[slot];
+                if (version <= afterVersion) {
+                    continue;
+                }
+                if (version > upToVersion) {
+                    break;
+                }
+                if (kinds[slot] == RESET) {
+                    return false;
+                }
+                changes.add(froms[slot], tos[slot], kinds[slot] == ADDED);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(long version, int from, int to, byte kind) {
+        lock.lock();
+        try {
+            int slot = (int) (written % versions.length);
+            if (written >= versions.length) {
+                overwrittenVersion = Math.max(overwrittenVersion, versions[slot]);
+            }
+            versions[slot] = version;
+            froms[slot] = from;
+            tos[slot] = to;
+            kinds[slot] = kind;
+            written++;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
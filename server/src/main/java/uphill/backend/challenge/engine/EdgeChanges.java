@@ -0,0 +1,46 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+/**
+ * Reusable list of edge insertions and deletions, in the order they were applied.
+ */
+public class EdgeChanges {
+
+    private int[] froms = new int[16];
+    private int[] tos = new int[16];
+    private boolean[] added = new boolean[16];
+    private int size;
+
+    public void add(int from, int to, boolean addition) {
+        if (size == froms.length) {
+            froms = Arrays.copyOf(froms, size * 2);
+            tos = Arrays.copyOf(tos, size * 2);
+            added = Arrays.copyOf(added, size * 2);
+        }
+        froms[size] = from;
+        tos[size] = to;
+        added[size] = addition;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int from(int index) {
+        return froms[index];
+    }
+
+    public int to(int index) {
+        return tos[index];
+    }
+
+    public boolean isAddition(int index) {
+        return added[index];
+    }
+}
@@ -0,0 +1,6 @@
+package uphill.backend.challenge.engine;
+
+@FunctionalInterface
+public interface EdgeVisitor {
+    void visit(int target, int weight);
+}
@@ -0,0 +1,112 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node ids keyed by a long priority, with O(log n) decrease-key.
+ * Only the nodes currently in the heap are touched by {@link #clear()}.
+ */
+public class IndexedMinHeap {
+
+    private int[] nodes = new int[64];
+    private long[] keys = new long[64];
+    // position of each node in the heap plus one, zero when absent
+    private int[] positions = new int[64];
+    private int size;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return node < positions.length && positions[node] != 0;
+    }
+
+    public long peekKey() {
+        return keys[0];
+    }
+
+    public int peek() {
+        return nodes[0];
+    }
+
+    /**
+     * Inserts the node or lowers its key. A higher key than the current one is ignored.
+     */
+    public void offer(int node, long key) {
+        ensureNodeCapacity(node);
+        int position = positions[node] - 1;
+        if (position < 0) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            position = size++;
+        } else if (key >= keys[position]) {
+            return;
+        }
+        siftUp(position, node, key);
+    }
+
+    public int poll() {
+        int top = nodes[0];
+        positions[top] = 0;
+        size--;
+        if (size > 0) {
+            siftDown(0, nodes[size], keys[size]);
+        }
+        return top;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[nodes[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position, int node, long key) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(position, nodes[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, node, key);
+    }
+
+    private void siftDown(int position, int node, long key) {
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            place(position, nodes[child], keys[child]);
+            position = child;
+        }
+        place(position, node, key);
+    }
+
+    private void place(int position, int node, long key) {
+        nodes[position] = node;
+        keys[position] = key;
+        positions[node] = position + 1;
+    }
+
+    private void ensureNodeCapacity(int node) {
+        if (node >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(node + 1, positions.length * 2));
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package uphill.backend.challenge.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static uphill.backend.challenge.engine.ShortestPathSearch.UNREACHABLE;
+
+/**
+ * The k shortest loopless paths between two nodes, by Yen's algorithm. Every path after the first
+ * branches off an accepted one at a spur node: it keeps that path's prefix up to the spur node and
+ * continues with the shortest path from there that avoids the prefix's nodes and the edges other
+ * accepted paths with the same prefix take next.
+ * <p>
+ * Spur searches share their work in two ways. One backward search from the target gives every
+ * node its distance to the target in the whole graph; removing nodes and edges only makes paths
+ * longer, so these distances are consistent A* potentials for every spur search, which then
+ * leaves the shortest path tree only where a removed node or edge forces it to, and never enters
+ * nodes that cannot reach the target. And, as Lawler observed, a path only needs spur searches
+ * from its deviation node on, since those before it were searched from the path it branched off.
+ * Potentials assume non-negative weights; unguided searches are plain Dijkstra.
+ * Instances are not thread safe.
+ */
+public class KShortestPaths implements EdgeVisitor {
+
+    private static final Comparator<Path> SHORTEST_FIRST = Comparator.comparingLong(Path::getWeight)
+            .thenComparingInt(path -> path.nodes.length)
+            .thenComparing(path -> path.nodes, Arrays::compare);
+
+    private final ShortestPathSearch towardsTarget = new ShortestPathSearch();
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    private long[] costs = new long[0];
+    private int[] predecessors = new int[0];
+    private int[] reachedEpochs = new int[0];
+    private int[] settledEpochs = new int[0];
+    private int[] blockedEpochs = new int[0];
+    private int epoch;
+    // Next hops out of the spur node that accepted paths with the same prefix already take
+    private int[] blockedHops = new int[16];
+    private int blockedHopCount;
+    private int spurNode;
+    private int currentNode;
+    private long currentCost;
+    private boolean guided;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+
+    /**
+     * Returns up to k loopless paths from source to target, shortest first. Ties are broken by
+     * fewer nodes, then by node ids. Guided searches need non-negative edge weights.
+     *
+     * @throws SearchAbortedException once the budget runs out
+     */
+    public List<Path> find(Adjacency graph, int source, int target, int k, boolean guided, SearchBudget budget) {
+        this.guided = guided;
+        this.budget = budget;
+        ensureCapacity(graph.capacity());
+        if (guided) {
+            towardsTarget.settleWithin(new ReversedAdjacency(graph), target, UNREACHABLE, budget);
+        }
+        List<Path> accepted = new ArrayList<>(k);
+        Path first = spurPath(graph, null, 0, source, target);
+        if (first == null) {
+            return accepted;
+        }
+        accepted.add(first);
+        Set<Path> seen = new HashSet<>();
+        seen.add(first);
+        PriorityQueue<Path> candidates = new PriorityQueue<>(SHORTEST_FIRST);
+        while (accepted.size() < k) {
+            Path last = accepted.get(accepted.size() - 1);
+            for (int spurIndex = last.deviation; spurIndex < last.nodes.length - 1; spurIndex++) {
+                blockHops(accepted, last, spurIndex);
+                Path candidate = spurPath(graph, last, spurIndex, source, target);
+                if (candidate != null && seen.add(candidate)) {
+                    candidates.offer(candidate);
+                }
+            }
+            Path next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            accepted.add(next);
+        }
+        return accepted;
+    }
+
+    @Override
+    public void visit(int target, int weight) {
+        if (settledEpochs[target] == epoch || blockedEpochs[target] == epoch) {
+            return;
+        }
+        if (currentNode == spurNode && isBlockedHop(target)) {
+            return;
+        }
+        int potential = potential(target);
+        if (potential == UNREACHABLE) {
+            return;
+        }
+        long cost = currentCost + weight;
+        if (reachedEpochs[target] != epoch || cost < costs[target]) {
+            costs[target] = cost;
+            predecessors[target] = currentNode;
+            reachedEpochs[target] = epoch;
+            heap.offer(target, cost + potential);
+        }
+    }
+
+    private void blockHops(List<Path> accepted, Path last, int spurIndex) {
+        blockedHopCount = 0;
+        for (Path path : accepted) {
+            if (path.nodes.length > spurIndex + 1
+                    && Arrays.equals(path.nodes, 0, spurIndex + 1, last.nodes, 0, spurIndex + 1)) {
+                if (blockedHopCount == blockedHops.length) {
+                    blockedHops = Arrays.copyOf(blockedHops, blockedHopCount * 2);
+                }
+                blockedHops[blockedHopCount++] = path.nodes[spurIndex + 1];
+            }
+        }
+    }
+
+    private boolean isBlockedHop(int node) {
+        for (int i = 0; i < blockedHopCount; i++) {
+            if (blockedHops[i] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Shortest path from the root's node at spurIndex, or from source without a root, avoiding the root's earlier nodes
+    private Path spurPath(Adjacency graph, Path root, int spurIndex, int source, int target) {
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reachedEpochs, 0);
+            Arrays.fill(settledEpochs, 0);
+            Arrays.fill(blockedEpochs, 0);
+            epoch = 1;
+        }
+        if (root == null) {
+            blockedHopCount = 0;
+            spurNode = source;
+        } else {
+            spurNode = root.nodes[spurIndex];
+            for (int i = 0; i < spurIndex; i++) {
+                blockedEpochs[root.nodes[i]] = epoch;
+            }
+        }
+        if (potential(spurNode) == UNREACHABLE) {
+            return null;
+        }
+        heap.clear();
+        costs[spurNode] = 0;
+        predecessors[spurNode] = -1;
+        reachedEpochs[spurNode] = epoch;
+        heap.offer(spurNode, potential(spurNode));
+        while (!heap.isEmpty()) {
+            budget.settled();
+            int node = heap.poll();
+            if (node == target) {
+                return join(root, spurIndex, target);
+            }
+            settledEpochs[node] = epoch;
+            currentNode = node;
+            currentCost = costs[node];
+            graph.forEachOutgoing(node, this);
+        }
+        return null;
+    }
+
+    // The root's prefix up to the spur node followed by the spur path the last search found
+    private Path join(Path root, int spurIndex, int target) {
+        int spurLength = 1;
+        for (int node = target; node != spurNode; node = predecessors[node]) {
+            spurLength++;
+        }
+        int rootLength = root == null ? 0 : spurIndex;
+        long rootCost = root == null ? 0 : root.prefixCosts[spurIndex];
+        int[] nodes = new int[rootLength + spurLength];
+        long[] prefixCosts = new long[nodes.length];
+        if (root != null) {
+            System.arraycopy(root.nodes, 0, nodes, 0, rootLength);
+            System.arraycopy(root.prefixCosts, 0, prefixCosts, 0, rootLength);
+        }
+        int node = target;
+        for (int i = nodes.length - 1; i >= rootLength; i--) {
+            nodes[i] = node;
+            prefixCosts[i] = rootCost + costs[node];
+            node = predecessors[node];
+        }
+        return new Path(nodes, prefixCosts, rootLength);
+    }
+
+    private int potential(int node) {
+        return guided ? towardsTarget.distanceTo(node) : 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (costs.length < capacity) {
+            int length = Math.max(capacity, costs.length * 2);
+            costs = Arrays.copyOf(costs, length);
+            predecessors = Arrays.copyOf(predecessors, length);
+            reachedEpochs = Arrays.copyOf(reachedEpochs, length);
+            settledEpochs = Arrays.copyOf(settledEpochs, length);
+            blockedEpochs = Arrays.copyOf(blockedEpochs, length);
+        }
+    }
+
+    /**
+     * A loopless path, its nodes from source to target with the cost of reaching each of them.
+     */
+    public static final class Path {
+
+        private final int[] nodes;
+        private final long[] prefixCosts;
+        // Index of the spur node where this path branched off the one it was found from
+        private final int deviation;
+
+        Path(int[] nodes, long[] prefixCosts, int deviation) {
+            this.nodes = nodes;
+            this.prefixCosts = prefixCosts;
+            this.deviation = deviation;
+        }
+
+        public int length() {
+            return nodes.length;
+        }
+
+        public int node(int index) {
+            return nodes[index];
+        }
+
+        public long getWeight() {
+            return prefixCosts[prefixCosts.length - 1];
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Path && Arrays.equals(nodes, ((Path) other).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+import static uphill.backend.challenge.engine.ShortestPathSearch.UNREACHABLE;
+
+/**
+ * Exact distances from and to a few landmark nodes, used as A* lower bounds through the triangle
+ * inequality (ALT). The bounds only hold for the graph version they were computed against.
+ */
+public class Landmarks {
+
+    private final long version;
+    private final int[] nodes;
+    private final int[][] fromLandmark;
+    private final int[][] toLandmark;
+
+    private Landmarks(long version, int[] nodes, int[][] fromLandmark, int[][] toLandmark) {
+        this.version = version;
+        this.nodes = nodes;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    /**
+     * Picks up to count landmarks by farthest-point selection. Nodes in components no landmark
+     * reaches yet are preferred, otherwise the node farthest from every chosen landmark is taken.
+     */
+    public static Landmarks select(CsrGraph graph, int count, long version) {
+        int capacity = graph.capacity();
+        ShortestPathSearch search = new ShortestPathSearch();
+        Adjacency reversed = new ReversedAdjacency(graph);
+        long[] closest = new long[capacity];
+        Arrays.fill(closest, Long.MAX_VALUE);
+        int[] nodes = new int[count];
+        int[][] fromLandmark = new int[count][];
+        int[][] toLandmark = new int[count][];
+        int selected = 0;
+        int next = mostConnectedNode(graph);
+        while (selected < count && next >= 0) {
+            nodes[selected] = next;
+            fromLandmark[selected] = distances(search, graph, next);
+            toLandmark[selected] = distances(search, reversed, next);
+            for (int node = 0; node < capacity; node++) {
+                long distance = Math.min(fromLandmark[selected][node], toLandmark[selected][node]);
+                if (distance != UNREACHABLE) {
+                    closest[node] = Math.min(closest[node], distance);
+                }
+            }
+            selected++;
+            next = farthestNode(graph, closest);
+        }
+        return new Landmarks(version, Arrays.copyOf(nodes, selected),
+                Arrays.copyOf(fromLandmark, selected), Arrays.copyOf(toLandmark, selected));
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Lower bound of the distance from node to target.
+     */
+    public int lowerBoundTo(int node, int target) {
+        long bound = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            int[] from = fromLandmark[i];
+            if (from[target] != UNREACHABLE && from[node] != UNREACHABLE) {
+                bound = Math.max(bound, (long) from[target] - from[node]);
+            }
+            int[] to = toLandmark[i];
+            if (to[node] != UNREACHABLE && to[target] != UNREACHABLE) {
+                bound = Math.max(bound, (long) to[node] - to[target]);
+            }
+        }
+        return (int) Math.min(bound, UNREACHABLE - 1);
+    }
+
+    private static int[] distances(ShortestPathSearch search, Adjacency graph, int landmark) {
+        int[] distances = new int[graph.capacity()];
+        Arrays.fill(distances, UNREACHABLE);
+        int settled = search.settleWithin(graph, landmark, UNREACHABLE);
+        for (int i = 0; i < settled; i++) {
+            int node = search.settledNode(i);
+            distances[node] = search.distanceTo(node);
+        }
+        return distances;
+    }
+
+    private static int mostConnectedNode(CsrGraph graph) {
+        int best = -1;
+        int bestDegree = 0;
+        for (int node = 0; node < graph.capacity(); node++) {
+            int degree = graph.outDegree(node) + graph.inDegree(node);
+            if (degree > bestDegree) {
+                best = node;
+                bestDegree = degree;
+            }
+        }
+        return best;
+    }
+
+    private static int farthestNode(CsrGraph graph, long[] closest) {
+        int best = -1;
+        long bestDistance = 0;
+        for (int node = 0; node < graph.capacity(); node++) {
+            if (closest[node] > bestDistance && graph.outDegree(node) + graph.inDegree(node) > 0) {
+                best = node;
+                bestDistance = closest[node];
+            }
+        }
+        return best;
+    }
+}
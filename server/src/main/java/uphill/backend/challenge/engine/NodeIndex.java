@@ -0,0 +1,73 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps node names to dense int ids. Ids of removed nodes are recycled so the id space stays
+ * close to the number of live nodes. Lookups by name are safe from any thread, every other
+ * method needs external synchronization.
+ */
+public class NodeIndex {
+
+    public static final int NO_ID = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private String[] names = new String[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int capacity;
+
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? NO_ID : id;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public boolean contains(String name) {
+        return ids.containsKey(name);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Upper bound (exclusive) of the ids handed out so far.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    public int add(String name) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = capacity++;
+            if (id == names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+        }
+        names[id] = name;
+        ids.put(name, id);
+        return id;
+    }
+
+    public int remove(String name) {
+        Integer id = ids.remove(name);
+        if (id == null) {
+            return NO_ID;
+        }
+        names[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+        return id;
+    }
+}
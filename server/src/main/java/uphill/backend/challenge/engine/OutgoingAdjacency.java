@@ -0,0 +1,15 @@
+package uphill.backend.challenge.engine;
+
+/**
+ * Read-only view of the outgoing edges of a graph whose nodes are identified by dense int ids,
+ * enough to copy it into a {@link CsrGraph}.
+ */
+public interface OutgoingAdjacency {
+
+    /**
+     * Upper bound (exclusive) of the node ids in use.
+     */
+    int capacity();
+
+    void forEachOutgoing(int node, EdgeVisitor visitor);
+}
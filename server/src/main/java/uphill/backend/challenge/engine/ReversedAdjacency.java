@@ -0,0 +1,29 @@
+package uphill.backend.challenge.engine;
+
+/**
+ * View of an {@link Adjacency} with every edge turned around, so forward searches over it
+ * compute distances to a node instead of from it.
+ */
+public class ReversedAdjacency implements Adjacency {
+
+    private final Adjacency graph;
+
+    public ReversedAdjacency(Adjacency graph) {
+        this.graph = graph;
+    }
+
+    @Override
+    public int capacity() {
+        return graph.capacity();
+    }
+
+    @Override
+    public void forEachOutgoing(int node, EdgeVisitor visitor) {
+        graph.forEachIncoming(node, visitor);
+    }
+
+    @Override
+    public void forEachIncoming(int node, EdgeVisitor visitor) {
+        graph.forEachOutgoing(node, visitor);
+    }
+}
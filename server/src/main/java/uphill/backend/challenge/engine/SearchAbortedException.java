@@ -0,0 +1,27 @@
+package uphill.backend.challenge.engine;
+
+/**
+ * Thrown out of a search whose {@link SearchBudget} ran out. Carries no stack trace, since it
+ * ends a query rather than reporting a bug.
+ */
+public class SearchAbortedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        NODE_LIMIT,
+        TIME_LIMIT,
+        DISCONNECTED
+    }
+
+    private final Reason reason;
+
+    public SearchAbortedException(Reason reason) {
+        super("Search aborted: " + reason, null, false, false);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
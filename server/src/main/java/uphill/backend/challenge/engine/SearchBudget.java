@@ -0,0 +1,67 @@
+package uphill.backend.challenge.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Work one search may do: how many nodes it may settle, until when it may run and whether its
+ * client still waits for the answer. Searches report every node they settle; the node count is
+ * checked each time, the clock every {@link #CHECK_INTERVAL} nodes and the client at most every
+ * {@link #PROBE_INTERVAL_NANOS}. A search out of budget throws {@link SearchAbortedException},
+ * leaving the search instance ready for the next query.
+ */
+public class SearchBudget {
+
+    public static final SearchBudget UNLIMITED = new SearchBudget(0, 0, null);
+    static final int CHECK_INTERVAL = 1024;
+    static final long PROBE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final boolean limited;
+    private final long maxSettledNodes;
+    private final long deadline;
+    private final boolean timed;
+    private final BooleanSupplier disconnected;
+    private long settled;
+    private long nextProbe;
+
+    /**
+     * Budget starting now. A limit of 0 leaves that dimension unlimited, and disconnected may be
+     * null when there is no client to probe.
+     */
+    public SearchBudget(long maxSettledNodes, long maxMillis, BooleanSupplier disconnected) {
+        this.maxSettledNodes = maxSettledNodes > 0 ? maxSettledNodes : Long.MAX_VALUE;
+        this.timed = maxMillis > 0;
+        this.disconnected = disconnected;
+        this.limited = maxSettledNodes > 0 || timed || disconnected != null;
+        long now = limited ? System.nanoTime() : 0;
+        this.deadline = now + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        // The first probe comes with the first clock check, later ones are spaced out
+        this.nextProbe = now;
+    }
+
+    /**
+     * Counts a settled node.
+     *
+     * @throws SearchAbortedException if the budget ran out or the client went away
+     */
+    public void settled() {
+        if (!limited) {
+            return;
+        }
+        if (++settled > maxSettledNodes) {
+            throw new SearchAbortedException(SearchAbortedException.Reason.NODE_LIMIT);
+        }
+        if (settled % CHECK_INTERVAL == 0) {
+            long now = System.nanoTime();
+            if (timed && now - deadline >= 0) {
+                throw new SearchAbortedException(SearchAbortedException.Reason.TIME_LIMIT);
+            }
+            if (disconnected != null && now - nextProbe >= 0) {
+                nextProbe = now + PROBE_INTERVAL_NANOS;
+                if (disconnected.getAsBoolean()) {
+                    throw new SearchAbortedException(SearchAbortedException.Reason.DISCONNECTED);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package uphill.backend.challenge.engine;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra's algorithm over an {@link Adjacency}, keeping distances in primitive arrays and the
+ * frontier in an {@link IndexedMinHeap}. Per-node state is validated with an epoch stamp, so a
+ * search only pays for the nodes it reaches and instances can be reused across queries. The
+ * predecessor of every reached node is kept, so the path to a settled node can be read back.
+ * Instances are not thread safe.
+ */
+public class ShortestPathSearch implements EdgeVisitor {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final IndexedMinHeap heap = new IndexedMinHeap();
+    private int[] distances = new int[0];
+    private int[] predecessors = new int[0];
+    private int[] reachedEpochs = new int[0];
+    private int[] settledEpochs = new int[0];
+    private int[] settled = new int[64];
+    private int settledCount;
+    private int epoch;
+    private int currentNode;
+    private int currentDistance;
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+
+    /**
+     * Returns the weight of the shortest path from source to target, or {@link #UNREACHABLE}.
+     */
+    public int distance(Adjacency graph, int source, int target) {
+        return distance(graph, source, target, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Like {@link #distance(Adjacency, int, int)}, throwing {@link SearchAbortedException} once
+     * the budget runs out.
+     */
+    public int distance(Adjacency graph, int source, int target, SearchBudget budget) {
+        start(graph, source, budget);
+        while (!heap.isEmpty()) {
+            int node = settleNext(graph);
+            if (node == target) {
+                return currentDistance;
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * Settles every node whose distance from source is lower than limit and returns how many
+     * were settled, source included. They can be read back with {@link #settledNode(int)}.
+     */
+    public int settleWithin(Adjacency graph, int source, int limit) {
+        return settleWithin(graph, source, limit, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Like {@link #settleWithin(Adjacency, int, int)}, throwing {@link SearchAbortedException}
+     * once the budget runs out.
+     */
+    public int settleWithin(Adjacency graph, int source, int limit, SearchBudget budget) {
+        start(graph, source, budget);
+        while (!heap.isEmpty() && heap.peekKey() < limit) {
+            settleNext(graph);
+        }
+        return settledCount;
+    }
+
+    public int settledNode(int index) {
+        return settled[index];
+    }
+
+    public int distanceTo(int node) {
+        return node < reachedEpochs.length && reachedEpochs[node] == epoch ? distances[node] : UNREACHABLE;
+    }
+
+    /**
+     * Nodes of the shortest path from the last search's source to a node it settled, both ends
+     * included, or null if the node was not reached.
+     */
+    public int[] pathTo(int node) {
+        if (distanceTo(node) == UNREACHABLE) {
+            return null;
+        }
+        int length = 1;
+        for (int hop = node; predecessors[hop] >= 0; hop = predecessors[hop]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int hop = node; hop >= 0; hop = predecessors[hop]) {
+            path[--length] = hop;
+        }
+        return path;
+    }
+
+    @Override
+    public void visit(int target, int weight) {
+        if (settledEpochs[target] == epoch) {
+            return;
+        }
+        long distance = (long) currentDistance + weight;
+        if (distance >= UNREACHABLE || distance < Integer.MIN_VALUE) {
+            return;
+        }
+        if (reachedEpochs[target] != epoch || distance < distances[target]) {
+            distances[target] = (int) distance;
+            predecessors[target] = currentNode;
+            reachedEpochs[target] = epoch;
+            heap.offer(target, distance);
+        }
+    }
+
+    private void start(Adjacency graph, int source, SearchBudget budget) {
+        this.budget = budget;
+        int capacity = graph.capacity();
+        if (distances.length < capacity) {
+            int length = Math.max(capacity, distances.length * 2);
+            distances = Arrays.copyOf(distances, length);
+            predecessors = Arrays.copyOf(predecessors, length);
+            reachedEpochs = Arrays.copyOf(reachedEpochs, length);
+            settledEpochs = Arrays.copyOf(settledEpochs, length);
+        }
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reachedEpochs, 0);
+            Arrays.fill(settledEpochs, 0);
+            epoch = 1;
+        }
+        heap.clear();
+        settledCount = 0;
+        distances[source] = 0;
+        predecessors[source] = -1;
+        reachedEpochs[source] = epoch;
+        heap.offer(source, 0);
+    }
+
+    private int settleNext(Adjacency graph) {
+        budget.settled();
+        int node = heap.poll();
+        settledEpochs[node] = epoch;
+        if (settledCount == settled.length) {
+            settled = Arrays.copyOf(settled, settledCount * 2);
+        }
+        settled[settledCount++] = node;
+        currentNode = node;
+        currentDistance = distances[node];
+        graph.forEachOutgoing(node, this);
+        return node;
+    }
+}
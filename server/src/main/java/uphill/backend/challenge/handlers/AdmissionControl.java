@@ -0,0 +1,56 @@
+package uphill.backend.challenge.handlers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits a server front end takes on: how many sessions it keeps at once, counting those still
+ * waiting for a thread, and how many pipelined commands one session may have answered but not yet
+ * written to its client. A client over the session limit is sent {@link #SERVER_BUSY} and closed
+ * right away instead of being left waiting.
+ */
+public class AdmissionControl {
+
+    public static final String SERVER_BUSY = "ERROR: SERVER BUSY";
+    public static final int DEFAULT_MAX_SESSIONS = 10000;
+    public static final int DEFAULT_MAX_PIPELINED_COMMANDS = 1024;
+    public static final AdmissionControl UNLIMITED = new AdmissionControl(0, 0);
+
+    private final int maxSessions;
+    private final int maxPipelinedCommands;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    /**
+     * A limit of 0 leaves that dimension unlimited.
+     */
+    public AdmissionControl(int maxSessions, int maxPipelinedCommands) {
+        this.maxSessions = maxSessions > 0 ? maxSessions : Integer.MAX_VALUE;
+        this.maxPipelinedCommands = maxPipelinedCommands > 0 ? maxPipelinedCommands : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Takes a session slot, returning false if the server is full. A taken slot must be given back
+     * with {@link #release()} once the session ends.
+     */
+    public boolean tryAdmit() {
+        int current;
+        do {
+            current = sessions.get();
+            if (current >= maxSessions) {
+                return false;
+            }
+        } while (!sessions.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release() {
+        sessions.decrementAndGet();
+    }
+
+    public int getSessions() {
+        return sessions.get();
+    }
+
+    public int getMaxPipelinedCommands() {
+        return maxPipelinedCommands;
+    }
+}
@@ -0,0 +1,181 @@
+package uphill.backend.challenge.handlers;
+
+import uphill.backend.challenge.metrics.CommandType;
+import uphill.backend.challenge.metrics.ServerMetrics;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
+import uphill.backend.challenge.model.GraphShard;
+import uphill.backend.challenge.model.Session;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static uphill.backend.challenge.handlers.CommandHandler.*;
+
+/**
+ * Parses a protocol line and routes it to the matching {@link CommandHandler} method. Shared by
+ * every server front end so they all speak the same protocol, and times every command into the
+ * shared {@link ServerMetrics}. Commands run against the session's current graph of the
+ * {@link GraphRegistry}; mutations are handed to that graph's shard while queries read its
+ * snapshot on the calling thread. A read only dispatcher, serving a replica, refuses mutations.
+ */
+public class CommandDispatcher {
+
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    private final GraphRegistry graphs;
+    private final ServerMetrics metrics;
+    private final boolean readOnly;
+    // Reused by every command a thread hands to a shard, so dispatching does not allocate
+    private final ThreadLocal<ShardCommand> shardCommands = ThreadLocal.withInitial(ShardCommand::new);
+
+    public CommandDispatcher(Graph graph) {
+        this(new GraphRegistry(graph), new ServerMetrics());
+    }
+
+    public CommandDispatcher(GraphRegistry graphs, ServerMetrics metrics) {
+        this(graphs, metrics, false);
+    }
+
+    public CommandDispatcher(GraphRegistry graphs, ServerMetrics metrics, boolean readOnly) {
+        this.graphs = graphs;
+        this.metrics = metrics;
+        this.readOnly = readOnly;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void register(Session session) {
+        sessions.put(session.getSessionId(), session);
+        metrics.sessionOpened();
+    }
+
+    public void unregister(Session session) {
+        sessions.remove(session.getSessionId());
+        metrics.sessionClosed();
+    }
+
+    public void dispatch(Session session, String line) {
+        dispatch(session, new CommandLine(), line);
+    }
+
+    /**
+     * Tokenizes the line into the connection's own {@link CommandLine} and routes it.
+     */
+    public void dispatch(Session session, CommandLine command, CharSequence line) {
+        long start = System.nanoTime();
+        command.reset(line);
+        long parsed = System.nanoTime();
+        session.startCommand();
+        CommandType type = route(session, command);
+        long lockWait = session.getLockWaitNanos();
+        long write = session.getWriteNanos();
+        long compute = System.nanoTime() - parsed - lockWait - write;
+        metrics.recordCommand(type, parsed - start, lockWait, compute, write);
+    }
+
+    private CommandType route(Session session, CommandLine command) {
+        GraphRegistry.Entry current = graphs.get(session.getGraphName());
+        Graph graph = current.getGraph();
+        if (command.keywordEquals("HI")) {
+            handleHiCommand(session, command, sessions);
+            return CommandType.HI;
+        } else if (command.keywordEquals("BYE")) {
+            handleByeCommand(session, command, sessions);
+            return CommandType.BYE;
+        } else if (command.keywordEquals("ADD")) {
+            mutate(session, command, current, CommandType.ADD);
+            return CommandType.ADD;
+        } else if (command.keywordEquals("REMOVE")) {
+            mutate(session, command, current, CommandType.REMOVE);
+            return CommandType.REMOVE;
+        } else if (command.keywordEquals("SHORTEST")) {
+            handleShortestPathCommand(session, command, graph);
+            return CommandType.SHORTEST;
+        } else if (command.keywordEquals("CLOSER")) {
+            handleCloserThanCommand(session, command, graph);
+            return CommandType.CLOSER;
+        } else if (command.keywordEquals("BEGIN")) {
+            handleBeginCommand(session, command);
+            return CommandType.BEGIN;
+        } else if (command.keywordEquals("COMMIT")) {
+            mutate(session, command, current, CommandType.COMMIT);
+            return CommandType.COMMIT;
+        } else if (command.keywordEquals("ROLLBACK")) {
+            handleRollbackCommand(session, command);
+            return CommandType.ROLLBACK;
+        } else if (command.keywordEquals("STATS")) {
+            handleStatsCommand(session, command, metrics, graph);
+            return CommandType.STATS;
+        } else if (command.keywordEquals("USE")) {
+            handleUseCommand(session, command, graphs);
+            return CommandType.USE;
+        }
+        session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        return CommandType.UNKNOWN;
+    }
+
+    private void mutate(Session session, CommandLine command, GraphRegistry.Entry entry, CommandType type) {
+        if (readOnly) {
+            session.send(ERROR_READ_ONLY_REPLICA);
+            return;
+        }
+        GraphShard shard = entry.getShard();
+        // Commands queued into a batch do not touch the graph
+        if (shard == null || (session.getBatch() != null && type != CommandType.COMMIT)) {
+            apply(session, command, entry.getGraph(), type);
+            return;
+        }
+        ShardCommand task = shardCommands.get();
+        task.prepare(session, command, entry.getGraph(), type);
+        session.setDeferringDurableReplies(true);
+        try {
+            shard.run(task);
+        } finally {
+            session.setDeferringDurableReplies(false);
+            task.prepare(null, null, null, null);
+        }
+        session.sendDeferredReply();
+    }
+
+    private static void apply(Session session, CommandLine command, Graph graph, CommandType type) {
+        switch (type) {
+            case ADD:
+                handleAddCommand(session, command, graph);
+                break;
+            case REMOVE:
+                handleRemoveCommand(session, command, graph);
+                break;
+            case COMMIT:
+                handleCommitCommand(session, command, graph);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a mutation: " + type);
+        }
+    }
+
+    private static final class ShardCommand extends GraphShard.Task {
+
+        private Session session;
+        private CommandLine command;
+        private Graph graph;
+        private CommandType type;
+
+        void prepare(Session session, CommandLine command, Graph graph, CommandType type) {
+            this.session = session;
+            this.command = command;
+            this.graph = graph;
+            this.type = type;
+        }
+
+        @Override
+        public void run() {
+            // Time in the shard's queue is this command's wait for the graph
+            session.recordLockWait(System.nanoTime() - submittedAt());
+            apply(session, command, graph, type);
+        }
+    }
+}
@@ -1,85 +1,187 @@
 package uphill.backend.challenge.handlers;
 
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.metrics.ServerMetrics;
+import uphill.backend.challenge.model.Batch;
 import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
 import uphill.backend.challenge.model.Session;
 
+import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
 
 public class CommandHandler {
 
+    private static final Logger LOGGER = Logger.getLogger(CommandHandler.class);
+
     public static final String SORRY_I_DID_NOT_UNDERSTAND_THAT = "SORRY, I DID NOT UNDERSTAND THAT";
+    public static final String BATCH_STARTED = "BATCH STARTED";
+    public static final String BATCH_DISCARDED = "BATCH DISCARDED";
+    public static final String ERROR_BATCH_ALREADY_STARTED = "ERROR: BATCH ALREADY STARTED";
+    public static final String ERROR_NO_BATCH_STARTED = "ERROR: NO BATCH STARTED";
+    public static final String USING_GRAPH = "USING GRAPH ";
+    public static final String ERROR_BATCH_IN_PROGRESS = "ERROR: BATCH IN PROGRESS";
+    public static final String ERROR_TOO_MANY_GRAPHS = "ERROR: TOO MANY GRAPHS";
+    public static final String ERROR_GRAPH_UNAVAILABLE = "ERROR: GRAPH UNAVAILABLE";
+    public static final String ERROR_READ_ONLY_REPLICA = "ERROR: READ ONLY REPLICA";
 
-    public static void handleCloserThanCommand(Session session, String[] parts, Graph graph) {
-        if (parts.length < 3) {
+    public static void handleCloserThanCommand(Session session, CommandLine command, Graph graph) {
+        if (command.tokenCount() != 4 || !command.isInt(2)) {
             session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
             return;
         }
-        String weight = parts[2];
-        String sourceNodeName = parts[3];
-        graph.findNodesCloserThan(Integer.parseInt(weight), sourceNodeName, session);
+        int weight = command.intToken(2);
+        String sourceNodeName = command.stringToken(3);
+        graph.findNodesCloserThan(weight, sourceNodeName, session);
     }
 
-    public static void handleShortestPathCommand(Session session, String[] parts, Graph graph) {
-        if (parts.length < 3) {
+    public static void handleShortestPathCommand(Session session, CommandLine command, Graph graph) {
+        if (command.tokenEquals(1, "ROUTES")) {
+            handleShortestRoutesCommand(session, command, graph);
+            return;
+        }
+        if (command.tokenCount() != 4) {
             session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
             return;
         }
-        String sourceNodeName = parts[2];
-        String destinationNodeName = parts[3];
-        graph.shortestPath(sourceNodeName, destinationNodeName, session);
+        String sourceNodeName = command.stringToken(2);
+        String destinationNodeName = command.stringToken(3);
+        if (command.tokenEquals(1, "ROUTE")) {
+            graph.shortestRoute(sourceNodeName, destinationNodeName, session);
+        } else {
+            graph.shortestPath(sourceNodeName, destinationNodeName, session);
+        }
     }
 
-    public static void handleRemoveCommand(Session session, String[] parts, Graph graph) {
-        if (parts.length < 2) {
+    private static void handleShortestRoutesCommand(Session session, CommandLine command, Graph graph) {
+        if (command.tokenCount() != 5 || !command.isInt(2)
+                || command.intToken(2) < 1 || command.intToken(2) > Graph.MAX_ROUTES) {
             session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
             return;
         }
-        String action = parts[1];
-        String nodeName;
-        if (action.equals("NODE")) {
-            nodeName = parts[2];
-            graph.removeNode(nodeName, session);
-        } else if (action.equals("EDGE")) {
-            if (parts.length < 4) {
-                session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
-                return;
+        int count = command.intToken(2);
+        String sourceNodeName = command.stringToken(3);
+        String destinationNodeName = command.stringToken(4);
+        graph.shortestRoutes(count, sourceNodeName, destinationNodeName, session);
+    }
+
+    public static void handleRemoveCommand(Session session, CommandLine command, Graph graph) {
+        // Inside a batch mutations are queued without a reply until COMMIT
+        Batch batch = session.getBatch();
+        if (command.tokenEquals(1, "NODE") && command.tokenCount() == 3) {
+            String nodeName = command.stringToken(2);
+            if (batch != null) {
+                batch.removeNode(nodeName);
+            } else {
+                graph.removeNode(nodeName, session);
+            }
+        } else if (command.tokenEquals(1, "EDGE") && command.tokenCount() == 4) {
+            String sourceNodeName = command.stringToken(2);
+            String destinationNodeName = command.stringToken(3);
+            if (batch != null) {
+                batch.removeEdge(sourceNodeName, destinationNodeName);
+            } else {
+                graph.removeEdge(sourceNodeName, destinationNodeName, session);
             }
-            String sourceNodeName = parts[2];
-            String destinationNodeName = parts[3];
-            graph.removeEdge(sourceNodeName, destinationNodeName, session);
         } else {
             session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
         }
     }
 
-    public static void handleAddCommand(Session session, String[] parts, Graph graph) {
-        if (parts.length < 2) {
+    public static void handleAddCommand(Session session, CommandLine command, Graph graph) {
+        Batch batch = session.getBatch();
+        if (command.tokenEquals(1, "NODE") && command.tokenCount() == 3) {
+            String nodeName = command.stringToken(2);
+            if (batch != null) {
+                batch.addNode(nodeName);
+            } else {
+                graph.addNode(nodeName, session);
+            }
+        } else if (command.tokenEquals(1, "EDGE") && command.tokenCount() == 5 && command.isInt(4)) {
+            String sourceNodeName = command.stringToken(2);
+            String destinationNodeName = command.stringToken(3);
+            int weight = command.intToken(4);
+            if (batch != null) {
+                batch.addEdge(sourceNodeName, destinationNodeName, weight);
+            } else {
+                graph.addEdge(sourceNodeName, destinationNodeName, weight, session);
+            }
+        } else {
             session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
-            return;
         }
+    }
 
-        String action = parts[1];
-        String nodeName = parts[2];
-        if (action.equals("NODE")) {
-            graph.addNode(nodeName, session);
-        } else if (action.equals("EDGE")) {
-            if (parts.length < 4) {
-                session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
-                return;
-            }
-            String sourceNodeName = parts[2];
-            String destinationNodeName = parts[3];
-            int weight = Integer.parseInt(parts[4]);
-            graph.addEdge(sourceNodeName, destinationNodeName, weight, session);
+    public static void handleBeginCommand(Session session, CommandLine command) {
+        if (command.tokenCount() != 1) {
+            session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        } else if (session.getBatch() != null) {
+            session.send(ERROR_BATCH_ALREADY_STARTED);
+        } else {
+            session.setBatch(new Batch());
+            session.send(BATCH_STARTED);
+        }
+    }
+
+    public static void handleCommitCommand(Session session, CommandLine command, Graph graph) {
+        Batch batch = session.getBatch();
+        if (command.tokenCount() != 1) {
+            session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        } else if (batch == null) {
+            session.send(ERROR_NO_BATCH_STARTED);
+        } else {
+            session.setBatch(null);
+            graph.commit(batch, session);
+        }
+    }
+
+    public static void handleRollbackCommand(Session session, CommandLine command) {
+        if (command.tokenCount() != 1) {
+            session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        } else if (session.getBatch() == null) {
+            session.send(ERROR_NO_BATCH_STARTED);
         } else {
+            session.setBatch(null);
+            session.send(BATCH_DISCARDED);
+        }
+    }
+
+    public static void handleStatsCommand(Session session, CommandLine command, ServerMetrics metrics, Graph graph) {
+        if (command.tokenCount() != 1) {
             session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
+            return;
+        }
+        for (String line : metrics.report(graph.getLockTimes())) {
+            session.send(line);
+        }
+    }
+
+    public static void handleUseCommand(Session session, CommandLine command, GraphRegistry graphs) {
+        if (command.tokenCount() != 2 || !GraphRegistry.isValidName(command.stringToken(1))) {
+            session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
+            return;
+        }
+        // A batch belongs to the graph it was started on
+        if (session.getBatch() != null) {
+            session.send(ERROR_BATCH_IN_PROGRESS);
+            return;
+        }
+        String name = command.stringToken(1);
+        try {
+            graphs.getOrCreate(name);
+            session.setGraphName(name);
+            session.send(USING_GRAPH + name);
+        } catch (IllegalStateException e) {
+            session.send(ERROR_TOO_MANY_GRAPHS);
+        } catch (IOException e) {
+            LOGGER.error("Could not open graph " + name + " -> " + e.getMessage());
+            session.send(ERROR_GRAPH_UNAVAILABLE);
         }
     }
 
-    public static void handleHiCommand(Session session, String[] parts, Map<UUID, Session> sessions) {
-        if (parts.length == 4 && parts[1].equals("I") && parts[2].equals("AM")) {
-            String name = parts[3];
+    public static void handleHiCommand(Session session, CommandLine command, Map<UUID, Session> sessions) {
+        if (command.tokenCount() == 4 && command.tokenEquals(1, "I") && command.tokenEquals(2, "AM")) {
+            String name = command.stringToken(3);
             session.setName(name);
             session.send("HI " + name);
             sessions.remove(session.getSessionId());
@@ -88,8 +190,8 @@ public class CommandHandler {
         }
     }
 
-    public static void handleByeCommand(Session session, String[] parts, Map<UUID, Session> sessions) {
-        if (parts.length == 2 && parts[1].equals("MATE!")) {
+    public static void handleByeCommand(Session session, CommandLine command, Map<UUID, Session> sessions) {
+        if (command.tokenCount() == 2 && command.tokenEquals(1, "MATE!")) {
             session.send("BYE " + session.getName() + ", WE SPOKE FOR " + session.getSessionDuration() + " MS");
             sessions.remove(session.getSessionId());
         } else {
@@ -0,0 +1,148 @@
+package uphill.backend.challenge.handlers;
+
+/**
+ * Space separated tokens of a protocol line, located by offsets into the line instead of being
+ * split into strings. Keywords are compared in place, numbers are parsed in place, and node names
+ * are only turned into strings through a small cache of recently seen names, so a line of known
+ * names is handled without allocating. Each connection keeps its own instance, which is reset for
+ * every line and is not thread safe.
+ */
+public class CommandLine {
+
+    private static final int MAX_TOKENS = 8;
+    private static final int NAME_CACHE_SIZE = 256;
+
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+    private final String[] names = new String[NAME_CACHE_SIZE];
+    private CharSequence line;
+    private int tokenCount;
+
+    public CommandLine reset(CharSequence line) {
+        this.line = line;
+        tokenCount = 0;
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && line.charAt(i) != ' ') {
+                i++;
+            }
+            // Longer lines are counted but never match a command
+            if (tokenCount < MAX_TOKENS) {
+                starts[tokenCount] = start;
+                ends[tokenCount] = i;
+            }
+            tokenCount++;
+        }
+        return this;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    public boolean tokenEquals(int index, String expected) {
+        if (index >= Math.min(tokenCount, MAX_TOKENS) || ends[index] - starts[index] != expected.length()) {
+            return false;
+        }
+        for (int i = 0, start = starts[index]; i < expected.length(); i++) {
+            if (line.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the first token ignoring commas, so that "HI," matches "HI".
+     */
+    public boolean keywordEquals(String expected) {
+        if (tokenCount == 0) {
+            return false;
+        }
+        int matched = 0;
+        for (int i = starts[0]; i < ends[0]; i++) {
+            char c = line.charAt(i);
+            if (c == ',') {
+                continue;
+            }
+            if (matched == expected.length() || c != expected.charAt(matched)) {
+                return false;
+            }
+            matched++;
+        }
+        return matched == expected.length();
+    }
+
+    public boolean isInt(int index) {
+        if (index >= Math.min(tokenCount, MAX_TOKENS)) {
+            return false;
+        }
+        int i = starts[index];
+        int end = ends[index];
+        boolean negative = line.charAt(i) == '-';
+        if (negative || line.charAt(i) == '+') {
+            i++;
+        }
+        if (i == end) {
+            return false;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+            if (value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a token {@link #isInt(int)} accepted.
+     */
+    public int intToken(int index) {
+        int i = starts[index];
+        boolean negative = line.charAt(i) == '-';
+        if (negative || line.charAt(i) == '+') {
+            i++;
+        }
+        long value = 0;
+        for (int end = ends[index]; i < end; i++) {
+            value = value * 10 + (line.charAt(i) - '0');
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    public String stringToken(int index) {
+        int start = starts[index];
+        int end = ends[index];
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        int slot = (hash ^ hash >>> 16) & (NAME_CACHE_SIZE - 1);
+        String cached = names[slot];
+        if (cached != null && cached.hashCode() == hash && tokenEquals(index, cached)) {
+            return cached;
+        }
+        String name = line.subSequence(start, end).toString();
+        names[slot] = name;
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(line);
+    }
+}
@@ -0,0 +1,282 @@
+package uphill.backend.challenge.handlers;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.model.Session;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.UUID;
+
+import static uphill.backend.challenge.handlers.SessionHandler.*;
+
+/**
+ * Per-connection state of the selector based server. Bytes read from the channel are decoded and
+ * framed into lines the same way {@link java.io.BufferedReader#readLine()} does, and replies are
+ * buffered and written back once every complete line of a read has been handled. A client that
+ * does not read its replies is not read from either once it has too many commands answered but
+ * unwritten, so the kernel pushes back on it instead of the replies piling up here. A client
+ * sending a line longer than {@link SessionHandler#MAX_LINE_LENGTH} is told so and closed.
+ * Only ever used from the event loop thread that owns the channel.
+ */
+public class NioSessionHandler {
+
+    private static final Logger LOGGER = Logger.getLogger(NioSessionHandler.class);
+    private static final int BUFFER_SIZE = 8192;
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final UUID sessionId;
+    private final CommandDispatcher dispatcher;
+    private final AdmissionControl admission;
+    private final Session session;
+    private final PrintWriter writer;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer decodedChars = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetDecoder decoder = CHARSET.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder();
+    private final CommandLine command = new CommandLine();
+    private boolean skipLineFeed;
+    private boolean lineTooLong;
+
+    private final StringBuilder pendingReplies = new StringBuilder();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private SessionTimeoutWheel.Timeout timeout;
+    private boolean closed;
+    // Input read while probing for a disconnection during a command, and whether the client is gone
+    private boolean probedInput;
+    private boolean peerClosed;
+    // Commands answered since the replies were last all written, and whether reading waits for them
+    private int pendingCommands;
+    private boolean readingPaused;
+
+    /**
+     * Handler of an admitted client, whose session slot is released when it closes.
+     */
+    public NioSessionHandler(SocketChannel channel, SelectionKey key, CommandDispatcher dispatcher,
+                             AdmissionControl admission) {
+        this.channel = channel;
+        this.key = key;
+        this.sessionId = UUID.randomUUID();
+        this.dispatcher = dispatcher;
+        this.admission = admission;
+        this.writer = new PrintWriter(new ReplyWriter());
+        this.session = new Session(sessionId, writer, System.currentTimeMillis());
+        session.setDisconnectProbe(this::isDisconnected);
+    }
+
+    public void open(SessionTimeoutWheel.Timeout timeout) throws IOException {
+        this.timeout = timeout;
+        dispatcher.register(session);
+        writer.println(HI_I_AM_COMMAND + sessionId);
+        LOGGER.info("Client connected with session id: '" + sessionId + "'");
+        flush();
+    }
+
+    public void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            // Like BufferedReader.readLine(), a last line without a line break still counts
+            if (line.length() > 0) {
+                timeout.touch();
+                dispatcher.dispatch(session, command, line);
+                line.setLength(0);
+                flush();
+            }
+            close();
+            return;
+        }
+        dispatcher.getMetrics().bytesRead(read);
+        handleInput();
+    }
+
+    // Answers the buffered commands until none are left or the client has too many replies to read
+    private void handleInput() throws IOException {
+        boolean atLimit;
+        do {
+            probedInput = false;
+            atLimit = handleReadBytes();
+            if (peerClosed) {
+                close();
+                return;
+            }
+            if (lineTooLong) {
+                writer.println(ERROR_LINE_TOO_LONG);
+                flush();
+                close();
+                return;
+            }
+            flush();
+        } while (probedInput || (atLimit && pendingCommands == 0));
+        if (atLimit) {
+            // Resumed by onWritable once the client read every reply
+            readingPaused = true;
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    // Returns true if it stopped at the pipelining limit, possibly with input left
+    private boolean handleReadBytes() {
+        while (true) {
+            readBuffer.flip();
+            CoderResult result = decoder.decode(readBuffer, decodedChars, false);
+            // Ready for writing again before commands run, a disconnect probe may read more into it
+            readBuffer.compact();
+            decodedChars.flip();
+            handleDecodedChars();
+            decodedChars.compact();
+            if (pendingCommands >= admission.getMaxPipelinedCommands()) {
+                return true;
+            }
+            if (!result.isOverflow() || peerClosed || lineTooLong) {
+                return false;
+            }
+        }
+    }
+
+    private void handleDecodedChars() {
+        int maxPipelinedCommands = admission.getMaxPipelinedCommands();
+        while (decodedChars.hasRemaining() && !peerClosed && pendingCommands < maxPipelinedCommands) {
+            char c = decodedChars.get();
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\n' || c == '\r') {
+                skipLineFeed = c == '\r';
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Read command: '" + line + "'");
+                }
+                timeout.touch();
+                pendingCommands++;
+                // Tokenized in place, the line is not copied into a string
+                dispatcher.dispatch(session, command, line);
+                line.setLength(0);
+            } else if (line.length() < MAX_LINE_LENGTH) {
+                line.append(c);
+            } else {
+                lineTooLong = true;
+                return;
+            }
+        }
+    }
+
+    // Called from a long command of this session on the event loop, which reads nothing meanwhile
+    private boolean isDisconnected() {
+        if (peerClosed || closed) {
+            return true;
+        }
+        if (!readBuffer.hasRemaining()) {
+            return false;
+        }
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                peerClosed = true;
+            } else if (read > 0) {
+                dispatcher.getMetrics().bytesRead(read);
+                probedInput = true;
+            }
+        } catch (IOException e) {
+            peerClosed = true;
+        }
+        return peerClosed;
+    }
+
+    public void onWritable() throws IOException {
+        writeBuffer.flip();
+        dispatcher.getMetrics().bytesWritten(channel.write(writeBuffer));
+        writeBuffer.compact();
+        if (writeBuffer.position() == 0) {
+            pendingCommands = 0;
+            key.interestOps(SelectionKey.OP_READ);
+            if (readingPaused) {
+                readingPaused = false;
+                handleInput();
+            }
+        }
+    }
+
+    /**
+     * Closes the session after it was idle for too long.
+     */
+    public void expire() {
+        if (!closed) {
+            dispatcher.getMetrics().sessionTimedOut();
+        }
+        close();
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        timeout.cancel();
+        dispatcher.unregister(session);
+        admission.release();
+        key.cancel();
+        try {
+            channel.close();
+            LOGGER.info(CLIENT_DISCONNECTED + "'" + sessionId + "'");
+        } catch (IOException e) {
+            LOGGER.error(SOME_ERROR_OCCURRED_WHILE_CLOSING_SOCKET + e.getMessage());
+        }
+    }
+
+    private void flush() throws IOException {
+        writer.flush();
+        if (pendingReplies.length() == 0) {
+            return;
+        }
+        byte[] bytes = pendingReplies.toString().getBytes(CHARSET);
+        pendingReplies.setLength(0);
+        if (writeBuffer.remaining() < bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + bytes.length));
+            writeBuffer.flip();
+            larger.put(writeBuffer);
+            writeBuffer = larger;
+        }
+        writeBuffer.put(bytes);
+        onWritable();
+        if (writeBuffer.position() > 0) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private class ReplyWriter extends Writer {
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            pendingReplies.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            pendingReplies.append(string, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
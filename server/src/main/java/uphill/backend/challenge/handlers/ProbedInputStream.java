@@ -0,0 +1,83 @@
+package uphill.backend.challenge.handlers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Input of a blocking client socket that the session's thread can probe for a closed connection
+ * while it is busy with a command. A probe waits at most a millisecond for input and keeps
+ * whatever arrived for the following reads.
+ */
+class ProbedInputStream extends FilterInputStream {
+
+    private static final int PROBE_TIMEOUT_MILLIS = 1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Socket socket;
+    private final byte[] probed = new byte[BUFFER_SIZE];
+    private int probedStart;
+    private int probedEnd;
+    private boolean ended;
+
+    ProbedInputStream(Socket socket) throws IOException {
+        super(socket.getInputStream());
+        this.socket = socket;
+    }
+
+    /**
+     * Returns true once the client closed its side of the connection or it broke.
+     */
+    boolean isDisconnected() {
+        if (ended || probedEnd == probed.length) {
+            // A client that filled the buffer was there a moment ago
+            return ended;
+        }
+        try {
+            int timeout = socket.getSoTimeout();
+            socket.setSoTimeout(PROBE_TIMEOUT_MILLIS);
+            try {
+                int read = in.read(probed, probedEnd, probed.length - probedEnd);
+                if (read < 0) {
+                    ended = true;
+                } else {
+                    probedEnd += read;
+                }
+            } catch (SocketTimeoutException e) {
+                // Nothing sent meanwhile, the connection is still open
+            } finally {
+                socket.setSoTimeout(timeout);
+            }
+        } catch (IOException e) {
+            ended = true;
+        }
+        return ended;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (probedStart < probedEnd) {
+            int count = Math.min(length, probedEnd - probedStart);
+            System.arraycopy(probed, probedStart, bytes, offset, count);
+            probedStart += count;
+            if (probedStart == probedEnd) {
+                probedStart = 0;
+                probedEnd = 0;
+            }
+            return count;
+        }
+        return ended ? -1 : in.read(bytes, offset, length);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return probedEnd - probedStart + (ended ? 0 : in.available());
+    }
+}
@@ -1,20 +1,17 @@
 package uphill.backend.challenge.handlers;
 
 import org.apache.log4j.Logger;
-import uphill.backend.challenge.model.Graph;
 import uphill.backend.challenge.model.Session;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 
-import static uphill.backend.challenge.handlers.CommandHandler.*;
-
 public class SessionHandler implements Runnable {
 
     private static final Logger LOGGER = Logger.getLogger(SessionHandler.class);
@@ -22,47 +19,76 @@ public class SessionHandler implements Runnable {
     public static final String HI_I_AM_COMMAND = "HI, I AM ";
     public static final String SOME_ERROR_OCCURRED_WHILE_CLOSING_SOCKET = "Some error occurred while closing socket -> ";
     public static final String CLIENT_DISCONNECTED = "Client disconnected. Session id: ";
+    public static final String ERROR_LINE_TOO_LONG = "ERROR: LINE TOO LONG";
+    public static final int SESSION_TIMEOUT = 30000; // 30 seconds
+    // No command comes close, a longer line is a client that never sends a line break
+    public static final int MAX_LINE_LENGTH = 64 * 1024;
 
     private final Socket clientSocket;
     private final UUID sessionId;
-    private long lastActivityTime;
-
-    private static final Map<UUID, Session> sessions = new HashMap<>();
 
-    private final Graph graph;
+    private final CommandDispatcher dispatcher;
+    private final SessionTimeoutWheel timeoutWheel;
+    private final int maxPipelinedCommands;
 
-    private static final int SESSION_TIMEOUT = 30000; // 30 seconds
+    public SessionHandler(Socket clientSocket, CommandDispatcher dispatcher, SessionTimeoutWheel timeoutWheel) {
+        this(clientSocket, dispatcher, timeoutWheel, AdmissionControl.UNLIMITED.getMaxPipelinedCommands());
+    }
 
-    public SessionHandler(Socket clientSocket, Graph graph) {
+    /**
+     * Handler that holds back the replies of at most maxPipelinedCommands buffered commands.
+     */
+    public SessionHandler(Socket clientSocket, CommandDispatcher dispatcher, SessionTimeoutWheel timeoutWheel,
+                          int maxPipelinedCommands) {
         this.clientSocket = clientSocket;
         this.sessionId = UUID.randomUUID();
-        this.lastActivityTime = System.currentTimeMillis();
-        this.graph = graph;
+        this.dispatcher = dispatcher;
+        this.timeoutWheel = timeoutWheel;
+        this.maxPipelinedCommands = maxPipelinedCommands;
     }
 
     @Override
     public void run() {
-        // Start the session timeout checker thread
-        Thread timeoutThread = new Thread(this::checkSessionTimeout);
-        timeoutThread.start();
+        // Idle sessions get their socket closed by the shared timeout wheel
+        SessionTimeoutWheel.Timeout timeout = timeoutWheel.register(this::expire);
+        Session session = null;
         try (
-                BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true)
+                ProbedInputStream input = new ProbedInputStream(clientSocket);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        dispatcher.getMetrics().countBytesIn(input)));
+                PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                        dispatcher.getMetrics().countBytesOut(clientSocket.getOutputStream()))))
         ) {
-            Session session = new Session(sessionId, writer, lastActivityTime);
-            sessions.put(sessionId, session);
+            session = new Session(sessionId, writer, System.currentTimeMillis());
+            // Commands run on this thread, so a long query can probe the socket itself
+            session.setDisconnectProbe(input::isDisconnected);
+            dispatcher.register(session);
             writer.println(HI_I_AM_COMMAND + sessionId);
+            writer.flush();
             LOGGER.info("Client connected with session id: '" + sessionId + "'");
 
+            CommandLine command = new CommandLine();
+            int unflushed = 0;
             String clientMessage;
             while ((clientMessage = reader.readLine()) != null) {
-                LOGGER.debug("Read command: '" + clientMessage + "'");
-                lastActivityTime = System.currentTimeMillis();
-                handleCommand(session, clientMessage);
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Read command: '" + clientMessage + "'");
+                }
+                timeout.touch();
+                dispatcher.dispatch(session, command, clientMessage);
+                // Pipelined commands already buffered are answered first, their replies go out in one write
+                if (++unflushed >= maxPipelinedCommands || !reader.ready()) {
+                    writer.flush();
+                    unflushed = 0;
+                }
             }
         } catch (IOException e) {
             LOGGER.error("Some error occurred and client disconnected. (" + e.getMessage() + ")");
         } finally {
+            timeout.cancel();
+            if (session != null) {
+                dispatcher.unregister(session);
+            }
             try {
                 clientSocket.close();
                 LOGGER.info(CLIENT_DISCONNECTED + "'" + sessionId + "'");
@@ -72,49 +98,12 @@ public class SessionHandler implements Runnable {
         }
     }
 
-    private void handleCommand(Session session, String command) {
-        String[] parts = command.split(" ");
-        String keyword = parts[0].replace(",", "");
-
-        switch (keyword) {
-            case "HI":
-                handleHiCommand(session, parts, sessions);
-                break;
-            case "BYE":
-                handleByeCommand(session, parts, sessions);
-                break;
-            case "ADD":
-                handleAddCommand(session, parts, graph);
-                break;
-            case "REMOVE":
-                handleRemoveCommand(session, parts, graph);
-                break;
-            case "SHORTEST":
-                handleShortestPathCommand(session, parts, graph);
-                break;
-            case "CLOSER":
-                handleCloserThanCommand(session, parts, graph);
-                break;
-            default:
-                session.send(SORRY_I_DID_NOT_UNDERSTAND_THAT);
-        }
-    }
-
-    private void checkSessionTimeout() {
-        while (true) {
-            if (System.currentTimeMillis() - lastActivityTime > SESSION_TIMEOUT) {
-                try {
-                    clientSocket.close();
-                } catch (IOException e) {
-                    LOGGER.error(SOME_ERROR_OCCURRED_WHILE_CLOSING_SOCKET + e.getMessage());
-                }
-                break;
-            }
-            try {
-                Thread.sleep(1000); // Check every second
-            } catch (InterruptedException e) {
-                LOGGER.error(e.getMessage());
-            }
+    private void expire() {
+        dispatcher.getMetrics().sessionTimedOut();
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            LOGGER.error(SOME_ERROR_OCCURRED_WHILE_CLOSING_SOCKET + e.getMessage());
         }
     }
 }
@@ -0,0 +1,154 @@
+package uphill.backend.challenge.handlers;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel tracking the idle deadline of every session on a single thread.
+ * Recording activity is a volatile write. The wheel only looks at a session again when its
+ * previous deadline comes up, and then either expires it or moves it to its new deadline.
+ */
+public class SessionTimeoutWheel implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionTimeoutWheel.class);
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final Timeout[] slots;
+    private final Queue<Timeout> registrations = new ConcurrentLinkedQueue<>();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    // ticks processed so far, only touched by the worker thread
+    private long tick;
+
+    public SessionTimeoutWheel(long timeoutMillis) {
+        this(timeoutMillis, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public SessionTimeoutWheel(long timeoutMillis, long tickMillis, int wheelSize) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.slots = new Timeout[wheelSize];
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, "session-timeout-wheel");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Starts tracking a session. The callback runs on the wheel thread once the session has been
+     * idle for longer than the timeout, so it should only close the connection or hand off.
+     */
+    public Timeout register(Runnable onExpire) {
+        Timeout timeout = new Timeout(onExpire);
+        registrations.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        long nextTick = startTime + tickNanos;
+        while (running) {
+            long delay = nextTick - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(this, delay);
+                continue;
+            }
+            transferRegistrations();
+            expireSlot((int) (tick % slots.length));
+            tick++;
+            nextTick += tickNanos;
+        }
+    }
+
+    private void transferRegistrations() {
+        Timeout timeout;
+        while ((timeout = registrations.poll()) != null) {
+            if (!timeout.cancelled) {
+                schedule(timeout, timeout.lastActivity + timeoutNanos);
+            }
+        }
+    }
+
+    private void expireSlot(int slot) {
+        Timeout timeout = slots[slot];
+        slots[slot] = null;
+        long now = System.nanoTime();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            if (timeout.cancelled) {
+                timeout = next;
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                link(slot, timeout);
+            } else {
+                long deadline = timeout.lastActivity + timeoutNanos;
+                if (deadline - now > 0) {
+                    schedule(timeout, deadline);
+                } else {
+                    expire(timeout);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void schedule(Timeout timeout, long deadline) {
+        long deadlineTick = (deadline - startTime + tickNanos - 1) / tickNanos;
+        // the current slot is being drained, the earliest place to go is the next one
+        long ticks = Math.max(deadlineTick, tick + 1);
+        timeout.remainingRounds = (ticks - tick - 1) / slots.length;
+        link((int) (ticks % slots.length), timeout);
+    }
+
+    private void link(int slot, Timeout timeout) {
+        timeout.next = slots[slot];
+        slots[slot] = timeout;
+    }
+
+    private void expire(Timeout timeout) {
+        try {
+            timeout.onExpire.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Some error occurred while expiring a session -> " + e.getMessage());
+        }
+    }
+
+    public static class Timeout {
+
+        private final Runnable onExpire;
+        private volatile long lastActivity = System.nanoTime();
+        private volatile boolean cancelled;
+        // owned by the wheel thread
+        private Timeout next;
+        private long remainingRounds;
+
+        Timeout(Runnable onExpire) {
+            this.onExpire = onExpire;
+        }
+
+        public void touch() {
+            lastActivity = System.nanoTime();
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package uphill.backend.challenge.metrics;
+
+/**
+ * Protocol commands told apart by their first keyword.
+ */
+public enum CommandType {
+    HI, BYE, ADD, REMOVE, SHORTEST, CLOSER, BEGIN, COMMIT, ROLLBACK, STATS, USE, UNKNOWN
+}
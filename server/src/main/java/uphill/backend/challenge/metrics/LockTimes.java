@@ -0,0 +1,33 @@
+package uphill.backend.challenge.metrics;
+
+/**
+ * How long threads waited for a set of locks and how long they held them. The owner calls
+ * {@link #acquired(long)} once it holds everything it asked for and {@link #released(long)}
+ * right before letting go.
+ */
+public class LockTimes {
+
+    private final ConcurrentHistogram waitTimes = new ConcurrentHistogram();
+    private final ConcurrentHistogram holdTimes = new ConcurrentHistogram();
+
+    /**
+     * Records the wait since the locks were requested and returns the time they were acquired.
+     */
+    public long acquired(long requestedAt) {
+        long now = System.nanoTime();
+        waitTimes.record(now - requestedAt);
+        return now;
+    }
+
+    public void released(long acquiredAt) {
+        holdTimes.record(System.nanoTime() - acquiredAt);
+    }
+
+    public ConcurrentHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    public ConcurrentHistogram getHoldTimes() {
+        return holdTimes;
+    }
+}
@@ -0,0 +1,104 @@
+package uphill.backend.challenge.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Replication state of a leader or a follower, reported as the REPLICATION line of STATS. Lag is
+ * counted in replicated records; a follower also reports how long ago it last had applied every
+ * record the leader told it about.
+ */
+public class ReplicationMetrics {
+
+    private final boolean leader;
+    private final LongSupplier leaderSequence;
+    private final LongAdder snapshots = new LongAdder();
+    // Leader side, the sequence each connected follower acknowledged
+    private final Map<Object, AtomicLong> acknowledged = new ConcurrentHashMap<>();
+    // Follower side
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong knownLeaderSequence = new AtomicLong();
+    private volatile long caughtUpAt = System.nanoTime();
+    private volatile boolean connected;
+
+    private ReplicationMetrics(boolean leader, LongSupplier leaderSequence) {
+        this.leader = leader;
+        this.leaderSequence = leaderSequence;
+    }
+
+    /**
+     * Metrics of a leader whose latest record is given by the supplier.
+     */
+    public static ReplicationMetrics leader(LongSupplier sequence) {
+        return new ReplicationMetrics(true, sequence);
+    }
+
+    public static ReplicationMetrics follower() {
+        return new ReplicationMetrics(false, null);
+    }
+
+    public void snapshotTransferred() {
+        snapshots.increment();
+    }
+
+    public void followerConnected(Object follower, long sequence) {
+        acknowledged.put(follower, new AtomicLong(sequence));
+    }
+
+    public void followerAcknowledged(Object follower, long sequence) {
+        AtomicLong current = acknowledged.get(follower);
+        if (current != null) {
+            current.set(sequence);
+        }
+    }
+
+    public void followerDisconnected(Object follower) {
+        acknowledged.remove(follower);
+    }
+
+    public void setConnected(boolean connected) {
+        this.connected = connected;
+    }
+
+    /**
+     * Records how far a follower got and the latest leader sequence it heard of.
+     */
+    public void applied(long sequence, long leaderSequence) {
+        applied.set(sequence);
+        knownLeaderSequence.set(leaderSequence);
+        if (sequence >= leaderSequence) {
+            caughtUpAt = System.nanoTime();
+        }
+    }
+
+    public long getLagRecords() {
+        if (leader) {
+            long sequence = leaderSequence.getAsLong();
+            long lag = 0;
+            for (AtomicLong follower : acknowledged.values()) {
+                lag = Math.max(lag, sequence - follower.get());
+            }
+            return lag;
+        }
+        return Math.max(0, knownLeaderSequence.get() - applied.get());
+    }
+
+    public long getLagMillis() {
+        return getLagRecords() == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - caughtUpAt);
+    }
+
+    String report() {
+        if (leader) {
+            return "REPLICATION role=leader sequence=" + leaderSequence.getAsLong()
+                    + " followers=" + acknowledged.size() + " max_lag_records=" + getLagRecords()
+                    + " snapshots=" + snapshots.sum();
+        }
+        return "REPLICATION role=follower connected=" + (connected ? 1 : 0) + " applied=" + applied.get()
+                + " leader_sequence=" + knownLeaderSequence.get() + " lag_records=" + getLagRecords()
+                + " lag_ms=" + getLagMillis() + " snapshots=" + snapshots.sum();
+    }
+}
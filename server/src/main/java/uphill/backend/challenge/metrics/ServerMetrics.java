@@ -0,0 +1,203 @@
+package uphill.backend.challenge.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and per-command timings of a server, shared by every session. Each command's time is
+ * split into parsing, waiting for the graph's mutation locks, computing and writing the reply.
+ */
+public class ServerMetrics {
+
+    public static final String END = "END";
+
+    private final CommandTimes[] commandTimes = new CommandTimes[CommandType.values().length];
+    private final LongAdder activeSessions = new LongAdder();
+    private final LongAdder sessionTimeouts = new LongAdder();
+    private final LongAdder sessionsRejected = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private volatile ReplicationMetrics replication;
+
+    public ServerMetrics() {
+        for (int i = 0; i < commandTimes.length; i++) {
+            commandTimes[i] = new CommandTimes();
+        }
+    }
+
+    public void recordCommand(CommandType type, long parseNanos, long lockWaitNanos, long computeNanos, long writeNanos) {
+        CommandTimes times = commandTimes[type.ordinal()];
+        times.parse.record(parseNanos);
+        times.lockWait.record(lockWaitNanos);
+        times.compute.record(computeNanos);
+        times.write.record(writeNanos);
+    }
+
+    /**
+     * Adds the replication state to the report of a leader or follower.
+     */
+    public void setReplication(ReplicationMetrics replication) {
+        this.replication = replication;
+    }
+
+    public void sessionOpened() {
+        activeSessions.increment();
+    }
+
+    public void sessionClosed() {
+        activeSessions.decrement();
+    }
+
+    public void sessionTimedOut() {
+        sessionTimeouts.increment();
+    }
+
+    public void sessionRejected() {
+        sessionsRejected.increment();
+    }
+
+    public void bytesRead(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void bytesWritten(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public long getActiveSessions() {
+        return activeSessions.sum();
+    }
+
+    public long getSessionTimeouts() {
+        return sessionTimeouts.sum();
+    }
+
+    public long getSessionsRejected() {
+        return sessionsRejected.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public ConcurrentHistogram getParseTimes(CommandType type) {
+        return commandTimes[type.ordinal()].parse;
+    }
+
+    public ConcurrentHistogram getLockWaitTimes(CommandType type) {
+        return commandTimes[type.ordinal()].lockWait;
+    }
+
+    public ConcurrentHistogram getComputeTimes(CommandType type) {
+        return commandTimes[type.ordinal()].compute;
+    }
+
+    public ConcurrentHistogram getWriteTimes(CommandType type) {
+        return commandTimes[type.ordinal()].write;
+    }
+
+    public InputStream countBytesIn(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesIn.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int read = super.read(bytes, offset, length);
+                if (read > 0) {
+                    bytesIn.add(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    public OutputStream countBytesOut(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+                bytesOut.add(length);
+            }
+        };
+    }
+
+    /**
+     * Current counters, the timings of the graph's mutation locks and the timings of every command seen
+     * so far as protocol lines, times in microseconds. The last line is {@value #END}.
+     */
+    public List<String> report(LockTimes graphLocks) {
+        List<String> lines = new ArrayList<>();
+        lines.add("SESSIONS active=" + getActiveSessions() + " timeouts=" + getSessionTimeouts()
+                + " rejected=" + getSessionsRejected() + " bytes_in=" + getBytesIn() + " bytes_out=" + getBytesOut());
+        StringBuilder lock = new StringBuilder("LOCK");
+        appendCount(lock, "acquired", graphLocks.getWaitTimes());
+        appendPercentiles(lock, "wait", graphLocks.getWaitTimes());
+        appendPercentiles(lock, "hold", graphLocks.getHoldTimes());
+        lines.add(lock.toString());
+        ReplicationMetrics replication = this.replication;
+        if (replication != null) {
+            lines.add(replication.report());
+        }
+        for (CommandType type : CommandType.values()) {
+            CommandTimes times = commandTimes[type.ordinal()];
+            if (times.parse.getCount() == 0) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder("COMMAND ").append(type);
+            appendCount(line, "count", times.parse);
+            appendPercentiles(line, "parse", times.parse);
+            appendPercentiles(line, "lock_wait", times.lockWait);
+            appendPercentiles(line, "compute", times.compute);
+            appendPercentiles(line, "write", times.write);
+            lines.add(line.toString());
+        }
+        lines.add(END);
+        return lines;
+    }
+
+    private static void appendCount(StringBuilder line, String name, ConcurrentHistogram histogram) {
+        line.append(' ').append(name).append('=').append(histogram.getCount());
+    }
+
+    private static void appendPercentiles(StringBuilder line, String name, ConcurrentHistogram histogram) {
+        line.append(' ').append(name).append("_p50_us=").append(micros(histogram.valueAtQuantile(0.5)))
+                .append(' ').append(name).append("_p99_us=").append(micros(histogram.valueAtQuantile(0.99)))
+                .append(' ').append(name).append("_max_us=").append(micros(histogram.getMax()));
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static class CommandTimes {
+
+        final ConcurrentHistogram parse = new ConcurrentHistogram();
+        final ConcurrentHistogram lockWait = new ConcurrentHistogram();
+        final ConcurrentHistogram compute = new ConcurrentHistogram();
+        final ConcurrentHistogram write = new ConcurrentHistogram();
+    }
+}
@@ -0,0 +1,38 @@
+package uphill.backend.challenge.metrics;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the same report as the STATS command at a fixed interval.
+ */
+public class StatsReporter implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(StatsReporter.class);
+    public static final long DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stats-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StatsReporter(ServerMetrics metrics, LockTimes graphLocks, long intervalSeconds) {
+        scheduler.scheduleAtFixedRate(() -> {
+            for (String line : metrics.report(graphLocks)) {
+                if (!ServerMetrics.END.equals(line)) {
+                    LOGGER.info(line);
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,204 @@
+package uphill.backend.challenge.model;
+
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.EdgeVisitor;
+
+import java.util.Arrays;
+
+/**
+ * Keeps each direction of every node's edges as (neighbour, weight) pairs in a growable int
+ * array, about 16 bytes per edge plus spare capacity. Rows double when full and are halved once
+ * removals leave them three quarters empty; {@link #compact()} trims every row to its edges.
+ * Looking for a duplicate edge scans the row, so adding edges to very high degree nodes costs
+ * more than with {@link ObjectEdgeStore}.
+ */
+class ArrayEdgeStore implements EdgeStore {
+
+    private static final int MIN_ROW_LENGTH = 4;
+
+    private final Rows outgoing = new Rows(true);
+    private final Rows incoming = new Rows(false);
+    private CsrGraph base;
+
+    @Override
+    public void addNode(int id) {
+        outgoing.clear(id);
+        incoming.clear(id);
+    }
+
+    @Override
+    public void load(CsrGraph base) {
+        this.base = base;
+        outgoing.ensureCapacity(base.capacity());
+        incoming.ensureCapacity(base.capacity());
+    }
+
+    @Override
+    public boolean addEdge(int from, int to, int weight) {
+        if (outgoing.indexOf(from, to, weight) >= 0) {
+            return false;
+        }
+        outgoing.append(from, to, weight);
+        incoming.append(to, from, weight);
+        return true;
+    }
+
+    @Override
+    public void removeEdges(int from, int to, EdgeVisitor removed) {
+        int[] row = outgoing.row(from);
+        int length = outgoing.lengths[from];
+        for (int i = length - 2; i >= 0; i -= 2) {
+            if (row[i] == to) {
+                incoming.remove(to, from, row[i + 1]);
+                removed.visit(to, row[i + 1]);
+                outgoing.removeAt(from, i);
+            }
+        }
+        outgoing.shrink(from);
+    }
+
+    @Override
+    public void removeNode(int id, EdgeVisitor removed) {
+        int[] fromRow = outgoing.row(id);
+        for (int i = 0; i < outgoing.lengths[id]; i += 2) {
+            incoming.remove(fromRow[i], id, fromRow[i + 1]);
+            removed.visit(fromRow[i], fromRow[i + 1]);
+        }
+        outgoing.clear(id);
+        int[] toRow = incoming.row(id);
+        for (int i = 0; i < incoming.lengths[id]; i += 2) {
+            if (outgoing.remove(toRow[i], id, toRow[i + 1])) {
+                removed.visit(toRow[i], toRow[i + 1]);
+            }
+        }
+        incoming.clear(id);
+    }
+
+    @Override
+    public int[] outgoingRow(int node) {
+        return outgoing.copy(node);
+    }
+
+    @Override
+    public int[] incomingRow(int node) {
+        return incoming.copy(node);
+    }
+
+    @Override
+    public void compact() {
+        outgoing.trim();
+        incoming.trim();
+    }
+
+    // One direction of edges; rows of nodes whose edges are still only in the base are null
+    private final class Rows {
+
+        private final boolean outgoing;
+        private int[][] pairs = new int[16][];
+        private int[] lengths = new int[16];
+
+        Rows(boolean outgoing) {
+            this.outgoing = outgoing;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > pairs.length) {
+                int length = Math.max(capacity, pairs.length * 2);
+                pairs = Arrays.copyOf(pairs, length);
+                lengths = Arrays.copyOf(lengths, length);
+            }
+        }
+
+        void clear(int node) {
+            ensureCapacity(node + 1);
+            pairs[node] = EMPTY_ROW;
+            lengths[node] = 0;
+        }
+
+        int[] row(int node) {
+            int[] row = pairs[node];
+            if (row == null) {
+                row = fromBase(node);
+                pairs[node] = row;
+                lengths[node] = row.length;
+            }
+            return row;
+        }
+
+        int indexOf(int node, int neighbour, int weight) {
+            int[] row = row(node);
+            for (int i = 0, length = lengths[node]; i < length; i += 2) {
+                if (row[i] == neighbour && row[i + 1] == weight) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void append(int node, int neighbour, int weight) {
+            int[] row = row(node);
+            int length = lengths[node];
+            if (length == row.length) {
+                row = Arrays.copyOf(row, Math.max(MIN_ROW_LENGTH, row.length * 2));
+                pairs[node] = row;
+            }
+            row[length] = neighbour;
+            row[length + 1] = weight;
+            lengths[node] = length + 2;
+        }
+
+        boolean remove(int node, int neighbour, int weight) {
+            int index = indexOf(node, neighbour, weight);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(node, index);
+            shrink(node);
+            return true;
+        }
+
+        // Moves the last pair into the gap, rows are unordered
+        void removeAt(int node, int index) {
+            int[] row = pairs[node];
+            int last = lengths[node] - 2;
+            row[index] = row[last];
+            row[index + 1] = row[last + 1];
+            lengths[node] = last;
+        }
+
+        void shrink(int node) {
+            int[] row = pairs[node];
+            int length = lengths[node];
+            if (length == 0) {
+                pairs[node] = EMPTY_ROW;
+            } else if (row.length > MIN_ROW_LENGTH && length <= row.length / 4) {
+                pairs[node] = Arrays.copyOf(row, row.length / 2);
+            }
+        }
+
+        int[] copy(int node) {
+            int[] row = pairs[node];
+            if (row == null) {
+                // Not materialized, the base builds an exact copy without keeping it
+                return fromBase(node);
+            }
+            return lengths[node] == 0 ? EMPTY_ROW : Arrays.copyOf(row, lengths[node]);
+        }
+
+        void trim() {
+            for (int node = 0; node < pairs.length; node++) {
+                int[] row = pairs[node];
+                if (row != null && row.length != lengths[node]) {
+                    pairs[node] = lengths[node] == 0 ? EMPTY_ROW : Arrays.copyOf(row, lengths[node]);
+                }
+            }
+        }
+
+        private int[] fromBase(int node) {
+            if (outgoing) {
+                return EdgeStore.toRow(base.outDegree(node), visitor -> base.forEachOutgoing(node, visitor));
+            }
+            return EdgeStore.toRow(base.inDegree(node), visitor -> base.forEachIncoming(node, visitor));
+        }
+    }
+}
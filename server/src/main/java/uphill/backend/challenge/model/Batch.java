@@ -0,0 +1,71 @@
+package uphill.backend.challenge.model;
+
+import java.util.Arrays;
+
+/**
+ * Node and edge mutations a session queues between BEGIN and COMMIT. They are applied by
+ * {@link Graph#commit(Batch, Session)} all together or not at all.
+ */
+public class Batch {
+
+    public static final byte ADD_NODE = 0;
+    public static final byte ADD_EDGE = 1;
+    public static final byte REMOVE_NODE = 2;
+    public static final byte REMOVE_EDGE = 3;
+
+    private byte[] kinds = new byte[64];
+    private String[] sources = new String[64];
+    private String[] destinations = new String[64];
+    private int[] weights = new int[64];
+    private int size;
+
+    public void addNode(String nodeName) {
+        add(ADD_NODE, nodeName, null, 0);
+    }
+
+    public void addEdge(String sourceNodeName, String destinationNodeName, int weight) {
+        add(ADD_EDGE, sourceNodeName, destinationNodeName, weight);
+    }
+
+    public void removeNode(String nodeName) {
+        add(REMOVE_NODE, nodeName, null, 0);
+    }
+
+    public void removeEdge(String sourceNodeName, String destinationNodeName) {
+        add(REMOVE_EDGE, sourceNodeName, destinationNodeName, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte kind(int index) {
+        return kinds[index];
+    }
+
+    public String source(int index) {
+        return sources[index];
+    }
+
+    public String destination(int index) {
+        return destinations[index];
+    }
+
+    public int weight(int index) {
+        return weights[index];
+    }
+
+    private void add(byte kind, String source, String destination, int weight) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            sources = Arrays.copyOf(sources, size * 2);
+            destinations = Arrays.copyOf(destinations, size * 2);
+            weights = Arrays.copyOf(weights, size * 2);
+        }
+        kinds[size] = kind;
+        sources[size] = source;
+        destinations[size] = destination;
+        weights[size] = weight;
+        size++;
+    }
+}
@@ -0,0 +1,24 @@
+package uphill.backend.challenge.model;
+
+/**
+ * A published snapshot together with the position the mutation log had reached at its version,
+ * so recovery from a copy of the snapshot only needs the log after that position.
+ */
+public class Checkpoint {
+
+    private final GraphSnapshot snapshot;
+    private final long logPosition;
+
+    Checkpoint(GraphSnapshot snapshot, long logPosition) {
+        this.snapshot = snapshot;
+        this.logPosition = logPosition;
+    }
+
+    public GraphSnapshot snapshot() {
+        return snapshot;
+    }
+
+    public long logPosition() {
+        return logPosition;
+    }
+}
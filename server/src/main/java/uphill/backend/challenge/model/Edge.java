@@ -2,27 +2,44 @@ package uphill.backend.challenge.model;
 
 public class Edge {
 
-    private final String from;
+    private final int from;
 
-    private final String to;
+    private final int to;
 
     private final int weight;
 
-    public Edge(String from, String to, int weight) {
+    public Edge(int from, int to, int weight) {
         this.from = from;
         this.to = to;
         this.weight = weight;
     }
 
-    public String getFrom() {
+    public int getFrom() {
         return from;
     }
 
-    public String getTo() {
+    public int getTo() {
         return to;
     }
 
     public int getWeight() {
         return weight;
     }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Edge)) {
+            return false;
+        }
+        Edge edge = (Edge) other;
+        return from == edge.from && to == edge.to && weight == edge.weight;
+    }
+
+    @Override
+    public int hashCode() {
+        return (from * 31 + to) * 31 + weight;
+    }
 }
@@ -0,0 +1,71 @@
+package uphill.backend.challenge.model;
+
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.EdgeVisitor;
+
+import java.util.function.Consumer;
+
+/**
+ * Outgoing and incoming edges of every node id, the part of {@link GraphStorage} that grows with
+ * the number of edges. Implementations follow the same concurrency contract as the storage: edge
+ * methods may run concurrently for distinct endpoints, everything else runs exclusively.
+ */
+interface EdgeStore {
+
+    int[] EMPTY_ROW = new int[0];
+
+    /**
+     * Gives a new or recycled id an empty set of edges.
+     */
+    void addNode(int id);
+
+    /**
+     * Takes the nodes of an otherwise empty store from the base, reading their edges from it
+     * until a mutation touches them.
+     */
+    void load(CsrGraph base);
+
+    /**
+     * Returns false when the same edge with the same weight is already there.
+     */
+    boolean addEdge(int from, int to, int weight);
+
+    /**
+     * Removes every edge from one node to the other and visits each removed edge's weight.
+     */
+    void removeEdges(int from, int to, EdgeVisitor removed);
+
+    /**
+     * Removes every edge of the node in either direction, visiting the other end and the weight
+     * of each removed edge once.
+     */
+    void removeNode(int id, EdgeVisitor removed);
+
+    /**
+     * Outgoing edges of the node as (target, weight) pairs.
+     */
+    int[] outgoingRow(int node);
+
+    /**
+     * Incoming edges of the node as (source, weight) pairs.
+     */
+    int[] incomingRow(int node);
+
+    /**
+     * Gives back memory held for edges that were removed or never added.
+     */
+    void compact();
+
+    static int[] toRow(int degree, Consumer<EdgeVisitor> edges) {
+        if (degree == 0) {
+            return EMPTY_ROW;
+        }
+        int[] row = new int[degree * 2];
+        int[] fill = new int[1];
+        edges.accept((node, weight) -> {
+            row[fill[0]++] = node;
+            row[fill[0]++] = weight;
+        });
+        return row;
+    }
+}
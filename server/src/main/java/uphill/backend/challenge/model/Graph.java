@@ -1,11 +1,48 @@
 package uphill.backend.challenge.model;
 
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.engine.BidirectionalSearch;
+import uphill.backend.challenge.engine.ContractionHierarchy;
+import uphill.backend.challenge.engine.ContractionHierarchySearch;
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.DeltaSteppingSearch;
+import uphill.backend.challenge.engine.DynamicShortestPaths;
+import uphill.backend.challenge.engine.EdgeChangeLog;
+import uphill.backend.challenge.engine.KShortestPaths;
+import uphill.backend.challenge.engine.Landmarks;
+import uphill.backend.challenge.engine.OutgoingAdjacency;
+import uphill.backend.challenge.engine.SearchAbortedException;
+import uphill.backend.challenge.engine.SearchBudget;
+import uphill.backend.challenge.engine.ShortestPathSearch;
+import uphill.backend.challenge.metrics.LockTimes;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
 
+/**
+ * Node mutations and batches hold the graph's structure lock exclusively. Edge mutations share
+ * it and only lock the stripes of their two endpoints, so edges between unrelated nodes change
+ * in parallel and reply without waiting for the exclusive lock. Node mutations and batches publish a
+ * new immutable {@link GraphSnapshot} before they reply, edge changes are published by the next
+ * query or node mutation, all of those applied since the last snapshot at once. Queries read the
+ * latest published snapshot and only take a lock to publish pending edge changes, so they do not
+ * block each other and mutations never wait for a long running query.
+ */
 public class Graph {
 
+    private static final Logger LOGGER = Logger.getLogger(Graph.class);
+
     public static final String ERROR_NODE_ALREADY_EXISTS = "ERROR: NODE ALREADY EXISTS";
     public static final String NODE_ADDED = "NODE ADDED";
     public static final String ERROR_NODE_NOT_FOUND = "ERROR: NODE NOT FOUND";
@@ -13,186 +50,873 @@ public class Graph {
     public static final String NODE_REMOVED = "NODE REMOVED";
     public static final String EDGE_REMOVED = "EDGE REMOVED";
     public static final String NODE_DELIMITER = ",";
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Set<String> nodes = new HashSet<>();
+    public static final String BATCH_COMMITTED = "BATCH COMMITTED: ";
+    public static final String AT_BATCH_COMMAND = " AT BATCH COMMAND ";
+    public static final String ERROR_MUTATION_LOG_FAILED = "ERROR: MUTATION LOG FAILED";
+    public static final String ERROR_QUERY_BUDGET_EXCEEDED = "ERROR: QUERY BUDGET EXCEEDED";
+    public static final String END_OF_ROUTES = "END";
+    public static final int MAX_ROUTES = 100;
+    public static final int DEFAULT_LANDMARKS = 8;
+    public static final int DEFAULT_HOT_SOURCES = 16;
+    // Below this many nodes forking costs more than a sequential search saves, and one core gains nothing
+    public static final int DEFAULT_PARALLEL_SEARCH_NODES =
+            Runtime.getRuntime().availableProcessors() > 1 ? 100_000 : 0;
+    // Landmarks only hold for one version, so they are selected once mutations have paused this long
+    private static final long LANDMARK_QUIET_MILLIS = 1000;
+    // Contraction hierarchies take far longer to build, so they wait until mutations have paused this long
+    private static final long HIERARCHY_QUIET_MILLIS = 2000;
+    // Trimming edge rows blocks mutations, so it waits until they have paused this long
+    private static final long COMPACTION_QUIET_MILLIS = 30_000;
+
+    private static final int INDEXER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    // Rebuilds search indexes of every graph off the request path. A graph runs at most one rebuild
+    // of each index at a time, so a long one only holds up other graphs if every thread is busy.
+    private static final ScheduledExecutorService INDEXER = Executors.newScheduledThreadPool(INDEXER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "graph-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock();
+    private final NodeLocks nodeLocks = new NodeLocks(NodeLocks.DEFAULT_STRIPES);
+    private final LockTimes lockTimes = new LockTimes();
+    private final GraphStorage storage;
+    // Edge mutations applied so far, and how many of them the latest snapshot includes
+    private final AtomicLong appliedEdgeMutations = new AtomicLong();
+    private volatile long publishedEdgeMutations;
+    private final QueryCache queryCache;
+    // Bumped by every successful mutation, cached replies are only valid for the version they were computed at
+    private long version;
+    private volatile GraphSnapshot snapshot = GraphSnapshot.EMPTY;
+
+    // Search scratch arrays are sized to the graph, so they are pooled rather than allocated per query
+    private final Queue<ShortestPathSearch> idleSearches = new ConcurrentLinkedQueue<>();
+    private final Queue<BidirectionalSearch> idleBidirectionalSearches = new ConcurrentLinkedQueue<>();
+    private final Queue<DeltaSteppingSearch> idleParallelSearches = new ConcurrentLinkedQueue<>();
+    private final Queue<KShortestPaths> idleRouteSearches = new ConcurrentLinkedQueue<>();
+    private final Queue<ContractionHierarchySearch> idleHierarchySearches = new ConcurrentLinkedQueue<>();
+    private volatile int parallelSearchNodes = DEFAULT_PARALLEL_SEARCH_NODES;
+    private volatile long queryMaxSettledNodes;
+    private volatile long queryMaxMillis;
+
+    private final int landmarkCount;
+    private final AtomicBoolean landmarkRebuildScheduled = new AtomicBoolean();
+    private volatile Landmarks landmarks;
 
-    private final Map<String, Set<Edge>> edges = new HashMap<>();
+    private volatile boolean contractionHierarchyEnabled;
+    private final AtomicBoolean hierarchyRebuildScheduled = new AtomicBoolean();
+    private volatile long lastMutationNanos;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private volatile ContractionHierarchy hierarchy;
+    // Held to publish or drop the hierarchy, so a build finishing after it was disabled cannot install it
+    private final ReentrantLock hierarchyLock = new ReentrantLock();
+    // Version of the graph the last build gave up on, not retried until the graph changes
+    private volatile long rejectedHierarchyVersion = -1;
+
+    // Edge changes of recent versions, replayed by the trees of hot CLOSER THAN sources
+    private final EdgeChangeLog changeLog = new EdgeChangeLog(EdgeChangeLog.DEFAULT_CAPACITY);
+    private final HotSources hotSources;
+
+    private MutationLog mutationLog = MutationLog.NONE;
 
     public Graph() {
+        this(QueryCache.DEFAULT_CAPACITY, DEFAULT_LANDMARKS, DEFAULT_HOT_SOURCES);
+    }
+
+    public Graph(int queryCacheCapacity, int landmarkCount, int hotSourceCount) {
+        this(queryCacheCapacity, landmarkCount, hotSourceCount, StorageBackend.OBJECTS);
+    }
+
+    public Graph(int queryCacheCapacity, int landmarkCount, int hotSourceCount, StorageBackend storageBackend) {
+        this.storage = new GraphStorage(nodeLocks, storageBackend);
+        this.queryCache = new QueryCache(queryCacheCapacity);
+        this.landmarkCount = landmarkCount;
+        this.hotSources = new HotSources(hotSourceCount);
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Wait and hold times of the locks taken by mutations.
+     */
+    public LockTimes getLockTimes() {
+        return lockTimes;
+    }
+
+    /**
+     * Graphs with at least this many nodes answer {@code CLOSER THAN} searches in parallel on the
+     * common fork/join pool, 0 keeps every search sequential.
+     */
+    public void setParallelSearchNodes(int parallelSearchNodes) {
+        this.parallelSearchNodes = parallelSearchNodes;
+    }
+
+    /**
+     * Answers {@code SHORTEST PATH} from a contraction hierarchy, rebuilt on the indexer thread once
+     * mutations have paused. Until the hierarchy catches up with the latest version, and in graphs
+     * with negative edges, queries fall back to the bidirectional search. Pays off when queries
+     * far outnumber mutations.
+     */
+    public void setContractionHierarchy(boolean enabled) {
+        hierarchyLock.lock();
+        try {
+            contractionHierarchyEnabled = enabled;
+            if (!enabled) {
+                hierarchy = null;
+            }
+        } finally {
+            hierarchyLock.unlock();
+        }
+        if (enabled) {
+            scheduleHierarchyRebuild();
+        }
+    }
+
+    /**
+     * Limits the searches behind each {@code SHORTEST PATH} and {@code CLOSER THAN} to a number of
+     * settled nodes and a run time, 0 leaving either unlimited. A query out of budget replies
+     * {@link #ERROR_QUERY_BUDGET_EXCEEDED}. Searches of clients that disconnect are always
+     * abandoned.
+     */
+    public void setQueryBudget(long maxSettledNodes, long maxMillis) {
+        this.queryMaxSettledNodes = maxSettledNodes;
+        this.queryMaxMillis = maxMillis;
+    }
+
+    /**
+     * Gives back memory the edge storage holds for removed edges and spare capacity. Blocks
+     * mutations while it runs, queries go on. Also runs on the indexer once mutations paused.
+     */
+    public void compactStorage() {
+        long acquired = lockExclusively(System.nanoTime());
+        try {
+            storage.compact();
+        } finally {
+            unlockExclusively(acquired);
+        }
+    }
+
+    /**
+     * Sets where successful mutations are logged from now on. Replies to mutations wait until
+     * the log made them durable, and are {@link #ERROR_MUTATION_LOG_FAILED} if it could not.
+     * Once the log failed, every mutation is refused with that reply.
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        long acquired = lockExclusively(System.nanoTime());
+        try {
+            this.mutationLog = mutationLog;
+        } finally {
+            unlockExclusively(acquired);
+        }
     }
 
     public void addNode(String nodeName, Session session) {
-        lock.writeLock().lock();
+        String reply;
+        MutationLog log;
+        long logPosition = 0;
+        long requested = System.nanoTime();
+        long acquired = lockExclusively(requested);
         try {
-            if (nodes.contains(nodeName)) {
-                session.send(ERROR_NODE_ALREADY_EXISTS);
-                return;
+            session.recordLockWait(acquired - requested);
+            log = mutationLog;
+            if (log.isFailed()) {
+                reply = ERROR_MUTATION_LOG_FAILED;
+            } else if (storage.addNode(nodeName)) {
+                mutated();
+                logPosition = log.nodeAdded(nodeName);
+                reply = NODE_ADDED;
+            } else {
+                reply = ERROR_NODE_ALREADY_EXISTS;
             }
-            nodes.add(nodeName);
-            session.send(NODE_ADDED);
         } finally {
-            lock.writeLock().unlock();
+            unlockExclusively(acquired);
         }
+        replyWhenDurable(session, log, logPosition, reply);
     }
 
     public void addEdge(String sourceNodeName, String destinationNodeName, int weight, Session session) {
-        lock.writeLock().lock();
+        String reply;
+        MutationLog log;
+        long logPosition = 0;
+        long requested = System.nanoTime();
+        structureLock.readLock().lock();
         try {
-            if (!nodes.contains(sourceNodeName) || !nodes.contains(destinationNodeName)) {
-                session.send(ERROR_NODE_NOT_FOUND);
-                return;
+            log = mutationLog;
+            int source = storage.idOf(sourceNodeName);
+            int destination = storage.idOf(destinationNodeName);
+            if (log.isFailed()) {
+                reply = ERROR_MUTATION_LOG_FAILED;
+            } else if (source < 0 || destination < 0) {
+                reply = ERROR_NODE_NOT_FOUND;
+            } else {
+                nodeLocks.lock(source, destination);
+                long acquired = lockTimes.acquired(requested);
+                try {
+                    session.recordLockWait(acquired - requested);
+                    storage.addEdge(source, destination, weight);
+                    // Versions only advance under the exclusive lock, so this change belongs to the next one
+                    changeLog.edgeAdded(version + 1, source, destination);
+                    logPosition = log.edgeAdded(sourceNodeName, destinationNodeName, weight);
+                    appliedEdgeMutations.incrementAndGet();
+                } finally {
+                    lockTimes.released(acquired);
+                    nodeLocks.unlock(source, destination);
+                }
+                reply = EDGE_ADDED;
             }
-            Edge edge = new Edge(sourceNodeName, destinationNodeName, weight);
-            Set<Edge> toEdges = edges.computeIfAbsent(sourceNodeName, k -> new HashSet<>());
-            toEdges.add(edge);
-            session.send(EDGE_ADDED);
         } finally {
-            lock.writeLock().unlock();
+            structureLock.readLock().unlock();
         }
+        replyWhenDurable(session, log, logPosition, reply);
     }
 
     public void removeNode(String nodeName, Session session) {
-        lock.writeLock().lock();
+        String reply;
+        MutationLog log;
+        long logPosition = 0;
+        long requested = System.nanoTime();
+        long acquired = lockExclusively(requested);
         try {
-            if (!nodes.contains(nodeName)) {
-                session.send(ERROR_NODE_NOT_FOUND);
-                return;
+            session.recordLockWait(acquired - requested);
+            log = mutationLog;
+            if (log.isFailed()) {
+                reply = ERROR_MUTATION_LOG_FAILED;
+            } else if (storage.removeNode(nodeName)) {
+                // The id may be recycled, trees holding it have to be recomputed
+                changeLog.reset(version + 1);
+                mutated();
+                logPosition = log.nodeRemoved(nodeName);
+                reply = NODE_REMOVED;
+            } else {
+                reply = ERROR_NODE_NOT_FOUND;
             }
-            boolean removed = nodes.remove(nodeName);
-            if (removed) {
-                edges.remove(nodeName);
-            }
-            session.send(NODE_REMOVED);
         } finally {
-            lock.writeLock().unlock();
+            unlockExclusively(acquired);
         }
+        replyWhenDurable(session, log, logPosition, reply);
     }
 
     public void removeEdge(String sourceNodeName, String destinationNodeName, Session session) {
-        lock.writeLock().lock();
+        String reply;
+        MutationLog log;
+        long logPosition = 0;
+        long requested = System.nanoTime();
+        structureLock.readLock().lock();
         try {
-            if (!nodes.contains(sourceNodeName) || !nodes.contains(destinationNodeName)) {
-                session.send(ERROR_NODE_NOT_FOUND);
-                return;
+            log = mutationLog;
+            int source = storage.idOf(sourceNodeName);
+            int destination = storage.idOf(destinationNodeName);
+            if (log.isFailed()) {
+                reply = ERROR_MUTATION_LOG_FAILED;
+            } else if (source < 0 || destination < 0) {
+                reply = ERROR_NODE_NOT_FOUND;
+            } else {
+                nodeLocks.lock(source, destination);
+                long acquired = lockTimes.acquired(requested);
+                try {
+                    session.recordLockWait(acquired - requested);
+                    storage.removeEdges(source, destination);
+                    changeLog.edgeRemoved(version + 1, source, destination);
+                    logPosition = log.edgeRemoved(sourceNodeName, destinationNodeName);
+                    appliedEdgeMutations.incrementAndGet();
+                } finally {
+                    lockTimes.released(acquired);
+                    nodeLocks.unlock(source, destination);
+                }
+                reply = EDGE_REMOVED;
             }
-            Set<Edge> fromEdges = edges.get(sourceNodeName);
-            if (fromEdges != null) {
-                Set<Edge> toRemove = new HashSet<>();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        replyWhenDurable(session, log, logPosition, reply);
+    }
 
-                for (Edge edge : fromEdges) {
-                    if (edge.getTo().equals(destinationNodeName)) {
-                        toRemove.add(edge);
-                    }
+    /**
+     * Applies every mutation of the batch under one lock acquisition and publishes a single new
+     * version, or applies none of them and names the first one that would have failed.
+     */
+    public void commit(Batch batch, Session session) {
+        String reply;
+        MutationLog log;
+        long logPosition = 0;
+        long requested = System.nanoTime();
+        long acquired = lockExclusively(requested);
+        try {
+            session.recordLockWait(acquired - requested);
+            log = mutationLog;
+            reply = log.isFailed() ? ERROR_MUTATION_LOG_FAILED : validate(batch);
+            if (reply == null) {
+                apply(batch);
+                if (batch.size() > 0) {
+                    mutated();
+                    logPosition = log.committed(batch);
                 }
+                reply = BATCH_COMMITTED + batch.size();
+            }
+        } finally {
+            unlockExclusively(acquired);
+        }
+        replyWhenDurable(session, log, logPosition, reply);
+    }
+
+    /**
+     * Captures the latest snapshot and the matching mutation log position. Only waits for an
+     * ongoing mutation, never for queries.
+     */
+    public Checkpoint checkpoint() {
+        return checkpoint(() -> mutationLog.position());
+    }
 
-                fromEdges.removeAll(toRemove);
-                session.send(EDGE_REMOVED);
+    /**
+     * Captures the latest snapshot together with a position read while no mutation can run, for
+     * logs that number mutations in more than one way.
+     */
+    public Checkpoint checkpoint(LongSupplier logPosition) {
+        long acquired = lockExclusively(System.nanoTime());
+        try {
+            // Edge mutations already in the log have to be in the snapshot as well
+            if (publishedEdgeMutations < appliedEdgeMutations.get()) {
+                mutated();
             }
+            return new Checkpoint(snapshot, logPosition.getAsLong());
         } finally {
-            lock.writeLock().unlock();
+            unlockExclusively(acquired);
         }
     }
 
-    public void shortestPath(String sourceNodeName, String destinationNodeName, Session session) {
-        lock.writeLock().lock();
-        int weight;
+    /**
+     * Fills an empty graph with the nodes and edges of a stored snapshot as its first version.
+     * Names are indexed by the stored node ids, with null for ids that were free.
+     */
+    public void load(String[] names, OutgoingAdjacency edges) {
+        long acquired = lockExclusively(System.nanoTime());
         try {
-            if (!nodes.contains(sourceNodeName) || !nodes.contains(destinationNodeName)) {
-                session.send(ERROR_NODE_NOT_FOUND);
+            if (storage.capacity() > 0) {
+                throw new IllegalStateException("Only an empty graph can be loaded");
+            }
+            storage.load(names, edges);
+            changeLog.reset(version + 1);
+            mutated();
+        } finally {
+            unlockExclusively(acquired);
+        }
+    }
+
+    /**
+     * Applies mutations recovered from persistent storage as one new version, without logging
+     * them again. Mutations that do not apply to the current graph are skipped.
+     */
+    public void restore(Batch batch) {
+        long acquired = lockExclusively(System.nanoTime());
+        try {
+            apply(batch);
+            if (batch.size() > 0) {
+                mutated();
+            }
+        } finally {
+            unlockExclusively(acquired);
+        }
+    }
+
+    public void shortestPath(String sourceNodeName, String destinationNodeName, Session session) {
+        GraphSnapshot current = latestSnapshot(session);
+        int source = storage.idOf(sourceNodeName);
+        int destination = storage.idOf(destinationNodeName);
+        if (!current.containsNode(source, sourceNodeName) || !current.containsNode(destination, destinationNodeName)) {
+            session.send(ERROR_NODE_NOT_FOUND);
+            return;
+        }
+        if (source == destination) {
+            session.send(String.valueOf(0));
+            return;
+        }
+        QueryCache.Key key = QueryCache.shortestPathKey(sourceNodeName, destinationNodeName);
+        String reply = queryCache.get(key, current.version());
+        if (reply == null) {
+            try {
+                reply = String.valueOf(distance(current, source, destination, budgetOf(session)));
+            } catch (SearchAbortedException e) {
+                replyAborted(session, e);
                 return;
             }
+            queryCache.put(key, current.version(), reply);
+        }
+        session.send(reply);
+    }
 
-            if (sourceNodeName.equals(destinationNodeName)) {
-                weight = 0;
-                session.send(String.valueOf(weight));
+    /**
+     * Replies the weight of the shortest path followed by its nodes, like {@code 8 A,B,C}, or just
+     * {@link ShortestPathSearch#UNREACHABLE} without a path.
+     */
+    public void shortestRoute(String sourceNodeName, String destinationNodeName, Session session) {
+        GraphSnapshot current = latestSnapshot(session);
+        int source = storage.idOf(sourceNodeName);
+        int destination = storage.idOf(destinationNodeName);
+        if (!current.containsNode(source, sourceNodeName) || !current.containsNode(destination, destinationNodeName)) {
+            session.send(ERROR_NODE_NOT_FOUND);
+            return;
+        }
+        QueryCache.Key key = QueryCache.shortestRouteKey(sourceNodeName, destinationNodeName);
+        String reply = queryCache.get(key, current.version());
+        if (reply == null) {
+            ShortestPathSearch search = acquireSearch();
+            try {
+                int distance = search.distance(current, source, destination, budgetOf(session));
+                int[] path = search.pathTo(destination);
+                if (distance == ShortestPathSearch.UNREACHABLE || path == null) {
+                    reply = String.valueOf(ShortestPathSearch.UNREACHABLE);
+                } else {
+                    StringBuilder route = new StringBuilder().append(distance).append(' ');
+                    appendNames(route, current, path.length, i -> path[i]);
+                    reply = route.toString();
+                }
+            } catch (SearchAbortedException e) {
+                replyAborted(session, e);
                 return;
+            } finally {
+                idleSearches.offer(search);
             }
+            queryCache.put(key, current.version(), reply);
+        }
+        session.send(reply);
+    }
+
+    /**
+     * Replies one line per loopless path, up to count of them (at most {@link #MAX_ROUTES}) and
+     * shortest first, each formatted
+     * like a {@link #shortestRoute} reply, then {@link #END_OF_ROUTES}.
+     */
+    public void shortestRoutes(int count, String sourceNodeName, String destinationNodeName, Session session) {
+        GraphSnapshot current = latestSnapshot(session);
+        int source = storage.idOf(sourceNodeName);
+        int destination = storage.idOf(destinationNodeName);
+        if (!current.containsNode(source, sourceNodeName) || !current.containsNode(destination, destinationNodeName)) {
+            session.send(ERROR_NODE_NOT_FOUND);
+            return;
+        }
+        QueryCache.Key key = QueryCache.shortestRoutesKey(sourceNodeName, destinationNodeName, count);
+        String reply = queryCache.get(key, current.version());
+        if (reply == null) {
+            KShortestPaths search = idleRouteSearches.poll();
+            if (search == null) {
+                search = new KShortestPaths();
+            }
+            StringBuilder routes = new StringBuilder();
+            try {
+                // Potentials from the target assume non-negative weights, like every other guided search
+                List<KShortestPaths.Path> paths = search.find(current, source, destination, count,
+                        !current.hasNegativeEdges(), budgetOf(session));
+                for (KShortestPaths.Path path : paths) {
+                    routes.append(path.getWeight()).append(' ');
+                    appendNames(routes, current, path.length(), path::node);
+                    routes.append(System.lineSeparator());
+                }
+            } catch (SearchAbortedException e) {
+                replyAborted(session, e);
+                return;
+            } finally {
+                idleRouteSearches.offer(search);
+            }
+            reply = routes.append(END_OF_ROUTES).toString();
+            queryCache.put(key, current.version(), reply);
+        }
+        session.send(reply);
+    }
+
+    public void findNodesCloserThan(int weight, String sourceNodeName, Session session) {
+        GraphSnapshot current = latestSnapshot(session);
+        int source = storage.idOf(sourceNodeName);
+        if (!current.containsNode(source, sourceNodeName)) {
+            session.send(ERROR_NODE_NOT_FOUND);
+            return;
+        }
+        QueryCache.Key key = QueryCache.closerThanKey(sourceNodeName, weight);
+        String reply = queryCache.get(key, current.version());
+        if (reply == null) {
+            List<String> nodesCloserThan = current.hasNegativeEdges() ? null
+                    : closerThanFromHotSource(current, sourceNodeName, source, weight);
+            if (nodesCloserThan == null) {
+                try {
+                    nodesCloserThan = closerThanBySearch(current, source, weight, budgetOf(session));
+                } catch (SearchAbortedException e) {
+                    replyAborted(session, e);
+                    return;
+                }
+            }
+            nodesCloserThan.sort(Comparator.naturalOrder());
+            reply = String.join(NODE_DELIMITER, nodesCloserThan);
+            queryCache.put(key, current.version(), reply);
+        }
+        session.send(reply);
+    }
 
-            weight = calculateWeightsInGraph(sourceNodeName, destinationNodeName, (node, weightedNodes) ->
-                    !node.equals(destinationNodeName)).get(destinationNodeName);
+    /**
+     * Rebuilds the landmarks from the latest snapshot. Runs on an indexer thread once mutations
+     * have paused, and again right after if the graph changed meanwhile.
+     */
+    void rebuildLandmarks() {
+        if (publishedEdgeMutations < appliedEdgeMutations.get()) {
+            publishPendingEdges();
+        }
+        GraphSnapshot current = snapshot;
+        try {
+            Landmarks previous = landmarks;
+            if (previous != null && previous.version() == current.version()) {
+                return;
+            }
+            long start = System.nanoTime();
+            CsrGraph copy = CsrGraph.copyOf(current);
+            landmarks = Landmarks.select(copy, landmarkCount, current.version());
+            LOGGER.debug("Selected " + landmarks.size() + " landmarks over " + copy.edgeCount() + " edges in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
         } finally {
-            lock.writeLock().unlock();
+            landmarkRebuildScheduled.set(false);
+            if (snapshot.version() != current.version()) {
+                scheduleLandmarkRebuild();
+            }
+        }
+    }
+
+    private void scheduleLandmarkRebuild() {
+        if (landmarkCount > 0 && landmarkRebuildScheduled.compareAndSet(false, true)) {
+            INDEXER.schedule(() -> runWhenQuiet(this::rebuildLandmarks, LANDMARK_QUIET_MILLIS),
+                    LANDMARK_QUIET_MILLIS, TimeUnit.MILLISECONDS);
         }
+    }
 
-        session.send(String.valueOf(weight));
+    private void scheduleCompaction() {
+        if (compactionScheduled.compareAndSet(false, true)) {
+            INDEXER.schedule(() -> runWhenQuiet(() -> {
+                compactionScheduled.set(false);
+                compactStorage();
+            }, COMPACTION_QUIET_MILLIS), COMPACTION_QUIET_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
-    private Map<String, Integer> calculateWeightsInGraph(String sourceNodeName, String destinationNodeName, StopCalculationCheck check) {
-        Map<String, Integer> weightedNodes = new HashMap<>();
-        Set<String> unvisited = new HashSet<>(nodes);
+    // Runs the rebuild on an indexer thread once no mutation came for the quiet period
+    private void runWhenQuiet(Runnable rebuild, long quietMillis) {
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis) - (System.nanoTime() - lastMutationNanos);
+        if (waitNanos > 0) {
+            INDEXER.schedule(() -> runWhenQuiet(rebuild, quietMillis), waitNanos, TimeUnit.NANOSECONDS);
+        } else {
+            rebuild.run();
+        }
+    }
+
+    /**
+     * Contracts the latest snapshot, in the order of the previous hierarchy if there is one and the
+     * graph has not grown much since, otherwise ordering the nodes from scratch. Runs on an indexer
+     * thread once mutations have paused, and again once they paused anew if the graph changed
+     * meanwhile.
+     */
+    void rebuildContractionHierarchy() {
+        if (publishedEdgeMutations < appliedEdgeMutations.get()) {
+            publishPendingEdges();
+        }
+        GraphSnapshot current = snapshot;
+        try {
+            ContractionHierarchy previous = hierarchy;
+            if (!contractionHierarchyEnabled || current.hasNegativeEdges()
+                    || (previous != null && previous.version() == current.version())
+                    || current.version() == rejectedHierarchyVersion) {
+                return;
+            }
+            long start = System.nanoTime();
+            CsrGraph copy = CsrGraph.copyOf(current);
+            ContractionHierarchy rebuilt = null;
+            if (previous != null && copy.capacity() <= previous.capacity() + previous.capacity() / 10) {
+                rebuilt = ContractionHierarchy.rebuild(copy, previous, current.version());
+            }
+            if (rebuilt == null) {
+                rebuilt = ContractionHierarchy.build(copy, current.version());
+            }
+            if (rebuilt == null) {
+                rejectedHierarchyVersion = current.version();
+                LOGGER.info("Gave up contracting " + copy.edgeCount() + " edges, too many shortcuts needed");
+                return;
+            }
+            hierarchyLock.lock();
+            try {
+                if (!contractionHierarchyEnabled) {
+                    return;
+                }
+                hierarchy = rebuilt;
+            } finally {
+                hierarchyLock.unlock();
+            }
+            LOGGER.debug("Contracted " + copy.edgeCount() + " edges with " + rebuilt.shortcutCount() + " shortcuts in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } finally {
+            hierarchyRebuildScheduled.set(false);
+            if (contractionHierarchyEnabled && snapshot.version() != current.version()) {
+                scheduleHierarchyRebuild();
+            }
+        }
+    }
 
-        for (String node : unvisited) {
-            weightedNodes.put(node, Integer.MAX_VALUE);
+    private void scheduleHierarchyRebuild() {
+        if (hierarchyRebuildScheduled.compareAndSet(false, true)) {
+            INDEXER.schedule(() -> runWhenQuiet(this::rebuildContractionHierarchy, HIERARCHY_QUIET_MILLIS),
+                    HIERARCHY_QUIET_MILLIS, TimeUnit.MILLISECONDS);
         }
+    }
 
-        weightedNodes.put(sourceNodeName, 0);
-        visitNode(sourceNodeName, unvisited, weightedNodes);
+    // Replays the batch against node existence only, returns the error reply of the first failing mutation
+    private String validate(Batch batch) {
+        Map<String, Boolean> exists = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String source = batch.source(i);
+            boolean sourceExists = exists.computeIfAbsent(source, name -> storage.idOf(name) >= 0);
+            String error = null;
+            switch (batch.kind(i)) {
+                case Batch.ADD_NODE:
+                    if (sourceExists) {
+                        error = ERROR_NODE_ALREADY_EXISTS;
+                    } else {
+                        exists.put(source, true);
+                    }
+                    break;
+                case Batch.REMOVE_NODE:
+                    if (sourceExists) {
+                        exists.put(source, false);
+                    } else {
+                        error = ERROR_NODE_NOT_FOUND;
+                    }
+                    break;
+                default:
+                    if (!sourceExists || !exists.computeIfAbsent(batch.destination(i), name -> storage.idOf(name) >= 0)) {
+                        error = ERROR_NODE_NOT_FOUND;
+                    }
+            }
+            if (error != null) {
+                return error + AT_BATCH_COMMAND + (i + 1);
+            }
+        }
+        return null;
+    }
 
-        String nodeToVisit;
-        do {
-            nodeToVisit = findNextNodeToVisit(unvisited, weightedNodes);
-            if (nodeToVisit == null) {
-                break;
+    // Every mutation of a validated batch succeeds, they all become part of the next version
+    private void apply(Batch batch) {
+        long next = version + 1;
+        for (int i = 0; i < batch.size(); i++) {
+            byte kind = batch.kind(i);
+            if (kind == Batch.ADD_NODE) {
+                storage.addNode(batch.source(i));
+            } else if (kind == Batch.REMOVE_NODE) {
+                if (storage.removeNode(batch.source(i))) {
+                    changeLog.reset(next);
+                }
+            } else {
+                int source = storage.idOf(batch.source(i));
+                int destination = storage.idOf(batch.destination(i));
+                if (source < 0 || destination < 0) {
+                    continue;
+                }
+                if (kind == Batch.ADD_EDGE) {
+                    storage.addEdge(source, destination, batch.weight(i));
+                    changeLog.edgeAdded(next, source, destination);
+                } else {
+                    storage.removeEdges(source, destination);
+                    changeLog.edgeRemoved(next, source, destination);
+                }
             }
+        }
+    }
 
-            visitNode(nodeToVisit, unvisited, weightedNodes);
-        } while (check.shouldContinue(nodeToVisit, weightedNodes));
+    // Called with the structure lock held exclusively after every successful mutation
+    private void mutated() {
+        version++;
+        snapshot = snapshot.next(storage, version);
+        storage.clearDirtyNodes();
+        publishedEdgeMutations = appliedEdgeMutations.get();
+        lastMutationNanos = System.nanoTime();
+        scheduleLandmarkRebuild();
+        scheduleCompaction();
+        if (contractionHierarchyEnabled) {
+            scheduleHierarchyRebuild();
+        }
+    }
 
-        return weightedNodes;
+    private static void replyWhenDurable(Session session, MutationLog log, long logPosition, String reply) {
+        if (session.isDeferringDurableReplies()) {
+            session.deferDurableReply(log, logPosition, reply);
+        } else {
+            session.send(log.awaitDurable(logPosition) ? reply : ERROR_MUTATION_LOG_FAILED);
+        }
+    }
+
+    // Publishes the edge mutations applied since the last snapshot, all in one, so a query sees
+    // every mutation acknowledged before it started
+    private GraphSnapshot latestSnapshot(Session session) {
+        if (publishedEdgeMutations < appliedEdgeMutations.get()) {
+            session.recordLockWait(publishPendingEdges());
+        }
+        return snapshot;
     }
 
-    private String findNextNodeToVisit(Set<String> unvisited, Map<String, Integer> weightedNodes) {
-        String smallest = null;
-        int smallestWeight = Integer.MAX_VALUE;
-        for (String toCheck : unvisited) {
-            if (weightedNodes.get(toCheck) < smallestWeight) {
-                smallestWeight = weightedNodes.get(toCheck);
-                smallest = toCheck;
+    // Returns how long it waited for the lock
+    private long publishPendingEdges() {
+        long requested = System.nanoTime();
+        long acquired = lockExclusively(requested);
+        try {
+            if (publishedEdgeMutations < appliedEdgeMutations.get()) {
+                mutated();
             }
+        } finally {
+            unlockExclusively(acquired);
         }
-        return smallest;
+        return acquired - requested;
     }
 
-    private void visitNode(String currentNode, Set<String> unvisited, Map<String, Integer> weightedNodes) {
-        int currentNodeWeight = weightedNodes.get(currentNode);
-        Set<Edge> outgoingEdges = edges.get(currentNode);
-        if (outgoingEdges != null) {
-            for (Edge edge : outgoingEdges) {
-                String targetNode = edge.getTo();
-                if (unvisited.contains(targetNode)) {
-                    int potentialNewWeight = currentNodeWeight + edge.getWeight();
-                    if (potentialNewWeight < weightedNodes.get(targetNode)) {
-                        weightedNodes.put(targetNode, potentialNewWeight);
-                    }
+    // Waits for edge mutations in progress to finish applying, returns when the lock was acquired
+    private long lockExclusively(long requested) {
+        structureLock.writeLock().lock();
+        return lockTimes.acquired(requested);
+    }
+
+    private void unlockExclusively(long acquired) {
+        lockTimes.released(acquired);
+        structureLock.writeLock().unlock();
+    }
+
+    // Answers from the maintained tree of the source once it is hot, null when it is not
+    private List<String> closerThanFromHotSource(GraphSnapshot current, String sourceNodeName, int source, int weight) {
+        HotSources.HotSource hotSource = hotSources.get(sourceNodeName);
+        if (hotSource == null) {
+            return null;
+        }
+        hotSource.lock.lock();
+        try {
+            DynamicShortestPaths paths = hotSource.paths;
+            if (paths.version() > current.version()) {
+                // Already caught up past the snapshot this query started from
+                return null;
+            }
+            paths.catchUp(current, source, current.version(), changeLog);
+            int closer = paths.countCloserThan(weight);
+            List<String> nodesCloserThan = new ArrayList<>(closer);
+            for (int i = 0; i < closer; i++) {
+                int node = paths.nodeByDistance(i);
+                if (node != source) {
+                    nodesCloserThan.add(current.nameOf(node));
                 }
             }
+            return nodesCloserThan;
+        } finally {
+            hotSource.lock.unlock();
         }
-        unvisited.remove(currentNode);
     }
 
-    public void findNodesCloserThan(int weight, String sourceNodeName, Session session) {
-        this.lock.readLock().lock();
-        List<String> nodesCloserThan;
+    private SearchBudget budgetOf(Session session) {
+        long maxSettledNodes = queryMaxSettledNodes;
+        long maxMillis = queryMaxMillis;
+        BooleanSupplier disconnected = session.getDisconnectProbe();
+        if (maxSettledNodes <= 0 && maxMillis <= 0 && disconnected == null) {
+            return SearchBudget.UNLIMITED;
+        }
+        return new SearchBudget(maxSettledNodes, maxMillis, disconnected);
+    }
+
+    // Nobody is left to read the reply of a client that disconnected
+    private static void replyAborted(Session session, SearchAbortedException e) {
+        if (e.getReason() != SearchAbortedException.Reason.DISCONNECTED) {
+            session.send(ERROR_QUERY_BUDGET_EXCEEDED);
+        }
+    }
+
+    private List<String> closerThanBySearch(GraphSnapshot current, int source, int weight, SearchBudget budget) {
+        int threshold = parallelSearchNodes;
+        if (threshold > 0 && current.capacity() >= threshold && !current.hasNegativeEdges()) {
+            return closerThanByParallelSearch(current, source, weight, budget);
+        }
+        ShortestPathSearch search = acquireSearch();
         try {
-            if (!nodes.contains(sourceNodeName)) {
-                session.send(ERROR_NODE_NOT_FOUND);
-                return;
+            int settled = search.settleWithin(current, source, weight, budget);
+            List<String> nodesCloserThan = new ArrayList<>(settled);
+            for (int i = 0; i < settled; i++) {
+                int node = search.settledNode(i);
+                if (node != source) {
+                    nodesCloserThan.add(current.nameOf(node));
+                }
             }
-            Map<String, Integer> weightedGraph = calculateWeightsInGraph(sourceNodeName, UUID.randomUUID().toString(), (node, weightedNodes) ->
-                    weightedNodes.get(node) < weight);
-            nodesCloserThan = weightedGraph.entrySet().stream().filter(entry ->
-                            entry.getValue() < weight).filter(entry ->
-                            !(entry.getKey()).equals(sourceNodeName))
-                    .map(Map.Entry::getKey)
-                    .sorted(Comparator.naturalOrder())
-                    .collect(Collectors.toList());
+            return nodesCloserThan;
         } finally {
-            this.lock.readLock().unlock();
+            idleSearches.offer(search);
+        }
+    }
+
+    // Delta-stepping relies on non-negative weights
+    private List<String> closerThanByParallelSearch(GraphSnapshot current, int source, int weight,
+                                                    SearchBudget budget) {
+        DeltaSteppingSearch search = idleParallelSearches.poll();
+        if (search == null) {
+            search = new DeltaSteppingSearch(ForkJoinPool.commonPool());
+        }
+        try {
+            int settled = search.settleWithin(current, source, weight, budget);
+            List<String> nodesCloserThan = new ArrayList<>(settled);
+            for (int i = 0; i < settled; i++) {
+                int node = search.settledNode(i);
+                if (node != source) {
+                    nodesCloserThan.add(current.nameOf(node));
+                }
+            }
+            return nodesCloserThan;
+        } finally {
+            idleParallelSearches.offer(search);
+        }
+    }
+
+    private int distance(GraphSnapshot current, int source, int destination, SearchBudget budget) {
+        if (current.hasNegativeEdges()) {
+            // Bidirectional stopping and landmark bounds assume non-negative weights
+            ShortestPathSearch search = acquireSearch();
+            try {
+                return search.distance(current, source, destination, budget);
+            } finally {
+                idleSearches.offer(search);
+            }
+        }
+        ContractionHierarchy currentHierarchy = hierarchy;
+        if (contractionHierarchyEnabled && currentHierarchy != null && currentHierarchy.version() == current.version()) {
+            ContractionHierarchySearch search = idleHierarchySearches.poll();
+            if (search == null) {
+                search = new ContractionHierarchySearch();
+            }
+            try {
+                return search.distance(currentHierarchy, source, destination, budget);
+            } finally {
+                idleHierarchySearches.offer(search);
+            }
+        }
+        Landmarks currentLandmarks = landmarks;
+        if (currentLandmarks != null && currentLandmarks.version() != current.version()) {
+            currentLandmarks = null;
+        }
+        BidirectionalSearch search = idleBidirectionalSearches.poll();
+        if (search == null) {
+            search = new BidirectionalSearch();
+        }
+        try {
+            return search.distance(current, source, destination, currentLandmarks, budget);
+        } finally {
+            idleBidirectionalSearches.offer(search);
+        }
+    }
+
+    private static void appendNames(StringBuilder line, GraphSnapshot current, int length, IntUnaryOperator nodes) {
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                line.append(NODE_DELIMITER);
+            }
+            line.append(current.nameOf(nodes.applyAsInt(i)));
         }
-        session.send(String.join(NODE_DELIMITER, nodesCloserThan));
     }
 
-    interface StopCalculationCheck {
-        boolean shouldContinue(String node, Map<String, Integer> weightedNode);
+    private ShortestPathSearch acquireSearch() {
+        ShortestPathSearch search = idleSearches.poll();
+        return search != null ? search : new ShortestPathSearch();
     }
 }
@@ -0,0 +1,155 @@
+package uphill.backend.challenge.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Named graphs that never share data, each pinned to one of a fixed number of
+ * {@link GraphShard}s. Graphs are created on first use and spread over the shards in turn, so
+ * graphs of different customers mutate on different cores without contending on a lock. The
+ * default graph is on no shard, its edge mutations run in parallel on the calling threads under
+ * node level locks, as do the mutations of every graph when there are no shards.
+ */
+public class GraphRegistry implements Closeable {
+
+    public static final String DEFAULT_GRAPH = "default";
+    public static final int MAX_GRAPHS = 1024;
+    // Handing a mutation to another thread costs a context switch, which only pays off with cores to spread over
+    public static final int DEFAULT_SHARDS = Runtime.getRuntime().availableProcessors() > 1
+            ? Runtime.getRuntime().availableProcessors() : 0;
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    /**
+     * Creates the graph behind a name that is used for the first time, recovering it from disk
+     * when it is persistent.
+     */
+    public interface GraphFactory {
+        Graph create(String name) throws IOException;
+    }
+
+    /**
+     * A graph under its name and the shard running its mutations, null for the default graph and
+     * when there are no shards.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final Graph graph;
+        private final GraphShard shard;
+
+        Entry(String name, Graph graph, GraphShard shard) {
+            this.name = name;
+            this.graph = graph;
+            this.shard = shard;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Graph getGraph() {
+            return graph;
+        }
+
+        public GraphShard getShard() {
+            return shard;
+        }
+    }
+
+    private final Map<String, Entry> graphs = new ConcurrentHashMap<>();
+    private final GraphFactory factory;
+    private final GraphShard[] shards;
+    // Serializes creations, so a persistent graph is never opened twice
+    private final ReentrantLock creationLock = new ReentrantLock();
+    private int nextShard;
+
+    /**
+     * Registry holding only the given default graph until others are used, which are created
+     * in memory with default settings.
+     */
+    public GraphRegistry(Graph defaultGraph) {
+        this(defaultGraph, name -> new Graph(), DEFAULT_SHARDS);
+    }
+
+    public GraphRegistry(Graph defaultGraph, GraphFactory factory, int shardCount) {
+        this.factory = factory;
+        this.shards = new GraphShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new GraphShard(i);
+        }
+        graphs.put(DEFAULT_GRAPH, new Entry(DEFAULT_GRAPH, defaultGraph, null));
+    }
+
+    public static boolean isValidName(String name) {
+        return NAME.matcher(name).matches();
+    }
+
+    public Entry get(String name) {
+        return graphs.get(name);
+    }
+
+    /**
+     * Returns the named graph, creating it if it is used for the first time.
+     *
+     * @throws IllegalArgumentException if the name is not valid
+     * @throws IllegalStateException    if it would be one graph more than {@link #MAX_GRAPHS}
+     * @throws IOException              if the factory could not create the graph
+     */
+    public Entry getOrCreate(String name) throws IOException {
+        Entry entry = graphs.get(name);
+        if (entry != null) {
+            return entry;
+        }
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid graph name " + name);
+        }
+        creationLock.lock();
+        try {
+            entry = graphs.get(name);
+            if (entry == null) {
+                if (graphs.size() >= MAX_GRAPHS) {
+                    throw new IllegalStateException("Too many graphs");
+                }
+                entry = register(name, factory.create(name));
+            }
+            return entry;
+        } finally {
+            creationLock.unlock();
+        }
+    }
+
+    /**
+     * Puts another graph under a name in use, on the same shard. Sessions using the name see the
+     * new graph from their next command on.
+     */
+    public void replace(String name, Graph graph) {
+        Entry entry = graphs.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown graph " + name);
+        }
+        graphs.put(name, new Entry(name, graph, entry.getShard()));
+    }
+
+    public Collection<Entry> entries() {
+        return graphs.values();
+    }
+
+    @Override
+    public void close() {
+        for (GraphShard shard : shards) {
+            shard.close();
+        }
+    }
+
+    private Entry register(String name, Graph graph) {
+        GraphShard shard = shards.length == 0 ? null : shards[nextShard++ % shards.length];
+        Entry entry = new Entry(name, graph, shard);
+        graphs.put(name, entry);
+        return entry;
+    }
+}
@@ -0,0 +1,132 @@
+package uphill.backend.challenge.model;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single worker thread that runs the mutations of the graphs pinned to it, one at a time. The
+ * submitting thread waits for its task to finish; neither handing a task over nor waiting for it
+ * allocates, so a command path can reuse one {@link Task} per thread.
+ */
+public class GraphShard implements Closeable {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    // How often a submitter waiting for room in a full queue checks whether the shard closed
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Work handed to a shard. An instance is only submitted by one thread at a time.
+     */
+    public abstract static class Task implements Runnable {
+
+        private volatile boolean done;
+        private Thread waiter;
+        private Throwable failure;
+        private long submittedAt;
+
+        /**
+         * When the task was handed to the shard, to tell how long it waited in the queue.
+         */
+        protected long submittedAt() {
+            return submittedAt;
+        }
+    }
+
+    GraphShard(int index) {
+        thread = new Thread(this::work, "graph-shard-" + index);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the task on the shard's thread and returns once it finished, rethrowing what it threw.
+     * A task submitted from the shard's own thread runs right away.
+     *
+     * @throws IllegalStateException if the shard closed before the task could run
+     */
+    public void run(Task task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        task.done = false;
+        task.failure = null;
+        task.waiter = Thread.currentThread();
+        task.submittedAt = System.nanoTime();
+        boolean interrupted = false;
+        boolean queued = false;
+        while (!queued && !closed) {
+            try {
+                queued = queue.offer(task, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        // Not queued before the close, or queued after the worker drained the queue: nobody else finishes it
+        if (!queued || (closed && queue.remove(task))) {
+            finish(task, closedFailure());
+        }
+        // The task may write to the caller's session, so the caller never leaves before it is done
+        while (!task.done) {
+            LockSupport.park(this);
+            interrupted |= Thread.interrupted();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (task.failure instanceof Error) {
+            throw (Error) task.failure;
+        } else if (task.failure != null) {
+            throw (RuntimeException) task.failure;
+        }
+    }
+
+    /**
+     * Stops the worker once its current task is done. Tasks still queued fail with an
+     * {@link IllegalStateException} rather than leaving their submitters waiting.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void work() {
+        while (!closed) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            Throwable failure = null;
+            try {
+                task.run();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            finish(task, failure);
+        }
+        Task task;
+        while ((task = queue.poll()) != null) {
+            finish(task, closedFailure());
+        }
+    }
+
+    private static void finish(Task task, Throwable failure) {
+        task.failure = failure;
+        task.done = true;
+        LockSupport.unpark(task.waiter);
+    }
+
+    private IllegalStateException closedFailure() {
+        return new IllegalStateException(thread.getName() + " is closed");
+    }
+}
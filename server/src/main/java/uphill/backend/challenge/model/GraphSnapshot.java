@@ -0,0 +1,119 @@
+package uphill.backend.challenge.model;
+
+import uphill.backend.challenge.engine.Adjacency;
+import uphill.backend.challenge.engine.EdgeVisitor;
+
+import java.util.Arrays;
+
+/**
+ * Immutable view of a {@link Graph} at one version, which queries read without taking a lock.
+ * Node names and adjacency rows live in fixed size pages, so publishing the next version only
+ * copies the page directory and the pages holding nodes changed by the mutation.
+ */
+public class GraphSnapshot implements Adjacency {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    static final GraphSnapshot EMPTY = new GraphSnapshot(0, 0, new String[0][], new int[0][][], new int[0][][], false);
+
+    private final long version;
+    private final int capacity;
+    private final String[][] names;
+    // rows hold (target, weight) pairs for outgoing edges and (source, weight) pairs for incoming ones
+    private final int[][][] outRows;
+    private final int[][][] inRows;
+    private final boolean negativeEdges;
+
+    private GraphSnapshot(long version, int capacity, String[][] names, int[][][] outRows, int[][][] inRows,
+                          boolean negativeEdges) {
+        this.version = version;
+        this.capacity = capacity;
+        this.names = names;
+        this.outRows = outRows;
+        this.inRows = inRows;
+        this.negativeEdges = negativeEdges;
+    }
+
+    /**
+     * Builds the snapshot of the storage's current state, sharing every page that holds no node
+     * marked dirty since the previous snapshot.
+     */
+    GraphSnapshot next(GraphStorage storage, long version) {
+        int nextCapacity = storage.capacity();
+        int pages = (nextCapacity + PAGE_MASK) >>> PAGE_BITS;
+        String[][] nextNames = Arrays.copyOf(names, pages);
+        int[][][] nextOutRows = Arrays.copyOf(outRows, pages);
+        int[][][] nextInRows = Arrays.copyOf(inRows, pages);
+        boolean[] copiedPages = new boolean[pages];
+        int[] dirtyNodes = storage.dirtyNodes();
+        for (int i = 0, count = storage.dirtyNodeCount(); i < count; i++) {
+            int node = dirtyNodes[i];
+            int page = node >>> PAGE_BITS;
+            if (!copiedPages[page]) {
+                copiedPages[page] = true;
+                nextNames[page] = page < names.length ? names[page].clone() : new String[PAGE_SIZE];
+                nextOutRows[page] = page < outRows.length ? outRows[page].clone() : new int[PAGE_SIZE][];
+                nextInRows[page] = page < inRows.length ? inRows[page].clone() : new int[PAGE_SIZE][];
+            }
+            int slot = node & PAGE_MASK;
+            nextNames[page][slot] = storage.nameOf(node);
+            nextOutRows[page][slot] = storage.outgoingRow(node);
+            nextInRows[page][slot] = storage.incomingRow(node);
+        }
+        return new GraphSnapshot(version, nextCapacity, nextNames, nextOutRows, nextInRows, storage.hasNegativeEdges());
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public boolean hasNegativeEdges() {
+        return negativeEdges;
+    }
+
+    /**
+     * Whether this snapshot holds the node under the given id, which may come from a newer
+     * version of the node index.
+     */
+    boolean containsNode(int id, String nodeName) {
+        return id >= 0 && id < capacity && nodeName.equals(nameOf(id));
+    }
+
+    /**
+     * Name of the node under the id, null for ids that are free in this version.
+     */
+    public String nameOf(int id) {
+        return names[id >>> PAGE_BITS][id & PAGE_MASK];
+    }
+
+    public int outDegree(int node) {
+        int[] row = outRows[node >>> PAGE_BITS][node & PAGE_MASK];
+        return row == null ? 0 : row.length / 2;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void forEachOutgoing(int node, EdgeVisitor visitor) {
+        visitRow(outRows[node >>> PAGE_BITS][node & PAGE_MASK], visitor);
+    }
+
+    @Override
+    public void forEachIncoming(int node, EdgeVisitor visitor) {
+        visitRow(inRows[node >>> PAGE_BITS][node & PAGE_MASK], visitor);
+    }
+
+    private static void visitRow(int[] row, EdgeVisitor visitor) {
+        if (row == null) {
+            return;
+        }
+        for (int i = 0; i < row.length; i += 2) {
+            visitor.visit(row[i], row[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package uphill.backend.challenge.model;
+
+import uphill.backend.challenge.engine.OutgoingAdjacency;
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.EdgeVisitor;
+import uphill.backend.challenge.engine.NodeIndex;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mutable node and edge store of a {@link Graph}, indexed by node id. Edges are kept by an
+ * {@link EdgeStore} of the chosen {@link StorageBackend}, incoming ones as well so that removing a
+ * node also drops the edges pointing at it before its id is recycled.
+ * Nodes whose name or edges changed are remembered until the next {@link GraphSnapshot} is built.
+ * <p>
+ * {@link #addEdge} and {@link #removeEdges} may run concurrently with each other while the
+ * caller holds the {@link NodeLocks} stripes of both endpoints and no other method runs. Every
+ * other method needs exclusive access, except {@link #idOf(String)} which is safe anytime.
+ * <p>
+ * A loaded graph is kept as a compact base and the edges of a node are only copied from it
+ * once a mutation touches that node, until then its rows are read from the base directly.
+ */
+class GraphStorage {
+
+    private final NodeIndex index = new NodeIndex();
+    private final EdgeStore edges;
+    private final AtomicInteger negativeEdges = new AtomicInteger();
+    private final EdgeVisitor countRemoved = (node, weight) -> {
+        if (weight < 0) {
+            negativeEdges.decrementAndGet();
+        }
+        markDirty(node);
+    };
+
+    // Changed nodes are listed per stripe, so concurrent edge mutations each append under a lock they hold
+    private final NodeLocks locks;
+    private final int[][] dirtyNodesByStripe;
+    private final int[] dirtyCountByStripe;
+    private boolean[] dirty = new boolean[16];
+    private int[] dirtyNodes = new int[16];
+    private int dirtyNodeCount;
+
+    GraphStorage(NodeLocks locks, StorageBackend backend) {
+        this.locks = locks;
+        this.edges = backend.createEdgeStore();
+        this.dirtyNodesByStripe = new int[locks.stripeCount()][4];
+        this.dirtyCountByStripe = new int[locks.stripeCount()];
+    }
+
+    int idOf(String nodeName) {
+        return index.idOf(nodeName);
+    }
+
+    String nameOf(int id) {
+        return index.nameOf(id);
+    }
+
+    boolean hasNegativeEdges() {
+        return negativeEdges.get() > 0;
+    }
+
+    boolean containsNode(String nodeName) {
+        return index.contains(nodeName);
+    }
+
+    boolean addNode(String nodeName) {
+        if (index.contains(nodeName)) {
+            return false;
+        }
+        int id = index.add(nodeName);
+        ensureDirtyCapacity(id + 1);
+        edges.addNode(id);
+        markDirty(id);
+        return true;
+    }
+
+    boolean removeNode(String nodeName) {
+        int id = index.remove(nodeName);
+        if (id == NodeIndex.NO_ID) {
+            return false;
+        }
+        markDirty(id);
+        edges.removeNode(id, countRemoved);
+        return true;
+    }
+
+    void addEdge(int from, int to, int weight) {
+        if (!edges.addEdge(from, to, weight)) {
+            // The same edge is already there
+            return;
+        }
+        if (weight < 0) {
+            negativeEdges.incrementAndGet();
+        }
+        markDirty(from);
+        markDirty(to);
+    }
+
+    void removeEdges(int from, int to) {
+        edges.removeEdges(from, to, countRemoved);
+        markDirty(from);
+    }
+
+    /**
+     * Outgoing edges of the node as (target, weight) pairs.
+     */
+    int[] outgoingRow(int node) {
+        return edges.outgoingRow(node);
+    }
+
+    /**
+     * Incoming edges of the node as (source, weight) pairs.
+     */
+    int[] incomingRow(int node) {
+        return edges.incomingRow(node);
+    }
+
+    /**
+     * Gives back memory the edge store holds for edges that are gone.
+     */
+    void compact() {
+        edges.compact();
+    }
+
+    /**
+     * Fills an empty storage with the named nodes and their edges. Null names are free ids, the
+     * remaining nodes get dense ids in the same order.
+     */
+    void load(String[] names, OutgoingAdjacency loaded) {
+        int[] ids = new int[names.length];
+        int[] nodes = new int[names.length];
+        int count = 0;
+        for (int node = 0; node < names.length; node++) {
+            if (names[node] != null) {
+                ids[node] = index.add(names[node]);
+                nodes[count++] = node;
+            }
+        }
+        int size = count;
+        ensureDirtyCapacity(size);
+        CsrGraph base = CsrGraph.copyOf(new OutgoingAdjacency() {
+            @Override
+            public int capacity() {
+                return size;
+            }
+
+            @Override
+            public void forEachOutgoing(int node, EdgeVisitor visitor) {
+                loaded.forEachOutgoing(nodes[node], (target, weight) -> visitor.visit(ids[target], weight));
+            }
+        });
+        edges.load(base);
+        for (int node = 0; node < size; node++) {
+            base.forEachOutgoing(node, (target, weight) -> {
+                if (weight < 0) {
+                    negativeEdges.incrementAndGet();
+                }
+            });
+            markDirty(node);
+        }
+    }
+
+    int[] dirtyNodes() {
+        mergeDirtyStripes();
+        return dirtyNodes;
+    }
+
+    int dirtyNodeCount() {
+        mergeDirtyStripes();
+        return dirtyNodeCount;
+    }
+
+    void clearDirtyNodes() {
+        for (int i = 0; i < dirtyNodeCount; i++) {
+            dirty[dirtyNodes[i]] = false;
+        }
+        dirtyNodeCount = 0;
+    }
+
+    int capacity() {
+        return index.capacity();
+    }
+
+    private void markDirty(int node) {
+        if (dirty[node]) {
+            return;
+        }
+        dirty[node] = true;
+        int stripe = locks.stripeOf(node);
+        int count = dirtyCountByStripe[stripe];
+        if (count == dirtyNodesByStripe[stripe].length) {
+            dirtyNodesByStripe[stripe] = Arrays.copyOf(dirtyNodesByStripe[stripe], count * 2);
+        }
+        dirtyNodesByStripe[stripe][count] = node;
+        dirtyCountByStripe[stripe] = count + 1;
+    }
+
+    private void mergeDirtyStripes() {
+        for (int stripe = 0; stripe < dirtyCountByStripe.length; stripe++) {
+            int count = dirtyCountByStripe[stripe];
+            if (count == 0) {
+                continue;
+            }
+            if (dirtyNodeCount + count > dirtyNodes.length) {
+                dirtyNodes = Arrays.copyOf(dirtyNodes, Math.max(dirtyNodeCount + count, dirtyNodes.length * 2));
+            }
+            System.arraycopy(dirtyNodesByStripe[stripe], 0, dirtyNodes, dirtyNodeCount, count);
+            dirtyNodeCount += count;
+            dirtyCountByStripe[stripe] = 0;
+        }
+    }
+
+    private void ensureDirtyCapacity(int capacity) {
+        if (capacity > dirty.length) {
+            dirty = Arrays.copyOf(dirty, Math.max(capacity, dirty.length * 2));
+        }
+    }
+}
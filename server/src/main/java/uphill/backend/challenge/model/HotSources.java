@@ -0,0 +1,70 @@
+package uphill.backend.challenge.model;
+
+import uphill.backend.challenge.engine.DynamicShortestPaths;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which CLOSER THAN sources get an incrementally maintained shortest path tree. A source
+ * is promoted once it has been queried {@link #PROMOTION_THRESHOLD} times, and the least recently
+ * queried tree is dropped when more than the capacity are kept.
+ */
+class HotSources {
+
+    static final int PROMOTION_THRESHOLD = 3;
+    private static final int MAX_TRACKED_SOURCES = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int capacity;
+    private final Map<String, int[]> queryCounts;
+    private final Map<String, HotSource> sources;
+
+    HotSources(int capacity) {
+        this.capacity = capacity;
+        this.queryCounts = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > MAX_TRACKED_SOURCES;
+            }
+        };
+        this.sources = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HotSource> eldest) {
+                return size() > HotSources.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Records a query from the source and returns its tree, or null while it is not hot.
+     */
+    HotSource get(String sourceNodeName) {
+        if (capacity == 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            HotSource source = sources.get(sourceNodeName);
+            if (source == null) {
+                int[] count = queryCounts.computeIfAbsent(sourceNodeName, name -> new int[1]);
+                if (++count[0] < PROMOTION_THRESHOLD) {
+                    return null;
+                }
+                queryCounts.remove(sourceNodeName);
+                source = new HotSource();
+                sources.put(sourceNodeName, source);
+            }
+            return source;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static class HotSource {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final DynamicShortestPaths paths = new DynamicShortestPaths();
+    }
+}
@@ -0,0 +1,81 @@
+package uphill.backend.challenge.model;
+
+/**
+ * Receives every successful mutation in the order it was applied, so it can be made durable.
+ * Appends are made with the graph lock held and return a position; the reply to the client is
+ * only sent once {@link #awaitDurable(long)} returned for it, and is an error if the mutation
+ * could not be made durable.
+ */
+public interface MutationLog {
+
+    MutationLog NONE = new MutationLog() {
+        @Override
+        public long nodeAdded(String nodeName) {
+            return 0;
+        }
+
+        @Override
+        public long edgeAdded(String sourceNodeName, String destinationNodeName, int weight) {
+            return 0;
+        }
+
+        @Override
+        public long nodeRemoved(String nodeName) {
+            return 0;
+        }
+
+        @Override
+        public long edgeRemoved(String sourceNodeName, String destinationNodeName) {
+            return 0;
+        }
+
+        @Override
+        public long committed(Batch batch) {
+            return 0;
+        }
+
+        @Override
+        public boolean awaitDurable(long position) {
+            return true;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return false;
+        }
+
+        @Override
+        public long position() {
+            return 0;
+        }
+    };
+
+    long nodeAdded(String nodeName);
+
+    long edgeAdded(String sourceNodeName, String destinationNodeName, int weight);
+
+    long nodeRemoved(String nodeName);
+
+    long edgeRemoved(String sourceNodeName, String destinationNodeName);
+
+    /**
+     * Appends all mutations of a committed batch as one unit, recovery applies all or none of them.
+     */
+    long committed(Batch batch);
+
+    /**
+     * Waits until everything up to the position is durable. Returns false if the log failed or
+     * closed before that, the mutations after its last durable position are then lost on restart.
+     */
+    boolean awaitDurable(long position);
+
+    /**
+     * Returns true once the log can no longer make appends durable, so mutations must be refused.
+     */
+    boolean isFailed();
+
+    /**
+     * Position right after the last append.
+     */
+    long position();
+}
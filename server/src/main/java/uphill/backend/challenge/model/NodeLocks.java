@@ -0,0 +1,52 @@
+package uphill.backend.challenge.model;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed number of locks that node ids are striped over. Edge mutations hold the locks of both
+ * endpoints, always taken in stripe order so that two of them can never wait on each other.
+ */
+class NodeLocks {
+
+    static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    NodeLocks(int stripeCount) {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + stripeCount);
+        }
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = stripeCount - 1;
+    }
+
+    int stripeCount() {
+        return stripes.length;
+    }
+
+    int stripeOf(int node) {
+        return node & mask;
+    }
+
+    void lock(int first, int second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        stripes[Math.min(a, b)].lock();
+        if (a != b) {
+            stripes[Math.max(a, b)].lock();
+        }
+    }
+
+    void unlock(int first, int second) {
+        int a = stripeOf(first);
+        int b = stripeOf(second);
+        if (a != b) {
+            stripes[Math.max(a, b)].unlock();
+        }
+        stripes[Math.min(a, b)].unlock();
+    }
+}
@@ -0,0 +1,135 @@
+package uphill.backend.challenge.model;
+
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.EdgeVisitor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps each direction of every node's edges in a set of {@link Edge} objects. Simple and fast
+ * to change, at the cost of around a hundred bytes of heap per edge.
+ */
+class ObjectEdgeStore implements EdgeStore {
+
+    private final List<Set<Edge>> outgoing = new ArrayList<>();
+    private final List<Set<Edge>> incoming = new ArrayList<>();
+    private CsrGraph base;
+
+    @Override
+    public void addNode(int id) {
+        if (id == outgoing.size()) {
+            outgoing.add(new HashSet<>());
+            incoming.add(new HashSet<>());
+        }
+    }
+
+    @Override
+    public void load(CsrGraph base) {
+        this.base = base;
+        for (int node = 0; node < base.capacity(); node++) {
+            outgoing.add(null);
+            incoming.add(null);
+        }
+    }
+
+    @Override
+    public boolean addEdge(int from, int to, int weight) {
+        Edge edge = new Edge(from, to, weight);
+        if (!outgoing(from).add(edge)) {
+            return false;
+        }
+        incoming(to).add(edge);
+        return true;
+    }
+
+    @Override
+    public void removeEdges(int from, int to, EdgeVisitor removed) {
+        Set<Edge> toEdges = incoming(to);
+        outgoing(from).removeIf(edge -> {
+            if (edge.getTo() == to) {
+                toEdges.remove(edge);
+                removed.visit(to, edge.getWeight());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void removeNode(int id, EdgeVisitor removed) {
+        Set<Edge> fromEdges = outgoing(id);
+        for (Edge edge : fromEdges) {
+            incoming(edge.getTo()).remove(edge);
+            removed.visit(edge.getTo(), edge.getWeight());
+        }
+        fromEdges.clear();
+        Set<Edge> toEdges = incoming(id);
+        for (Edge edge : toEdges) {
+            if (outgoing(edge.getFrom()).remove(edge)) {
+                removed.visit(edge.getFrom(), edge.getWeight());
+            }
+        }
+        toEdges.clear();
+    }
+
+    @Override
+    public int[] outgoingRow(int node) {
+        Set<Edge> edges = outgoing.get(node);
+        if (edges == null) {
+            return EdgeStore.toRow(base.outDegree(node), visitor -> base.forEachOutgoing(node, visitor));
+        }
+        return toRow(edges, true);
+    }
+
+    @Override
+    public int[] incomingRow(int node) {
+        Set<Edge> edges = incoming.get(node);
+        if (edges == null) {
+            return EdgeStore.toRow(base.inDegree(node), visitor -> base.forEachIncoming(node, visitor));
+        }
+        return toRow(edges, false);
+    }
+
+    @Override
+    public void compact() {
+        // Hash sets do not shrink, and rebuilding them would cost more than it gives back
+    }
+
+    private Set<Edge> outgoing(int node) {
+        Set<Edge> edges = outgoing.get(node);
+        if (edges == null) {
+            edges = new HashSet<>();
+            Set<Edge> created = edges;
+            base.forEachOutgoing(node, (target, weight) -> created.add(new Edge(node, target, weight)));
+            outgoing.set(node, edges);
+        }
+        return edges;
+    }
+
+    private Set<Edge> incoming(int node) {
+        Set<Edge> edges = incoming.get(node);
+        if (edges == null) {
+            edges = new HashSet<>();
+            Set<Edge> created = edges;
+            base.forEachIncoming(node, (source, weight) -> created.add(new Edge(source, node, weight)));
+            incoming.set(node, edges);
+        }
+        return edges;
+    }
+
+    private static int[] toRow(Set<Edge> edges, boolean outgoing) {
+        if (edges.isEmpty()) {
+            return EMPTY_ROW;
+        }
+        int[] row = new int[edges.size() * 2];
+        int i = 0;
+        for (Edge edge : edges) {
+            row[i++] = outgoing ? edge.getTo() : edge.getFrom();
+            row[i++] = edge.getWeight();
+        }
+        return row;
+    }
+}
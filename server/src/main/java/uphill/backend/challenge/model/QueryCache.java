@@ -0,0 +1,173 @@
+package uphill.backend.challenge.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded LRU cache of query replies. Every reply is stored with the graph version it was
+ * computed against and only served while the graph is still at that version, so a mutation
+ * invalidates every cached reply without touching the cache.
+ */
+public class QueryCache implements QueryCacheMXBean {
+
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public QueryCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > QueryCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public String get(Key key, long version) {
+        if (capacity <= 0) {
+            return null;
+        }
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null && entry.version != version) {
+                entries.remove(key);
+                entry = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.reply;
+    }
+
+    public void put(Key key, long version, String reply) {
+        if (capacity <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            entries.put(key, new Entry(version, reply));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public int getSize() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public static Key shortestPathKey(String sourceNodeName, String destinationNodeName) {
+        return new Key(QueryType.SHORTEST_PATH, sourceNodeName, destinationNodeName, 0);
+    }
+
+    public static Key shortestRouteKey(String sourceNodeName, String destinationNodeName) {
+        return new Key(QueryType.SHORTEST_ROUTE, sourceNodeName, destinationNodeName, 0);
+    }
+
+    public static Key shortestRoutesKey(String sourceNodeName, String destinationNodeName, int count) {
+        return new Key(QueryType.SHORTEST_ROUTES, sourceNodeName, destinationNodeName, count);
+    }
+
+    public static Key closerThanKey(String sourceNodeName, int weight) {
+        return new Key(QueryType.CLOSER_THAN, sourceNodeName, null, weight);
+    }
+
+    enum QueryType {
+        SHORTEST_PATH,
+        SHORTEST_ROUTE,
+        SHORTEST_ROUTES,
+        CLOSER_THAN
+    }
+
+    public static class Key {
+
+        private final QueryType type;
+        private final String source;
+        private final String destination;
+        private final int weight;
+
+        Key(QueryType type, String source, String destination, int weight) {
+            this.type = type;
+            this.source = source;
+            this.destination = destination;
+            this.weight = weight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return weight == key.weight && type == key.type && source.equals(key.source)
+                    && Objects.equals(destination, key.destination);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type.hashCode();
+            result = 31 * result + source.hashCode();
+            result = 31 * result + (destination != null ? destination.hashCode() : 0);
+            return 31 * result + weight;
+        }
+    }
+
+    private static class Entry {
+
+        private final long version;
+        private final String reply;
+
+        Entry(long version, String reply) {
+            this.version = version;
+            this.reply = reply;
+        }
+    }
+}
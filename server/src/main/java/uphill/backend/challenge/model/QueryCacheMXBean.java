@@ -0,0 +1,17 @@
+package uphill.backend.challenge.model;
+
+/**
+ * Runtime view of a {@link QueryCache}, published over JMX by the server.
+ */
+public interface QueryCacheMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    int getSize();
+
+    int getCapacity();
+}
@@ -2,12 +2,26 @@ package uphill.backend.challenge.model;
 
 import java.io.PrintWriter;
 import java.util.UUID;
+import java.util.function.BooleanSupplier;
 
 public class Session {
     private final UUID sessionId;
     private final PrintWriter out;
     private String name;
     private final long startTime;
+    private Batch batch;
+    private String graphName = GraphRegistry.DEFAULT_GRAPH;
+
+    // Set while a graph shard runs the current command, its reply then waits for the log on the session's own thread
+    private boolean deferringDurableReplies;
+    private MutationLog deferredLog;
+    private long deferredLogPosition;
+    private String deferredReply;
+
+    // Time spent by the current command waiting for the graph's lock and writing replies
+    private long lockWaitNanos;
+    private long writeNanos;
+    private BooleanSupplier disconnectProbe;
 
     public Session(UUID sessionId, PrintWriter out, long startTime) {
         this.sessionId = sessionId;
@@ -27,11 +41,98 @@ public class Session {
         this.name = name;
     }
 
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    public String getGraphName() {
+        return graphName;
+    }
+
+    public void setGraphName(String graphName) {
+        this.graphName = graphName;
+    }
+
+    /**
+     * Sets how a long running command of this session finds out its client went away. The probe
+     * is called on the session's own thread.
+     */
+    public void setDisconnectProbe(BooleanSupplier disconnectProbe) {
+        this.disconnectProbe = disconnectProbe;
+    }
+
+    /**
+     * Returns the probe that tells whether the client went away, or null if it cannot be probed.
+     */
+    public BooleanSupplier getDisconnectProbe() {
+        return disconnectProbe;
+    }
+
     public long getSessionDuration() {
         return System.currentTimeMillis() - startTime;
     }
 
     public void send(String message) {
+        long start = System.nanoTime();
         out.println(message);
+        writeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * While set, replies of mutations are kept until {@link #sendDeferredReply()} instead of
+     * waiting for the mutation log, so the shard that applied them moves on to the next one and
+     * concurrent mutations still share log syncs.
+     */
+    public void setDeferringDurableReplies(boolean deferringDurableReplies) {
+        this.deferringDurableReplies = deferringDurableReplies;
+    }
+
+    public boolean isDeferringDurableReplies() {
+        return deferringDurableReplies;
+    }
+
+    void deferDurableReply(MutationLog log, long logPosition, String reply) {
+        deferredLog = log;
+        deferredLogPosition = logPosition;
+        deferredReply = reply;
+    }
+
+    /**
+     * Waits until the log made the deferred mutation durable and sends its reply, if any, or
+     * {@link Graph#ERROR_MUTATION_LOG_FAILED} if the log failed first.
+     */
+    public void sendDeferredReply() {
+        String reply = deferredReply;
+        if (reply == null) {
+            return;
+        }
+        deferredReply = null;
+        boolean durable = deferredLog.awaitDurable(deferredLogPosition);
+        deferredLog = null;
+        send(durable ? reply : Graph.ERROR_MUTATION_LOG_FAILED);
+    }
+
+    /**
+     * Starts timing a new command.
+     */
+    public void startCommand() {
+        lockWaitNanos = 0;
+        writeNanos = 0;
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWaitNanos += nanos;
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos;
+    }
+
+    public long getWriteNanos() {
+        return writeNanos;
     }
 }
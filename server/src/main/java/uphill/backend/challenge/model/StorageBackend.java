@@ -0,0 +1,31 @@
+package uphill.backend.challenge.model;
+
+/**
+ * How a {@link Graph} keeps its mutable edges in memory.
+ */
+public enum StorageBackend {
+
+    /**
+     * A set of edge objects per node and direction, about a hundred bytes per edge.
+     */
+    OBJECTS {
+        @Override
+        EdgeStore createEdgeStore() {
+            return new ObjectEdgeStore();
+        }
+    },
+
+    /**
+     * Growable int arrays of (neighbour, weight) pairs, compacted once mutations have paused for
+     * a while and after every snapshot, about a fifth of the heap and far fewer objects for the
+     * garbage collector to trace.
+     */
+    ARRAYS {
+        @Override
+        EdgeStore createEdgeStore() {
+            return new ArrayEdgeStore();
+        }
+    };
+
+    abstract EdgeStore createEdgeStore();
+}
@@ -0,0 +1,117 @@
+package uphill.backend.challenge.persistence;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.model.Checkpoint;
+import uphill.backend.challenge.model.Graph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a graph durable in a data directory: recovery loads the latest {@link SnapshotFile} and
+ * replays the {@link WriteAheadLog} after it, then new snapshots are written periodically in the
+ * background and the log segments they cover are deleted.
+ */
+public class GraphPersistence implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(GraphPersistence.class);
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_SECONDS = 300;
+
+    private final Path directory;
+    private final Graph graph;
+    private final WriteAheadLog log;
+    private final ScheduledExecutorService snapshotter;
+    // Scheduled and explicit snapshots never run at the same time
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private long snapshotPosition;
+
+    private GraphPersistence(Path directory, Graph graph, WriteAheadLog log, long snapshotPosition,
+                             long snapshotIntervalSeconds) {
+        this.directory = directory;
+        this.graph = graph;
+        this.log = log;
+        this.snapshotPosition = snapshotPosition;
+        if (snapshotIntervalSeconds > 0) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "graph-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalSeconds,
+                    snapshotIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            snapshotter = null;
+        }
+    }
+
+    /**
+     * Recovers the graph, which must be empty, from the directory and logs its mutations there
+     * from now on.
+     */
+    public static GraphPersistence open(Path directory, Graph graph, long syncIntervalMillis, long segmentBytes,
+                                        long snapshotIntervalSeconds) throws IOException {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        long snapshotPosition = SnapshotFile.load(directory, graph);
+        if (snapshotPosition > 0) {
+            LOGGER.info("Loaded graph snapshot in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+        WriteAheadLog log = WriteAheadLog.open(directory, syncIntervalMillis, segmentBytes, graph, snapshotPosition);
+        graph.setMutationLog(log);
+        return new GraphPersistence(directory, graph, log, snapshotPosition, snapshotIntervalSeconds);
+    }
+
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    /**
+     * Writes a snapshot of the latest graph version unless the stored one is already up to date.
+     * Queries and mutations keep running while it is written, then the graph's edge storage is
+     * compacted.
+     */
+    public void snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            Checkpoint checkpoint = graph.checkpoint();
+            if (checkpoint.logPosition() == snapshotPosition) {
+                return;
+            }
+            // The snapshot must never be ahead of what the log can replay
+            if (!log.awaitDurable(checkpoint.logPosition())) {
+                throw new IOException("Mutation log failed before position " + checkpoint.logPosition());
+            }
+            long start = System.nanoTime();
+            SnapshotFile.write(directory, checkpoint);
+            snapshotPosition = checkpoint.logPosition();
+            log.deleteSegmentsBefore(snapshotPosition);
+            graph.compactStorage();
+            LOGGER.info("Wrote graph snapshot at log position " + snapshotPosition + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+        }
+        log.close();
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not write the graph snapshot -> " + e.getMessage());
+        }
+    }
+}
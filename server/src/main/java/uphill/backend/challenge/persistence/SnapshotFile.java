@@ -0,0 +1,262 @@
+package uphill.backend.challenge.persistence;
+
+import uphill.backend.challenge.engine.OutgoingAdjacency;
+import uphill.backend.challenge.engine.EdgeVisitor;
+import uphill.backend.challenge.model.Checkpoint;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary image of a whole graph: the node name dictionary followed by the outgoing edges in
+ * compressed sparse row form. The header holds a magic number, the format version, the mutation
+ * log position the image covers, the number of node ids and edges, the byte length of the names
+ * section and a CRC32 of everything after the header. Names are length prefixed UTF-8, -1 marking
+ * a free id, and the int arrays that follow are 4 byte aligned. Files are replaced atomically, and
+ * loaded through a memory map without copying the edge arrays.
+ */
+public class SnapshotFile {
+
+    public static final String FILE_NAME = "graph.snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    static final int MAGIC = 0x55504753;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the checkpoint to the directory, replacing the previous snapshot only once the new
+     * one is complete and synced.
+     */
+    public static void write(Path directory, Checkpoint checkpoint) throws IOException {
+        GraphSnapshot snapshot = checkpoint.snapshot();
+        Path temporary = directory.resolve(FILE_NAME + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output output = new Output(channel);
+            int capacity = snapshot.capacity();
+            for (int node = 0; node < capacity; node++) {
+                String name = snapshot.nameOf(node);
+                if (name == null) {
+                    output.putInt(-1);
+                } else {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    output.putInt(bytes.length);
+                    output.put(bytes);
+                }
+            }
+            long namesLength = output.written();
+            output.align();
+            long edges = 0;
+            output.putInt(0);
+            for (int node = 0; node < capacity; node++) {
+                edges += snapshot.nameOf(node) == null ? 0 : snapshot.outDegree(node);
+                output.putInt((int) edges);
+            }
+            EdgeVisitor targets = (target, weight) -> output.putInt(target);
+            EdgeVisitor weights = (target, weight) -> output.putInt(weight);
+            for (int node = 0; node < capacity; node++) {
+                if (snapshot.nameOf(node) != null) {
+                    snapshot.forEachOutgoing(node, targets);
+                }
+            }
+            for (int node = 0; node < capacity; node++) {
+                if (snapshot.nameOf(node) != null) {
+                    snapshot.forEachOutgoing(node, weights);
+                }
+            }
+            output.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(checkpoint.logPosition())
+                    .putInt(capacity)
+                    .putInt((int) output.crc.getValue())
+                    .putLong(edges)
+                    .putLong(namesLength);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch (UncheckedIOException e) {
+            // Thrown by the buffered output while visiting edges
+            throw e.getCause();
+        }
+        Files.move(temporary, directory.resolve(FILE_NAME), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+    }
+
+    /**
+     * Loads the snapshot of the directory into an empty graph and returns the mutation log
+     * position it covers, or 0 when there is no snapshot.
+     */
+    public static long load(Path directory, Graph graph) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " is too large to be mapped");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.limit() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            int version = mapped.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported graph snapshot format version " + version);
+            }
+            long logPosition = mapped.getLong(8);
+            int capacity = mapped.getInt(16);
+            int checksum = mapped.getInt(20);
+            long edges = mapped.getLong(24);
+            long namesLength = mapped.getLong(32);
+            CRC32 crc = new CRC32();
+            crc.update(mapped.duplicate().position(HEADER_SIZE));
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Graph snapshot " + file + " is corrupt");
+            }
+
+            String[] names = new String[capacity];
+            ByteBuffer input = mapped.duplicate().position(HEADER_SIZE);
+            byte[] bytes = new byte[64];
+            for (int node = 0; node < capacity; node++) {
+                int length = input.getInt();
+                if (length >= 0) {
+                    if (bytes.length < length) {
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    }
+                    input.get(bytes, 0, length);
+                    names[node] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                }
+            }
+            int offsetsStart = align(HEADER_SIZE + (int) namesLength);
+            IntBuffer offsets = mapped.duplicate().position(offsetsStart).slice().asIntBuffer();
+            int targetsStart = offsetsStart + 4 * (capacity + 1);
+            IntBuffer targets = mapped.duplicate().position(targetsStart).slice().asIntBuffer();
+            IntBuffer weights = mapped.duplicate().position(targetsStart + (int) (4 * edges)).slice().asIntBuffer();
+            graph.load(names, new MappedAdjacency(capacity, offsets, targets, weights));
+            return logPosition;
+        }
+    }
+
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can sync a directory, the rename is still atomic
+        }
+    }
+
+    // Outgoing edges straight from the mapped file, incoming edges are never needed to load a graph
+    private static class MappedAdjacency implements OutgoingAdjacency {
+
+        private final int capacity;
+        private final IntBuffer offsets;
+        private final IntBuffer targets;
+        private final IntBuffer weights;
+
+        MappedAdjacency(int capacity, IntBuffer offsets, IntBuffer targets, IntBuffer weights) {
+            this.capacity = capacity;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public void forEachOutgoing(int node, EdgeVisitor visitor) {
+            for (int i = offsets.get(node), end = offsets.get(node + 1); i < end; i++) {
+                visitor.visit(targets.get(i), weights.get(i));
+            }
+        }
+    }
+
+    // Buffered sequential writer after the header, keeping the CRC of what it wrote. Write errors are
+    // unchecked so that edge visitors can use it
+    private static class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private long written;
+
+        Output(FileChannel channel) throws IOException {
+            this.channel = channel;
+            channel.position(HEADER_SIZE);
+        }
+
+        long written() {
+            return written;
+        }
+
+        void putInt(int value) {
+            ensureRemaining(4);
+            buffer.putInt(value);
+            written += 4;
+        }
+
+        void put(byte[] bytes) {
+            for (int offset = 0; offset < bytes.length; ) {
+                ensureRemaining(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+                written += length;
+            }
+        }
+
+        void align() {
+            while ((HEADER_SIZE + written) % 4 != 0) {
+                ensureRemaining(1);
+                buffer.put((byte) 0);
+                written++;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(int bytes) {
+            if (buffer.remaining() < bytes) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package uphill.backend.challenge.persistence;
+
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential reader of a {@link WriteAheadLog} segment. Frames are read through one large buffer
+ * and their mutations are restored into the graph in chunks, each chunk becoming a single graph
+ * version. Reading stops at the first frame that is incomplete or fails its checksum.
+ */
+class WalReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int RESTORE_CHUNK = 1 << 16;
+
+    private final FileChannel channel;
+    private final long segmentStart;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long bufferStart;
+    private byte[] stringBytes = new byte[64];
+    private long mutations;
+
+    WalReader(FileChannel channel, long segmentStart) {
+        this.channel = channel;
+        this.segmentStart = segmentStart;
+    }
+
+    long mutations() {
+        return mutations;
+    }
+
+    /**
+     * Restores every complete frame ending after the log position into the graph and returns the
+     * file offset after the last complete frame.
+     */
+    long replay(Graph graph, long fromPosition) throws IOException {
+        buffer.limit(0);
+        bufferStart = 0;
+        if (!fill(WriteAheadLog.FILE_HEADER_SIZE)) {
+            throw new IOException("Mutation log is too short to be valid");
+        }
+        if (buffer.getInt() != WriteAheadLog.MAGIC) {
+            throw new IOException("Not a mutation log");
+        }
+        int version = buffer.getInt();
+        if (version != WriteAheadLog.FORMAT_VERSION) {
+            throw new IOException("Unsupported mutation log format version " + version);
+        }
+        if (buffer.getLong() != segmentStart) {
+            throw new IOException("Mutation log segment does not start at " + segmentStart);
+        }
+        Batch batch = new Batch();
+        long end = WriteAheadLog.FILE_HEADER_SIZE;
+        while (fill(WriteAheadLog.FRAME_HEADER_SIZE)) {
+            int payloadLength = buffer.getInt(buffer.position());
+            int checksum = buffer.getInt(buffer.position() + 4);
+            if (payloadLength < 0 || !fill(WriteAheadLog.FRAME_HEADER_SIZE + payloadLength)) {
+                break;
+            }
+            int payload = buffer.position() + WriteAheadLog.FRAME_HEADER_SIZE;
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(payload).limit(payload + payloadLength);
+            crc.reset();
+            crc.update(slice);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            int frameEnd = payload + payloadLength;
+            // Frames a snapshot already covers are only checked
+            if (segmentStart + bufferStart + frameEnd - WriteAheadLog.FILE_HEADER_SIZE > fromPosition) {
+                buffer.position(payload);
+                readMutations(frameEnd, batch);
+            } else {
+                buffer.position(frameEnd);
+            }
+            end = bufferStart + frameEnd;
+            if (batch.size() >= RESTORE_CHUNK) {
+                restore(graph, batch);
+                batch = new Batch();
+            }
+        }
+        restore(graph, batch);
+        return end;
+    }
+
+    private void restore(Graph graph, Batch batch) {
+        graph.restore(batch);
+        mutations += batch.size();
+    }
+
+    // The frame passed its checksum, so a mutation that does not decode means the log is corrupt
+    private void readMutations(int frameEnd, Batch batch) throws IOException {
+        while (buffer.position() < frameEnd) {
+            byte kind = buffer.get();
+            String source = getString(frameEnd);
+            if (kind == Batch.ADD_NODE) {
+                batch.addNode(source);
+            } else if (kind == Batch.REMOVE_NODE) {
+                batch.removeNode(source);
+            } else if (kind == Batch.REMOVE_EDGE) {
+                batch.removeEdge(source, getString(frameEnd));
+            } else if (kind == Batch.ADD_EDGE) {
+                String destination = getString(frameEnd);
+                if (frameEnd - buffer.position() < 4) {
+                    throw corrupt();
+                }
+                batch.addEdge(source, destination, buffer.getInt());
+            } else {
+                throw corrupt();
+            }
+        }
+    }
+
+    private IOException corrupt() {
+        return new IOException("Corrupt mutation log frame before offset " + (bufferStart + buffer.position()));
+    }
+
+    private String getString(int frameEnd) throws IOException {
+        if (frameEnd - buffer.position() < 4) {
+            throw corrupt();
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > frameEnd - buffer.position()) {
+            throw corrupt();
+        }
+        if (stringBytes.length < length) {
+            stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+        }
+        buffer.get(stringBytes, 0, length);
+        return new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Makes at least the given number of bytes available from the current position, false at end of file
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        bufferStart += buffer.position();
+        buffer.compact();
+        if (buffer.capacity() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(bytes);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer, bufferStart + buffer.position()) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+}
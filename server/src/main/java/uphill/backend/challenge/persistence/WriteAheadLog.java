@@ -0,0 +1,461 @@
+package uphill.backend.challenge.persistence;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.MutationLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of graph mutations. Appends are encoded into a memory buffer and a flusher
+ * thread writes everything appended since its last write with one call, so concurrent mutations
+ * share writes and fsyncs (group commit). With a sync interval of 0 a mutation is acknowledged
+ * once it is fsynced; otherwise once it reached the operating system, with an fsync at most every
+ * interval.
+ * <p>
+ * Positions count the frame bytes appended since the log was created. The log is split into
+ * segment files named after the position they start at, and segments entirely before a stored
+ * snapshot's position can be deleted. A segment starts with a magic number, the format version
+ * and its start position, followed by frames of
+ * {@code [payload length][CRC32 of payload][payload]}. A payload holds the mutations of one
+ * command or batch as {@code [kind][source][destination][weight]}, names being length prefixed
+ * UTF-8 and only present, like the weight, for the kinds that have them.
+ */
+public class WriteAheadLog implements MutationLog, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class);
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 0;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    static final String SEGMENT_PREFIX = "graph-";
+    static final String SEGMENT_SUFFIX = ".wal";
+    static final int MAGIC = 0x5550574C;
+    static final int FORMAT_VERSION = 2;
+    static final int FILE_HEADER_SIZE = 16;
+    static final int FRAME_HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long syncIntervalNanos;
+    // start positions of the segment files, the last one is being appended to
+    private final List<Long> segments;
+    private FileChannel channel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+    private final Thread flusher;
+    private ByteBuffer appendBuffer = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    private long appendedPosition;
+    private long writtenPosition;
+    private long syncedPosition;
+    private boolean closed;
+    private boolean flusherDone;
+    private IOException failure;
+
+    private WriteAheadLog(Path directory, List<Long> segments, FileChannel channel, long position,
+                          long syncIntervalMillis, long segmentBytes) {
+        this.directory = directory;
+        this.segments = segments;
+        this.channel = channel;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.appendedPosition = position;
+        this.writtenPosition = position;
+        this.syncedPosition = position;
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Replays the log of the directory after fromPosition into the graph, drops a torn tail left
+     * by a crash and opens the log for appending. The caller still has to install it with
+     * {@link Graph#setMutationLog(MutationLog)}.
+     */
+    public static WriteAheadLog open(Path directory, long syncIntervalMillis, long segmentBytes, Graph graph,
+                                     long fromPosition) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments(directory);
+        if (!segments.isEmpty() && segments.get(0) > fromPosition) {
+            throw new IOException("Mutation log starts at " + segments.get(0) + ", after position " + fromPosition);
+        }
+        long start = System.nanoTime();
+        long position = fromPosition;
+        long logEnd = 0;
+        long mutations = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long segmentStart = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            if (!last && segments.get(i + 1) <= fromPosition) {
+                continue;
+            }
+            if (segmentStart > position) {
+                throw new IOException("Mutation log is missing the records between " + position + " and " + segmentStart);
+            }
+            Path file = segmentPath(directory, segmentStart);
+            try (FileChannel segment = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                WalReader reader = new WalReader(segment, segmentStart);
+                long end = reader.replay(graph, fromPosition);
+                mutations += reader.mutations();
+                logEnd = segmentStart + end - FILE_HEADER_SIZE;
+                position = Math.max(position, logEnd);
+                if (end < segment.size()) {
+                    if (!last) {
+                        throw new IOException("Corrupt mutation log segment " + file + " at offset " + end);
+                    }
+                    LOGGER.warn("Dropping " + (segment.size() - end) + " bytes of incomplete log tail in " + file);
+                    segment.truncate(end);
+                    segment.force(true);
+                }
+            }
+        }
+        if (mutations > 0) {
+            LOGGER.info("Replayed " + mutations + " logged mutations in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        }
+        FileChannel channel;
+        if (segments.isEmpty() || logEnd < fromPosition) {
+            // The snapshot holds records the log lost, new records continue after the snapshot
+            channel = createSegment(directory, position);
+            segments.add(position);
+        } else {
+            channel = FileChannel.open(segmentPath(directory, segments.get(segments.size() - 1)),
+                    StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+        WriteAheadLog log = new WriteAheadLog(directory, segments, channel, position, syncIntervalMillis, segmentBytes);
+        log.flusher.start();
+        return log;
+    }
+
+    public static WriteAheadLog open(Path directory, long syncIntervalMillis, Graph graph) throws IOException {
+        return open(directory, syncIntervalMillis, DEFAULT_SEGMENT_BYTES, graph, 0);
+    }
+
+    @Override
+    public long nodeAdded(String nodeName) {
+        lock.lock();
+        try {
+            int frame = beginFrame();
+            putMutation(Batch.ADD_NODE, nodeName, null, 0);
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long edgeAdded(String sourceNodeName, String destinationNodeName, int weight) {
+        lock.lock();
+        try {
+            int frame = beginFrame();
+            putMutation(Batch.ADD_EDGE, sourceNodeName, destinationNodeName, weight);
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long nodeRemoved(String nodeName) {
+        lock.lock();
+        try {
+            int frame = beginFrame();
+            putMutation(Batch.REMOVE_NODE, nodeName, null, 0);
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long edgeRemoved(String sourceNodeName, String destinationNodeName) {
+        lock.lock();
+        try {
+            int frame = beginFrame();
+            putMutation(Batch.REMOVE_EDGE, sourceNodeName, destinationNodeName, 0);
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long committed(Batch batch) {
+        lock.lock();
+        try {
+            int frame = beginFrame();
+            for (int i = 0; i < batch.size(); i++) {
+                putMutation(batch.kind(i), batch.source(i), batch.destination(i), batch.weight(i));
+            }
+            return endFrame(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long position() {
+        lock.lock();
+        try {
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments that only hold records before the position, which a stored snapshot
+     * already covers.
+     */
+    public void deleteSegmentsBefore(long position) throws IOException {
+        List<Long> obsolete = new ArrayList<>();
+        lock.lock();
+        try {
+            while (segments.size() > 1 && segments.get(1) <= position) {
+                obsolete.add(segments.remove(0));
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (long segmentStart : obsolete) {
+            Files.deleteIfExists(segmentPath(directory, segmentStart));
+        }
+    }
+
+    @Override
+    public boolean awaitDurable(long position) {
+        lock.lock();
+        try {
+            while (durablePosition() < position && failure == null && !flusherDone) {
+                flushed.awaitUninterruptibly();
+            }
+            return durablePosition() >= position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isFailed() {
+        lock.lock();
+        try {
+            return failure != null || flusherDone;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and syncs everything appended so far and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // With a sync interval, mutations are acknowledged once written to the operating system
+    private long durablePosition() {
+        return syncIntervalNanos == 0 ? syncedPosition : writtenPosition;
+    }
+
+    private void flushLoop() {
+        long lastSync = System.nanoTime();
+        long segmentEnd = writtenPosition;
+        try {
+            while (true) {
+                ByteBuffer frames;
+                long position;
+                boolean exiting;
+                lock.lock();
+                try {
+                    while (appendBuffer.position() == 0 && !closed) {
+                        if (syncIntervalNanos > 0 && syncedPosition < writtenPosition) {
+                            long remaining = lastSync + syncIntervalNanos - System.nanoTime();
+                            if (remaining <= 0) {
+                                break;
+                            }
+                            appended.awaitNanos(remaining);
+                        } else {
+                            appended.awaitUninterruptibly();
+                        }
+                    }
+                    frames = appendBuffer;
+                    appendBuffer = writeBuffer;
+                    writeBuffer = frames;
+                    position = appendedPosition;
+                    exiting = closed;
+                } finally {
+                    lock.unlock();
+                }
+                frames.flip();
+                if (frames.hasRemaining() && channel.position() >= segmentBytes) {
+                    rotate(segmentEnd);
+                }
+                segmentEnd = position;
+                while (frames.hasRemaining()) {
+                    channel.write(frames);
+                }
+                frames.clear();
+                boolean sync = syncIntervalNanos == 0 || exiting || System.nanoTime() - lastSync >= syncIntervalNanos;
+                if (sync) {
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                }
+                lock.lock();
+                try {
+                    writtenPosition = position;
+                    if (sync) {
+                        syncedPosition = position;
+                    }
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                if (exiting) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write the mutation log, mutations are refused from now on -> " + e.getMessage());
+            lock.lock();
+            try {
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.lock();
+            try {
+                flusherDone = true;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Only called by the flusher between whole frames, the full segment is synced before moving on
+    private void rotate(long position) throws IOException {
+        FileChannel next = createSegment(directory, position);
+        channel.force(false);
+        channel.close();
+        channel = next;
+        lock.lock();
+        try {
+            segments.add(position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static FileChannel createSegment(Path directory, long start) throws IOException {
+        FileChannel segment = FileChannel.open(segmentPath(directory, start), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).putLong(start);
+        header.flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segment.force(true);
+        return segment;
+    }
+
+    static Path segmentPath(Path directory, long start) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file " + file);
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    // Frames are built in place in the append buffer, the header is filled in once the payload is known
+    private int beginFrame() {
+        ensureRemaining(FRAME_HEADER_SIZE);
+        int frame = appendBuffer.position();
+        appendBuffer.position(frame + FRAME_HEADER_SIZE);
+        return frame;
+    }
+
+    private long endFrame(int frame) {
+        int end = appendBuffer.position();
+        int payloadLength = end - frame - FRAME_HEADER_SIZE;
+        crc.reset();
+        crc.update(appendBuffer.array(), appendBuffer.arrayOffset() + frame + FRAME_HEADER_SIZE, payloadLength);
+        appendBuffer.putInt(frame, payloadLength);
+        appendBuffer.putInt(frame + 4, (int) crc.getValue());
+        appendedPosition += end - frame;
+        appended.signal();
+        return appendedPosition;
+    }
+
+    private void putMutation(byte kind, String source, String destination, int weight) {
+        ensureRemaining(1);
+        appendBuffer.put(kind);
+        putString(source);
+        if (kind == Batch.ADD_EDGE || kind == Batch.REMOVE_EDGE) {
+            putString(destination);
+        }
+        if (kind == Batch.ADD_EDGE) {
+            ensureRemaining(4);
+            appendBuffer.putInt(weight);
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(4 + bytes.length);
+        appendBuffer.putInt(bytes.length);
+        appendBuffer.put(bytes);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (appendBuffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(appendBuffer.capacity() * 2, appendBuffer.position() + bytes));
+            appendBuffer.flip();
+            larger.put(appendBuffer);
+            appendBuffer = larger;
+        }
+    }
+}
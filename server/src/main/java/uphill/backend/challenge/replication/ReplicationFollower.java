@@ -0,0 +1,228 @@
+package uphill.backend.challenge.replication;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.engine.OutgoingAdjacency;
+import uphill.backend.challenge.engine.EdgeVisitor;
+import uphill.backend.challenge.metrics.ReplicationMetrics;
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the default graph of a registry a copy of a {@link ReplicationLeader}'s graph. A snapshot
+ * from the leader is loaded into a new graph that replaces the current one, and every run of
+ * records is then applied as one new version, so queries always see a state the leader had.
+ * The connection is retried until closed, resuming after the last applied record.
+ */
+public class ReplicationFollower implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicationFollower.class);
+    static final long RETRY_MILLIS = 1000;
+    // A leader silent for several heartbeats is considered gone
+    private static final int READ_TIMEOUT_MILLIS = (int) (6 * ReplicationLeader.HEARTBEAT_MILLIS);
+
+    private final String leaderHost;
+    private final int leaderPort;
+    private final GraphRegistry graphs;
+    private final Supplier<Graph> graphFactory;
+    private final ReplicationMetrics metrics;
+    private final Thread thread;
+    private volatile Socket socket;
+    private volatile boolean closed;
+    // Only used by the follower thread
+    private Graph graph;
+    private long followedLeader;
+    private long applied;
+    private byte[] recordBytes = new byte[256];
+
+    /**
+     * Starts following the leader, loading its snapshots into graphs made by the factory.
+     */
+    public ReplicationFollower(String host, int port, GraphRegistry graphs, Supplier<Graph> graphFactory,
+                               ReplicationMetrics metrics) {
+        this.leaderHost = host;
+        this.leaderPort = port;
+        this.graphs = graphs;
+        this.graphFactory = graphFactory;
+        this.metrics = metrics;
+        this.thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                follow();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("Lost the replication leader " + leaderHost + ":" + leaderPort + " -> " + e.getMessage());
+                }
+            } finally {
+                metrics.setConnected(false);
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow() throws IOException {
+        try (Socket socket = new Socket()) {
+            this.socket = socket;
+            if (closed) {
+                return;
+            }
+            socket.connect(new InetSocketAddress(leaderHost, leaderPort), READ_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(ReplicationLeader.MAGIC);
+            out.writeInt(ReplicationLeader.PROTOCOL_VERSION);
+            out.writeLong(followedLeader);
+            out.writeLong(applied);
+            out.flush();
+            metrics.setConnected(true);
+            LOGGER.info("Following the replication leader " + leaderHost + ":" + leaderPort);
+            while (!closed) {
+                byte type = in.readByte();
+                long leaderSequence;
+                if (type == ReplicationLeader.SNAPSHOT) {
+                    loadSnapshot(in);
+                    leaderSequence = applied;
+                } else if (type == ReplicationLeader.RECORDS) {
+                    leaderSequence = in.readLong();
+                    applyRecords(in);
+                } else if (type == ReplicationLeader.HEARTBEAT) {
+                    leaderSequence = in.readLong();
+                } else {
+                    throw new IOException("Unknown replication message " + type);
+                }
+                metrics.applied(applied, leaderSequence);
+                out.writeLong(applied);
+                out.flush();
+            }
+        } finally {
+            socket = null;
+        }
+    }
+
+    private void loadSnapshot(DataInputStream in) throws IOException {
+        long start = System.nanoTime();
+        long leaderId = in.readLong();
+        long sequence = in.readLong();
+        int capacity = in.readInt();
+        String[] names = new String[capacity];
+        for (int node = 0; node < capacity; node++) {
+            int length = in.readInt();
+            if (length >= 0) {
+                names[node] = new String(readBytes(in, length), 0, length, StandardCharsets.UTF_8);
+            }
+        }
+        int[] offsets = new int[capacity + 1];
+        int[] targets = new int[16];
+        int[] weights = new int[16];
+        int edges = 0;
+        for (int node = 0; node < capacity; node++) {
+            if (names[node] != null) {
+                int degree = in.readInt();
+                if (edges + degree > targets.length) {
+                    int length = Math.max(edges + degree, targets.length * 2);
+                    targets = Arrays.copyOf(targets, length);
+                    weights = Arrays.copyOf(weights, length);
+                }
+                for (int i = 0; i < degree; i++) {
+                    targets[edges] = in.readInt();
+                    weights[edges++] = in.readInt();
+                }
+            }
+            offsets[node + 1] = edges;
+        }
+        Graph loaded = graphFactory.get();
+        loaded.load(names, new ReceivedEdges(capacity, offsets, targets, weights));
+        graphs.replace(GraphRegistry.DEFAULT_GRAPH, loaded);
+        graph = loaded;
+        followedLeader = leaderId;
+        applied = sequence;
+        metrics.snapshotTransferred();
+        LOGGER.info("Loaded a graph snapshot at replication sequence " + sequence + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private void applyRecords(DataInputStream in) throws IOException {
+        long first = in.readLong();
+        int count = in.readInt();
+        if (graph == null || first != applied + 1) {
+            throw new IOException("Replication stream starts at " + first + " after record " + applied);
+        }
+        Batch batch = new Batch();
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            ReplicationLog.readRecord(readBytes(in, length), length, batch);
+        }
+        graph.restore(batch);
+        applied += count;
+    }
+
+    private byte[] readBytes(DataInputStream in, int length) throws IOException {
+        if (recordBytes.length < length) {
+            recordBytes = new byte[Math.max(length, recordBytes.length * 2)];
+        }
+        in.readFully(recordBytes, 0, length);
+        return recordBytes;
+    }
+
+    // Outgoing edges of a received snapshot, indexed like its node names
+    private static final class ReceivedEdges implements OutgoingAdjacency {
+
+        private final int capacity;
+        private final int[] offsets;
+        private final int[] targets;
+        private final int[] weights;
+
+        ReceivedEdges(int capacity, int[] offsets, int[] targets, int[] weights) {
+            this.capacity = capacity;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+        }
+
+        @Override
+        public int capacity() {
+            return capacity;
+        }
+
+        @Override
+        public void forEachOutgoing(int node, EdgeVisitor visitor) {
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                visitor.visit(targets[i], weights[i]);
+            }
+        }
+    }
+}
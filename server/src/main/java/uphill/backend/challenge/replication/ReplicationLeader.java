@@ -0,0 +1,199 @@
+package uphill.backend.challenge.replication;
+
+import org.apache.log4j.Logger;
+import uphill.backend.challenge.engine.EdgeVisitor;
+import uphill.backend.challenge.metrics.ReplicationMetrics;
+import uphill.backend.challenge.model.Checkpoint;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the mutations of a graph to {@link ReplicationFollower}s connecting over TCP, one
+ * sender thread per follower. A follower says which leader it last followed and the last record
+ * it applied; when that is this leader and the record is still in the {@link ReplicationLog}
+ * backlog the stream resumes after it, otherwise the follower first gets a snapshot of the whole
+ * graph. Every leader process picks a new id, so a restarted leader resends snapshots.
+ * <p>
+ * A follower opens with {@code [magic][version][leader id][last applied sequence]} and
+ * acknowledges every message with the sequence it has applied. The leader sends messages
+ * starting with a type byte: a snapshot {@code [leader id][sequence][capacity]} followed by the
+ * node names and the outgoing edges of each node, a run of records
+ * {@code [leader sequence][first sequence][count]} each length prefixed, or, when there is
+ * nothing to send, a heartbeat {@code [leader sequence]}.
+ */
+public class ReplicationLeader implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicationLeader.class);
+    static final int MAGIC = 0x55505250;
+    static final int PROTOCOL_VERSION = 1;
+    static final byte SNAPSHOT = 1;
+    static final byte RECORDS = 2;
+    static final byte HEARTBEAT = 3;
+    static final long HEARTBEAT_MILLIS = 500;
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_RECORDS_PER_MESSAGE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Graph graph;
+    private final ReplicationLog log;
+    private final ReplicationMetrics metrics;
+    // Never 0, which followers send before they followed any leader
+    private final long leaderId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final ServerSocket serverSocket;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Starts accepting followers on the port, 0 picking a free one.
+     */
+    public ReplicationLeader(int port, Graph graph, ReplicationLog log, ReplicationMetrics metrics) throws IOException {
+        this.graph = graph;
+        this.log = log;
+        this.metrics = metrics;
+        this.serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket follower : followers) {
+            follower.close();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "replication-sender-" + socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.error("Could not accept a replication follower -> " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != PROTOCOL_VERSION) {
+                throw new IOException("not a replication follower");
+            }
+            long followedLeader = in.readLong();
+            long next = in.readLong();
+            List<byte[]> records = null;
+            if (followedLeader == leaderId) {
+                records = log.recordsAfter(next, MAX_RECORDS_PER_MESSAGE, 0);
+            } else {
+                next = 0;
+            }
+            metrics.followerConnected(socket, next);
+            LOGGER.info("Replication follower " + socket.getRemoteSocketAddress() + " connected");
+            while (!closed) {
+                if (records == null) {
+                    next = sendSnapshot(out);
+                } else if (records.isEmpty()) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(log.sequence());
+                } else {
+                    out.writeByte(RECORDS);
+                    out.writeLong(log.sequence());
+                    out.writeLong(next + 1);
+                    out.writeInt(records.size());
+                    for (byte[] record : records) {
+                        out.writeInt(record.length);
+                        out.write(record);
+                    }
+                    next += records.size();
+                }
+                out.flush();
+                // Acknowledgements are only read when already there, the stream never waits for them
+                while (in.available() >= Long.BYTES) {
+                    metrics.followerAcknowledged(socket, in.readLong());
+                }
+                records = log.recordsAfter(next, MAX_RECORDS_PER_MESSAGE, HEARTBEAT_MILLIS);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            if (!closed) {
+                LOGGER.info("Replication follower " + socket.getRemoteSocketAddress() + " disconnected -> "
+                        + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            metrics.followerDisconnected(socket);
+            followers.remove(socket);
+        }
+    }
+
+    // Sends the latest graph version and returns the sequence of the last record it includes
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        Checkpoint checkpoint = graph.checkpoint(log::sequence);
+        GraphSnapshot snapshot = checkpoint.snapshot();
+        int capacity = snapshot.capacity();
+        out.writeByte(SNAPSHOT);
+        out.writeLong(leaderId);
+        out.writeLong(checkpoint.logPosition());
+        out.writeInt(capacity);
+        for (int node = 0; node < capacity; node++) {
+            String name = snapshot.nameOf(node);
+            if (name == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        EdgeVisitor edges = (target, weight) -> {
+            try {
+                out.writeInt(target);
+                out.writeInt(weight);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        for (int node = 0; node < capacity; node++) {
+            if (snapshot.nameOf(node) != null) {
+                out.writeInt(snapshot.outDegree(node));
+                snapshot.forEachOutgoing(node, edges);
+            }
+        }
+        metrics.snapshotTransferred();
+        LOGGER.info("Sent a graph snapshot at replication sequence " + checkpoint.logPosition() + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return checkpoint.logPosition();
+    }
+}
@@ -0,0 +1,267 @@
+package uphill.backend.challenge.replication;
+
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.MutationLog;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Passes every mutation on to the log it wraps and keeps the latest ones, encoded, in a bounded
+ * backlog from which a {@link ReplicationLeader} streams them to followers. Each append is one
+ * record, numbered by a sequence starting at 1; a record holds the mutations of one command or
+ * batch as {@code [kind][source][destination][weight]}, like a mutation log frame. Positions
+ * and durability are those of the wrapped log, so persistence is unaffected. Followers that fall
+ * further behind than the backlog reaches have to start over from a snapshot.
+ */
+public class ReplicationLog implements MutationLog {
+
+    public static final long DEFAULT_BACKLOG_BYTES = 64L << 20;
+    // Approximate heap taken by a record besides its bytes
+    private static final int RECORD_OVERHEAD = 32;
+
+    private final MutationLog delegate;
+    private final long backlogBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // Ring of the records in the backlog, its length a power of two
+    private byte[][] records = new byte[1024][];
+    private int head;
+    private int count;
+    private ByteBuffer encoder = ByteBuffer.allocate(256);
+    // Sequence of the first record in the backlog and of the last one appended
+    private long firstSequence = 1;
+    private long sequence;
+    private long bytes;
+
+    public ReplicationLog(MutationLog delegate) {
+        this(delegate, DEFAULT_BACKLOG_BYTES);
+    }
+
+    public ReplicationLog(MutationLog delegate, long backlogBytes) {
+        this.delegate = delegate;
+        this.backlogBytes = backlogBytes;
+    }
+
+    @Override
+    public long nodeAdded(String nodeName) {
+        long position = delegate.nodeAdded(nodeName);
+        lock.lock();
+        try {
+            encoder.clear();
+            putMutation(Batch.ADD_NODE, nodeName, null, 0);
+            append();
+        } finally {
+            lock.unlock();
+        }
+        return position;
+    }
+
+    @Override
+    public long edgeAdded(String sourceNodeName, String destinationNodeName, int weight) {
+        long position = delegate.edgeAdded(sourceNodeName, destinationNodeName, weight);
+        lock.lock();
+        try {
+            encoder.clear();
+            putMutation(Batch.ADD_EDGE, sourceNodeName, destinationNodeName, weight);
+            append();
+        } finally {
+            lock.unlock();
+        }
+        return position;
+    }
+
+    @Override
+    public long nodeRemoved(String nodeName) {
+        long position = delegate.nodeRemoved(nodeName);
+        lock.lock();
+        try {
+            encoder.clear();
+            putMutation(Batch.REMOVE_NODE, nodeName, null, 0);
+            append();
+        } finally {
+            lock.unlock();
+        }
+        return position;
+    }
+
+    @Override
+    public long edgeRemoved(String sourceNodeName, String destinationNodeName) {
+        long position = delegate.edgeRemoved(sourceNodeName, destinationNodeName);
+        lock.lock();
+        try {
+            encoder.clear();
+            putMutation(Batch.REMOVE_EDGE, sourceNodeName, destinationNodeName, 0);
+            append();
+        } finally {
+            lock.unlock();
+        }
+        return position;
+    }
+
+    @Override
+    public long committed(Batch batch) {
+        long position = delegate.committed(batch);
+        lock.lock();
+        try {
+            encoder.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                putMutation(batch.kind(i), batch.source(i), batch.destination(i), batch.weight(i));
+            }
+            append();
+        } finally {
+            lock.unlock();
+        }
+        return position;
+    }
+
+    @Override
+    public boolean awaitDurable(long position) {
+        return delegate.awaitDurable(position);
+    }
+
+    @Override
+    public boolean isFailed() {
+        return delegate.isFailed();
+    }
+
+    @Override
+    public long position() {
+        return delegate.position();
+    }
+
+    /**
+     * Sequence of the last record appended, 0 before the first one.
+     */
+    public long sequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to maxRecords records following the given sequence, waiting at most the timeout
+     * for one to be appended; the list is empty if none was. Returns null when the backlog no
+     * longer holds the record right after the sequence, or never held it.
+     */
+    public List<byte[]> recordsAfter(long after, int maxRecords, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (sequence == after && remaining > 0) {
+                remaining = appended.awaitNanos(remaining);
+            }
+            if (after < firstSequence - 1 || after > sequence) {
+                return null;
+            }
+            int wanted = (int) Math.min(maxRecords, sequence - after);
+            int first = (int) (after + 1 - firstSequence);
+            List<byte[]> result = new ArrayList<>(wanted);
+            for (int i = first; i < first + wanted; i++) {
+                result.add(records[(head + i) & (records.length - 1)]);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the mutations of a record encoded in the first length bytes to the batch.
+     *
+     * @throws IOException if the record is not a valid encoding
+     */
+    static void readRecord(byte[] record, int length, Batch batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record, 0, length);
+        try {
+            while (buffer.hasRemaining()) {
+                byte kind = buffer.get();
+                String source = getString(buffer);
+                if (kind == Batch.ADD_NODE) {
+                    batch.addNode(source);
+                } else if (kind == Batch.REMOVE_NODE) {
+                    batch.removeNode(source);
+                } else if (kind == Batch.REMOVE_EDGE) {
+                    batch.removeEdge(source, getString(buffer));
+                } else if (kind == Batch.ADD_EDGE) {
+                    batch.addEdge(source, getString(buffer), buffer.getInt());
+                } else {
+                    throw new IOException("Unknown mutation kind " + kind + " in replication record");
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated replication record");
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private void append() {
+        byte[] record = Arrays.copyOf(encoder.array(), encoder.position());
+        if (count == records.length) {
+            byte[][] larger = new byte[records.length * 2][];
+            for (int i = 0; i < count; i++) {
+                larger[i] = records[(head + i) & (records.length - 1)];
+            }
+            records = larger;
+            head = 0;
+        }
+        records[(head + count++) & (records.length - 1)] = record;
+        sequence++;
+        bytes += record.length + RECORD_OVERHEAD;
+        // The newest record always stays, however large
+        while (bytes > backlogBytes && count > 1) {
+            bytes -= records[head].length + RECORD_OVERHEAD;
+            records[head] = null;
+            head = (head + 1) & (records.length - 1);
+            count--;
+            firstSequence++;
+        }
+        appended.signalAll();
+    }
+
+    private void putMutation(byte kind, String source, String destination, int weight) {
+        ensureRemaining(1);
+        encoder.put(kind);
+        putString(source);
+        if (kind == Batch.ADD_EDGE || kind == Batch.REMOVE_EDGE) {
+            putString(destination);
+        }
+        if (kind == Batch.ADD_EDGE) {
+            ensureRemaining(4);
+            encoder.putInt(weight);
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureRemaining(4 + bytes.length);
+        encoder.putInt(bytes.length);
+        encoder.put(bytes);
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (encoder.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(encoder.capacity() * 2, encoder.position() + bytes));
+            encoder.flip();
+            larger.put(encoder);
+            encoder = larger;
+        }
+    }
+}
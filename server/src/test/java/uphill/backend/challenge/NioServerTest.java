@@ -0,0 +1,257 @@
+package uphill.backend.challenge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.engine.SearchAbortedException;
+import uphill.backend.challenge.engine.SearchBudget;
+import uphill.backend.challenge.handlers.AdmissionControl;
+import uphill.backend.challenge.handlers.CommandDispatcher;
+import uphill.backend.challenge.handlers.SessionHandler;
+import uphill.backend.challenge.handlers.SessionTimeoutWheel;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioServerTest {
+
+    NioServer server;
+
+    SessionTimeoutWheel timeoutWheel;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        timeoutWheel = new SessionTimeoutWheel(500, 10, 64);
+        server = new NioServer(0, new CommandDispatcher(new Graph()), timeoutWheel, 2);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        timeoutWheel.close();
+    }
+
+    @Test
+    void speaksTheSessionProtocol() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            assertTrue(reader.readLine().startsWith("HI, I AM "));
+
+            out.write("HI, I AM Cesar\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("HI Cesar", reader.readLine());
+
+            // Several commands in one write, with mixed line terminators
+            out.write("ADD NODE A\r\nADD NODE B\nADD EDGE A B 5\rSHORTEST PATH A B\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals(Graph.NODE_ADDED, reader.readLine());
+            assertEquals(Graph.NODE_ADDED, reader.readLine());
+            assertEquals(Graph.EDGE_ADDED, reader.readLine());
+            assertEquals("5", reader.readLine());
+
+            // A command split across writes
+            out.write("CLOSER TH".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            out.write("AN 10 A\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("B", reader.readLine());
+
+            out.write("BYE MATE!\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(reader.readLine().startsWith("BYE Cesar, WE SPOKE FOR "));
+        }
+    }
+
+    @Test
+    void answersALastLineWithoutLineBreak() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(reader.readLine().startsWith("HI, I AM "));
+
+            socket.getOutputStream().write("ADD NODE A\nADD NODE B".getBytes(StandardCharsets.UTF_8));
+            socket.shutdownOutput();
+            assertEquals(Graph.NODE_ADDED, reader.readLine());
+            assertEquals(Graph.NODE_ADDED, reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void closesClientsSendingOverlongLines() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(reader.readLine().startsWith("HI, I AM "));
+
+            byte[] chunk = new byte[8192];
+            Arrays.fill(chunk, (byte) 'x');
+            try {
+                for (int written = 0; written <= SessionHandler.MAX_LINE_LENGTH; written += chunk.length) {
+                    socket.getOutputStream().write(chunk);
+                }
+            } catch (IOException e) {
+                // The server may have closed the connection before the last chunk
+            }
+            assertEquals(SessionHandler.ERROR_LINE_TOO_LONG, reader.readLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void abortsTheQueryOfAClientThatDisconnected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<SearchAbortedException.Reason> aborted = new CompletableFuture<>();
+        Graph slowGraph = new Graph() {
+            @Override
+            public void findNodesCloserThan(int weight, String sourceNodeName, Session session) {
+                // Settles nodes like a search over a huge graph until its budget says to stop
+                SearchBudget budget = new SearchBudget(0, 10_000, session.getDisconnectProbe());
+                started.countDown();
+                try {
+                    while (true) {
+                        budget.settled();
+                    }
+                } catch (SearchAbortedException e) {
+                    aborted.complete(e.getReason());
+                }
+            }
+        };
+        try (NioServer slow = new NioServer(0, new CommandDispatcher(slowGraph), timeoutWheel, 1)) {
+            slow.start();
+            try (Socket socket = new Socket("localhost", slow.getPort())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("HI, I AM "));
+                socket.getOutputStream().write("CLOSER THAN 5 A\n".getBytes(StandardCharsets.UTF_8));
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+            }
+            assertEquals(SearchAbortedException.Reason.DISCONNECTED, aborted.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void keepsInputTheDisconnectProbeReadDuringAQuery() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        Graph slowGraph = new Graph() {
+            @Override
+            public void findNodesCloserThan(int weight, String sourceNodeName, Session session) {
+                // Probes the client while the next commands arrive, until the time limit stops it
+                SearchBudget budget = new SearchBudget(0, 500, session.getDisconnectProbe());
+                started.countDown();
+                try {
+                    while (true) {
+                        budget.settled();
+                    }
+                } catch (SearchAbortedException e) {
+                    session.send(e.getReason().name());
+                }
+            }
+        };
+        try (NioServer slow = new NioServer(0, new CommandDispatcher(slowGraph), timeoutWheel, 1)) {
+            slow.start();
+            try (Socket socket = new Socket("localhost", slow.getPort())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = socket.getOutputStream();
+                assertTrue(reader.readLine().startsWith("HI, I AM "));
+                out.write("CLOSER THAN 5 A\nADD NO".getBytes(StandardCharsets.UTF_8));
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+                out.write("DE A\nADD NODE B\n".getBytes(StandardCharsets.UTF_8));
+
+                assertEquals(SearchAbortedException.Reason.TIME_LIMIT.name(), reader.readLine());
+                assertEquals(Graph.NODE_ADDED, reader.readLine());
+                assertEquals(Graph.NODE_ADDED, reader.readLine());
+            }
+        }
+    }
+
+    @Test
+    void greetsMoreClientsThanTheBlockingThreadPool() throws IOException {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 250; i++) {
+                Socket socket = new Socket("localhost", server.getPort());
+                sockets.add(socket);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("HI, I AM "));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    void turnsAwayClientsBeyondTheSessionLimit() throws IOException {
+        try (NioServer limited = new NioServer(0, new CommandDispatcher(new Graph()), timeoutWheel, 1,
+                new AdmissionControl(1, 0))) {
+            limited.start();
+            try (Socket admitted = new Socket("localhost", limited.getPort());
+                 Socket rejected = new Socket("localhost", limited.getPort())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(admitted.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("HI, I AM "));
+                BufferedReader rejectedReader = new BufferedReader(new InputStreamReader(rejected.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals(AdmissionControl.SERVER_BUSY, rejectedReader.readLine());
+                assertNull(rejectedReader.readLine());
+            }
+        }
+    }
+
+    @Test
+    void answersPipelinedCommandsBeyondTheLimitInOrder() throws IOException, InterruptedException {
+        try (NioServer limited = new NioServer(0, new CommandDispatcher(new Graph()), timeoutWheel, 1,
+                new AdmissionControl(0, 3))) {
+            limited.start();
+            try (Socket socket = new Socket("localhost", limited.getPort())) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(reader.readLine().startsWith("HI, I AM "));
+                StringBuilder setup = new StringBuilder("ADD NODE A\n");
+                for (int i = 0; i < 1000; i++) {
+                    setup.append("ADD NODE N").append(i).append('\n').append("ADD EDGE A N").append(i).append(" 1\n");
+                }
+                socket.getOutputStream().write(setup.toString().getBytes(StandardCharsets.UTF_8));
+                for (int i = 0; i < 2001; i++) {
+                    assertNotNull(reader.readLine());
+                }
+                // Far more reply bytes than the socket buffers hold, so reading pauses until the client catches up
+                int count = 1000;
+                Thread writer = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            socket.getOutputStream().write("CLOSER THAN 5 A\n".getBytes(StandardCharsets.UTF_8));
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.start();
+                Thread.sleep(200);
+                for (int i = 0; i < count; i++) {
+                    assertEquals(1000, reader.readLine().split(",").length);
+                }
+                writer.join();
+            }
+        }
+    }
+
+    @Test
+    void closesIdleSessions() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(reader.readLine().startsWith("HI, I AM "));
+            assertNull(reader.readLine());
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package uphill.backend.challenge;
+
+import com.sun.management.UnixOperatingSystemMXBean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.handlers.AdmissionControl;
+import uphill.backend.challenge.handlers.CommandDispatcher;
+import uphill.backend.challenge.handlers.SessionHandler;
+import uphill.backend.challenge.handlers.SessionTimeoutWheel;
+import uphill.backend.challenge.model.Graph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SessionExecutionModeTest {
+
+    private static final int TARGET_SESSIONS = 10_000;
+    // Descriptors the test JVM needs besides the client sockets
+    private static final int DESCRIPTOR_RESERVE = 500;
+    // Set by the jdk21 profile, which must not skip the virtual thread test
+    private static final String REQUIRE_VIRTUAL_THREADS = "requireVirtualThreads";
+
+    SessionTimeoutWheel timeoutWheel = new SessionTimeoutWheel(SessionHandler.SESSION_TIMEOUT);
+
+    @AfterEach
+    void tearDown() {
+        timeoutWheel.close();
+    }
+
+    @Test
+    void fixedThreadPoolLeavesClientsBeyondItsThreadsWithoutGreeting() throws IOException {
+        try (BlockingServer server = new BlockingServer(0, new CommandDispatcher(new Graph()),
+                Executors.newFixedThreadPool(Server.MAX_THREADS), timeoutWheel)) {
+            server.start();
+            List<Client> clients = new ArrayList<>();
+            try {
+                for (int i = 0; i < Server.MAX_THREADS; i++) {
+                    Client client = new Client(server.getPort());
+                    clients.add(client);
+                    assertTrue(client.readLine().startsWith("HI, I AM "));
+                }
+                Client waiting = new Client(server.getPort());
+                clients.add(waiting);
+                waiting.socket.setSoTimeout(500);
+                assertThrows(SocketTimeoutException.class, waiting::readLine);
+            } finally {
+                closeAll(clients);
+            }
+        }
+    }
+
+    @Test
+    void clientsBeyondTheSessionLimitAreToldTheServerIsBusy() throws IOException, InterruptedException {
+        CommandDispatcher dispatcher = new CommandDispatcher(new Graph());
+        try (BlockingServer server = new BlockingServer(0, dispatcher, Executors.newFixedThreadPool(4), timeoutWheel,
+                new AdmissionControl(2, 0))) {
+            server.start();
+            List<Client> clients = new ArrayList<>();
+            try {
+                for (int i = 0; i < 2; i++) {
+                    Client client = new Client(server.getPort());
+                    clients.add(client);
+                    assertTrue(client.readLine().startsWith("HI, I AM "));
+                }
+                Client rejected = new Client(server.getPort());
+                clients.add(rejected);
+                assertEquals(AdmissionControl.SERVER_BUSY, rejected.readLine());
+                assertNull(rejected.readLine());
+                assertEquals(1, dispatcher.getMetrics().getSessionsRejected());
+
+                // A session that ends frees its slot
+                clients.get(0).socket.close();
+                long deadline = System.currentTimeMillis() + 10_000;
+                String greeting;
+                do {
+                    assertTrue(System.currentTimeMillis() < deadline, "Session slot not released");
+                    Thread.sleep(20);
+                    Client client = new Client(server.getPort());
+                    clients.add(client);
+                    greeting = client.readLine();
+                } while (AdmissionControl.SERVER_BUSY.equals(greeting));
+                assertTrue(greeting.startsWith("HI, I AM "));
+            } finally {
+                closeAll(clients);
+            }
+        }
+    }
+
+    @Test
+    void clientsBeyondTheSessionQueueAreToldTheServerIsBusy() throws IOException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        try (BlockingServer server = new BlockingServer(0, new CommandDispatcher(new Graph()), executor, timeoutWheel,
+                new AdmissionControl(0, 0))) {
+            server.start();
+            List<Client> clients = new ArrayList<>();
+            try {
+                Client served = new Client(server.getPort());
+                clients.add(served);
+                assertTrue(served.readLine().startsWith("HI, I AM "));
+                Client queued = new Client(server.getPort());
+                clients.add(queued);
+                Client rejected = new Client(server.getPort());
+                clients.add(rejected);
+                assertEquals(AdmissionControl.SERVER_BUSY, rejected.readLine());
+
+                // The queued client is served once the thread is free
+                served.socket.close();
+                assertTrue(queued.readLine().startsWith("HI, I AM "));
+            } finally {
+                closeAll(clients);
+            }
+        }
+    }
+
+    @Test
+    void pipelinedCommandsAreAnsweredInOrder() throws IOException {
+        try (BlockingServer server = new BlockingServer(0, new CommandDispatcher(new Graph()),
+                Executors.newFixedThreadPool(1), timeoutWheel)) {
+            server.start();
+            Client client = new Client(server.getPort());
+            try {
+                assertTrue(client.readLine().startsWith("HI, I AM "));
+                StringBuilder commands = new StringBuilder();
+                for (int i = 0; i < 5000; i++) {
+                    commands.append("ADD NODE N").append(i % 2500).append('\n');
+                }
+                client.socket.getOutputStream().write(commands.toString().getBytes());
+                for (int i = 0; i < 5000; i++) {
+                    assertEquals(i < 2500 ? Graph.NODE_ADDED : Graph.ERROR_NODE_ALREADY_EXISTS, client.readLine());
+                }
+                // A lone command still gets its reply without waiting for more input
+                client.writer.println("ADD NODE N2500");
+                assertEquals(Graph.NODE_ADDED, client.readLine());
+            } finally {
+                client.socket.close();
+            }
+        }
+    }
+
+    @Test
+    void virtualThreadsServeTenThousandConcurrentSessions() throws IOException, InterruptedException {
+        if (Boolean.getBoolean(REQUIRE_VIRTUAL_THREADS)) {
+            assertTrue(SessionExecutors.isVirtualThreadSupported(), "the jdk21 profile must run the tests on Java 21 or later");
+        } else {
+            assumeTrue(SessionExecutors.isVirtualThreadSupported(), "virtual threads need Java 21 or later, run with -Pjdk21");
+        }
+        // The server runs in a process of its own, so each side needs one descriptor per session
+        long budget = fileDescriptorBudget();
+        assertTrue(budget >= TARGET_SESSIONS + DESCRIPTOR_RESERVE,
+                "only " + budget + " free file descriptors for " + TARGET_SESSIONS + " sessions, raise ulimit -n");
+
+        int port = freePort();
+        Process server = startVirtualThreadServer(port);
+        List<Client> clients = new ArrayList<>();
+        try {
+            awaitListening(port);
+            for (int i = 0; i < TARGET_SESSIONS; i++) {
+                Client client = new Client(port);
+                clients.add(client);
+                assertTrue(client.readLine().startsWith("HI, I AM "), "session " + i);
+            }
+            // Every session is still alive and answering
+            for (int i = 0; i < TARGET_SESSIONS; i++) {
+                Client client = clients.get(i);
+                client.writer.println("ADD NODE N" + i);
+                assertEquals(Graph.NODE_ADDED, client.readLine(), "session " + i + " of " + TARGET_SESSIONS);
+            }
+        } finally {
+            closeAll(clients);
+            server.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static long fileDescriptorBudget() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof UnixOperatingSystemMXBean) {
+            UnixOperatingSystemMXBean unix = (UnixOperatingSystemMXBean) os;
+            return unix.getMaxFileDescriptorCount() - unix.getOpenFileDescriptorCount();
+        }
+        return TARGET_SESSIONS + DESCRIPTOR_RESERVE;
+    }
+
+    private static Process startVirtualThreadServer(int port) throws IOException {
+        List<String> command = List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                Server.class.getName(),
+                "--port", String.valueOf(port),
+                "--mode", "virtual",
+                "--max-sessions", "0",
+                "--stats-interval", "0");
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    private static void awaitListening(int port) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void closeAll(List<Client> clients) throws IOException {
+        for (Client client : clients) {
+            client.socket.close();
+        }
+    }
+
+    static class Client {
+
+        final Socket socket;
+        final BufferedReader reader;
+        final PrintWriter writer;
+
+        Client(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            writer = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        String readLine() throws IOException {
+            return reader.readLine();
+        }
+    }
+}
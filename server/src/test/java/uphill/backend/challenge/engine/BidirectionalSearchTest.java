@@ -0,0 +1,70 @@
+package uphill.backend.challenge.engine;
+
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.engine.ShortestPathSearchTest.TestAdjacency;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BidirectionalSearchTest {
+
+    @Test
+    void distance() {
+        TestAdjacency graph = new TestAdjacency(4);
+        graph.add(0, 1, 5);
+        graph.add(1, 2, 3);
+        graph.add(0, 2, 10);
+        BidirectionalSearch search = new BidirectionalSearch();
+
+        assertEquals(8, search.distance(graph, 0, 2, null));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distance(graph, 0, 3, null));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distance(graph, 2, 0, null));
+    }
+
+    @Test
+    void matchesDijkstraWithAndWithoutLandmarks() {
+        Random random = new Random(7);
+        ShortestPathSearch dijkstra = new ShortestPathSearch();
+        BidirectionalSearch bidirectional = new BidirectionalSearch();
+        for (int round = 0; round < 40; round++) {
+            int size = 2 + random.nextInt(80);
+            TestAdjacency graph = new TestAdjacency(size);
+            int edges = random.nextInt(size * 3);
+            for (int i = 0; i < edges; i++) {
+                graph.add(random.nextInt(size), random.nextInt(size), random.nextInt(30));
+            }
+            CsrGraph csr = CsrGraph.copyOf(graph);
+            Landmarks landmarks = Landmarks.select(csr, 1 + random.nextInt(6), 0);
+            for (int source = 0; source < size; source++) {
+                for (int target = 0; target < size; target++) {
+                    if (source == target) {
+                        continue;
+                    }
+                    int expected = dijkstra.distance(graph, source, target);
+                    assertEquals(expected, bidirectional.distance(graph, source, target, null));
+                    assertEquals(expected, bidirectional.distance(csr, source, target, landmarks));
+                }
+            }
+        }
+    }
+
+    @Test
+    void landmarkBoundsNeverOverestimate() {
+        Random random = new Random(11);
+        TestAdjacency graph = new TestAdjacency(50);
+        for (int i = 0; i < 150; i++) {
+            graph.add(random.nextInt(50), random.nextInt(50), random.nextInt(30));
+        }
+        Landmarks landmarks = Landmarks.select(CsrGraph.copyOf(graph), 4, 0);
+        ShortestPathSearch dijkstra = new ShortestPathSearch();
+        for (int source = 0; source < 50; source++) {
+            for (int target = 0; target < 50; target++) {
+                int distance = dijkstra.distance(graph, source, target);
+                if (distance != ShortestPathSearch.UNREACHABLE) {
+                    assertTrue(landmarks.lowerBoundTo(source, target) <= distance);
+                }
+            }
+        }
+    }
+}
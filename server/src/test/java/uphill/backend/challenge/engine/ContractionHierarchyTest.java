@@ -0,0 +1,82 @@
+package uphill.backend.challenge.engine;
+
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.engine.ShortestPathSearchTest.TestAdjacency;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContractionHierarchyTest {
+
+    @Test
+    void distance() {
+        TestAdjacency graph = new TestAdjacency(5);
+        graph.add(0, 1, 5);
+        graph.add(1, 2, 3);
+        graph.add(0, 2, 10);
+        graph.add(2, 2, 1);
+        graph.add(2, 3, 4);
+        graph.add(2, 3, 2);
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(CsrGraph.copyOf(graph), 7);
+        ContractionHierarchySearch search = new ContractionHierarchySearch();
+
+        assertEquals(7, hierarchy.version());
+        assertEquals(0, search.distance(hierarchy, 1, 1));
+        assertEquals(8, search.distance(hierarchy, 0, 2));
+        assertEquals(10, search.distance(hierarchy, 0, 3));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distance(hierarchy, 0, 4));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distance(hierarchy, 2, 0));
+    }
+
+    @Test
+    void matchesDijkstraWhenBuiltAndWhenRebuiltInAnOlderOrder() {
+        Random random = new Random(13);
+        ShortestPathSearch dijkstra = new ShortestPathSearch();
+        ContractionHierarchySearch search = new ContractionHierarchySearch();
+        for (int round = 0; round < 40; round++) {
+            int size = 2 + random.nextInt(80);
+            TestAdjacency graph = new TestAdjacency(size);
+            int edges = random.nextInt(size * 3);
+            for (int i = 0; i < edges; i++) {
+                graph.add(random.nextInt(size), random.nextInt(size), random.nextInt(30));
+            }
+            ContractionHierarchy built = ContractionHierarchy.build(CsrGraph.copyOf(graph), 0);
+            assertNotNull(built);
+            assertMatches(dijkstra, search, graph, built);
+
+            // The next version has more nodes and other edges but keeps the old contraction order
+            TestAdjacency next = new TestAdjacency(size + random.nextInt(5));
+            for (int i = 0; i < edges; i++) {
+                next.add(random.nextInt(next.capacity()), random.nextInt(next.capacity()), random.nextInt(30));
+            }
+            ContractionHierarchy rebuilt = ContractionHierarchy.rebuild(CsrGraph.copyOf(next), built, 1);
+            assertNotNull(rebuilt);
+            assertEquals(1, rebuilt.version());
+            assertMatches(dijkstra, search, next, rebuilt);
+        }
+    }
+
+    @Test
+    void budgetAbortsQueries() {
+        TestAdjacency graph = new TestAdjacency(50);
+        for (int i = 0; i < 49; i++) {
+            graph.add(i, i + 1, 1);
+        }
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(CsrGraph.copyOf(graph), 0);
+        ContractionHierarchySearch search = new ContractionHierarchySearch();
+
+        assertThrows(SearchAbortedException.class, () -> search.distance(hierarchy, 0, 49, new SearchBudget(1, 0, null)));
+        assertEquals(49, search.distance(hierarchy, 0, 49));
+    }
+
+    private static void assertMatches(ShortestPathSearch dijkstra, ContractionHierarchySearch search,
+                                      TestAdjacency graph, ContractionHierarchy hierarchy) {
+        for (int source = 0; source < graph.capacity(); source++) {
+            for (int target = 0; target < graph.capacity(); target++) {
+                assertEquals(dijkstra.distance(graph, source, target), search.distance(hierarchy, source, target),
+                        source + " -> " + target);
+            }
+        }
+    }
+}
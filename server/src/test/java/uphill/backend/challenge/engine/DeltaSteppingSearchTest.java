@@ -0,0 +1,76 @@
+package uphill.backend.challenge.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.engine.ShortestPathSearchTest.TestAdjacency;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaSteppingSearchTest {
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void settleWithin() {
+        TestAdjacency graph = new TestAdjacency(5);
+        graph.add(0, 1, 5);
+        graph.add(1, 2, 3);
+        graph.add(0, 2, 10);
+        graph.add(2, 3, 1);
+        graph.add(3, 4, 0);
+        DeltaSteppingSearch search = new DeltaSteppingSearch(pool);
+
+        assertEquals(3, search.settleWithin(graph, 0, 9));
+        assertEquals(8, search.distanceTo(2));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distanceTo(4));
+        assertEquals(5, search.settleWithin(graph, 0, 10));
+        assertEquals(9, search.distanceTo(4));
+        assertEquals(0, search.settleWithin(graph, 0, 0));
+    }
+
+    @Test
+    void matchesDijkstraOnRandomGraphs() {
+        Random random = new Random(17);
+        DeltaSteppingSearch parallel = new DeltaSteppingSearch(pool);
+        ShortestPathSearch sequential = new ShortestPathSearch();
+        for (int round = 0; round < 20; round++) {
+            // Large enough for frontiers to be split across tasks
+            int size = 1 + random.nextInt(5000);
+            TestAdjacency graph = new TestAdjacency(size);
+            int edges = random.nextInt(size * 8);
+            int maxWeight = 1 + random.nextInt(200);
+            for (int i = 0; i < edges; i++) {
+                graph.add(random.nextInt(size), random.nextInt(size), random.nextInt(maxWeight));
+            }
+            for (int query = 0; query < 5; query++) {
+                int source = random.nextInt(size);
+                int limit = random.nextInt(maxWeight * 6);
+                int[] expected = settled(sequential.settleWithin(graph, source, limit), sequential::settledNode);
+                int[] actual = settled(parallel.settleWithin(graph, source, limit), parallel::settledNode);
+                assertArrayEquals(expected, actual);
+                for (int node : actual) {
+                    assertEquals(sequential.distanceTo(node), parallel.distanceTo(node));
+                }
+            }
+        }
+    }
+
+    private static int[] settled(int count, IntUnaryOperator node) {
+        int[] nodes = new int[count];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = node.applyAsInt(i);
+        }
+        Arrays.sort(nodes);
+        return nodes;
+    }
+}
@@ -0,0 +1,94 @@
+package uphill.backend.challenge.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DynamicShortestPathsTest {
+
+    @Test
+    void updateReroutesAroundRemovedTreeEdge() {
+        ShortestPathSearchTest.TestAdjacency graph = new ShortestPathSearchTest.TestAdjacency(4);
+        graph.add(0, 1, 1);
+        graph.add(1, 2, 1);
+        graph.add(2, 3, 1);
+        graph.add(0, 2, 5);
+        DynamicShortestPaths paths = new DynamicShortestPaths();
+        paths.rebuild(graph, 0, 1);
+        assertEquals(3, paths.distanceTo(3));
+
+        graph.remove(1, 2);
+        EdgeChanges changes = new EdgeChanges();
+        changes.add(1, 2, false);
+        paths.update(graph, changes, 2);
+
+        assertEquals(5, paths.distanceTo(2));
+        assertEquals(6, paths.distanceTo(3));
+        assertEquals(2, paths.countCloserThan(5));
+        assertEquals(0, paths.nodeByDistance(0));
+        assertEquals(1, paths.nodeByDistance(1));
+    }
+
+    @Test
+    void catchUpRebuildsWhenLogWasReset() {
+        ShortestPathSearchTest.TestAdjacency graph = new ShortestPathSearchTest.TestAdjacency(3);
+        graph.add(0, 1, 4);
+        EdgeChangeLog log = new EdgeChangeLog(8);
+        DynamicShortestPaths paths = new DynamicShortestPaths();
+        paths.catchUp(graph, 0, 1, log);
+        assertEquals(4, paths.distanceTo(1));
+
+        graph.add(0, 2, 1);
+        graph.add(2, 1, 1);
+        log.reset(2);
+        paths.catchUp(graph, 0, 2, log);
+
+        assertEquals(2, paths.version());
+        assertEquals(2, paths.distanceTo(1));
+    }
+
+    @Test
+    void matchesFreshSearchAcrossRandomChanges() {
+        Random random = new Random(7);
+        ShortestPathSearch search = new ShortestPathSearch();
+        for (int round = 0; round < 30; round++) {
+            int size = 2 + random.nextInt(50);
+            ShortestPathSearchTest.TestAdjacency graph = new ShortestPathSearchTest.TestAdjacency(size);
+            for (int i = 0, edges = random.nextInt(size * 3); i < edges; i++) {
+                graph.add(random.nextInt(size), random.nextInt(size), random.nextInt(20));
+            }
+            EdgeChangeLog log = new EdgeChangeLog(16);
+            DynamicShortestPaths paths = new DynamicShortestPaths();
+            int source = random.nextInt(size);
+            long version = 0;
+            paths.catchUp(graph, source, version, log);
+            for (int batch = 0; batch < 20; batch++) {
+                for (int i = 0, changes = 1 + random.nextInt(6); i < changes; i++) {
+                    int from = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    version++;
+                    if (random.nextBoolean()) {
+                        graph.add(from, to, random.nextInt(20));
+                        log.edgeAdded(version, from, to);
+                    } else {
+                        graph.remove(from, to);
+                        log.edgeRemoved(version, from, to);
+                    }
+                }
+                paths.catchUp(graph, source, version, log);
+                int limit = random.nextInt(60);
+                int within = 0;
+                for (int target = 0; target < size; target++) {
+                    int expected = search.distance(graph, source, target);
+                    assertEquals(expected, paths.distanceTo(target));
+                    if (expected < limit) {
+                        within++;
+                    }
+                }
+                assertEquals(within, paths.countCloserThan(limit));
+            }
+        }
+    }
+}
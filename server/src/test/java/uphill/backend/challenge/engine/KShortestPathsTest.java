@@ -0,0 +1,138 @@
+package uphill.backend.challenge.engine;
+
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.engine.ShortestPathSearchTest.TestAdjacency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KShortestPathsTest {
+
+    @Test
+    void findsLooplessAlternativesShortestFirst() {
+        // Yen's original example: C=0, D=1, E=2, F=3, G=4, H=5
+        TestAdjacency graph = new TestAdjacency(6);
+        graph.add(0, 1, 3);
+        graph.add(0, 2, 2);
+        graph.add(1, 3, 4);
+        graph.add(2, 1, 1);
+        graph.add(2, 3, 2);
+        graph.add(2, 4, 3);
+        graph.add(3, 4, 2);
+        graph.add(3, 5, 1);
+        graph.add(4, 5, 2);
+        List<KShortestPaths.Path> paths = new KShortestPaths().find(graph, 0, 5, 3, true, SearchBudget.UNLIMITED);
+
+        assertEquals(3, paths.size());
+        assertArrayEquals(new int[]{0, 2, 3, 5}, nodes(paths.get(0)));
+        assertEquals(5, paths.get(0).getWeight());
+        assertArrayEquals(new int[]{0, 2, 4, 5}, nodes(paths.get(1)));
+        assertEquals(7, paths.get(1).getWeight());
+        assertArrayEquals(new int[]{0, 1, 3, 5}, nodes(paths.get(2)));
+        assertEquals(8, paths.get(2).getWeight());
+    }
+
+    @Test
+    void stopsWhenNoMorePathsExist() {
+        TestAdjacency graph = new TestAdjacency(4);
+        graph.add(0, 1, 1);
+        graph.add(1, 2, 1);
+        graph.add(0, 2, 5);
+        KShortestPaths search = new KShortestPaths();
+
+        assertEquals(2, search.find(graph, 0, 2, 10, true, SearchBudget.UNLIMITED).size());
+        assertTrue(search.find(graph, 0, 3, 10, true, SearchBudget.UNLIMITED).isEmpty());
+        List<KShortestPaths.Path> self = search.find(graph, 1, 1, 10, true, SearchBudget.UNLIMITED);
+        assertEquals(1, self.size());
+        assertArrayEquals(new int[]{1}, nodes(self.get(0)));
+    }
+
+    @Test
+    void matchesEnumerationOfEverySimplePath() {
+        Random random = new Random(11);
+        KShortestPaths search = new KShortestPaths();
+        for (int round = 0; round < 100; round++) {
+            int size = 2 + random.nextInt(7);
+            TestAdjacency graph = new TestAdjacency(size);
+            for (int i = 0; i < size * 3; i++) {
+                graph.add(random.nextInt(size), random.nextInt(size), random.nextInt(10));
+            }
+            int source = random.nextInt(size);
+            int target = random.nextInt(size);
+            List<Long> expected = simplePathWeights(graph, source, target);
+            int k = 1 + random.nextInt(8);
+            for (boolean guided : new boolean[]{true, false}) {
+                List<KShortestPaths.Path> paths = search.find(graph, source, target, k, guided, SearchBudget.UNLIMITED);
+                assertEquals(Math.min(k, expected.size()), paths.size());
+                Set<List<Integer>> distinct = new HashSet<>();
+                for (int i = 0; i < paths.size(); i++) {
+                    KShortestPaths.Path path = paths.get(i);
+                    assertEquals(expected.get(i), path.getWeight());
+                    assertEquals(source, path.node(0));
+                    assertEquals(target, path.node(path.length() - 1));
+                    List<Integer> nodes = new ArrayList<>();
+                    for (int node : nodes(path)) {
+                        nodes.add(node);
+                    }
+                    assertEquals(nodes.size(), new HashSet<>(nodes).size(), "path has a loop");
+                    assertTrue(distinct.add(nodes), "path found twice");
+                }
+            }
+        }
+    }
+
+    @Test
+    void budgetAbortsSpurSearches() {
+        TestAdjacency graph = new TestAdjacency(100);
+        for (int i = 1; i < 100; i++) {
+            graph.add(i - 1, i, 1);
+            graph.add(i - 1, i, 2);
+        }
+        SearchAbortedException aborted = assertThrows(SearchAbortedException.class,
+                () -> new KShortestPaths().find(graph, 0, 99, 5, true, new SearchBudget(150, 0, null)));
+        assertEquals(SearchAbortedException.Reason.NODE_LIMIT, aborted.getReason());
+    }
+
+    private static int[] nodes(KShortestPaths.Path path) {
+        int[] nodes = new int[path.length()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = path.node(i);
+        }
+        return nodes;
+    }
+
+    // Weights of every simple path, with parallel edges counting once at their lowest weight
+    private static List<Long> simplePathWeights(TestAdjacency graph, int source, int target) {
+        List<Long> weights = new ArrayList<>();
+        enumerate(graph, source, target, new boolean[graph.capacity()], 0, weights);
+        Collections.sort(weights);
+        return weights;
+    }
+
+    private static void enumerate(TestAdjacency graph, int node, int target, boolean[] visited, long weight,
+                                  List<Long> weights) {
+        if (node == target) {
+            weights.add(weight);
+            return;
+        }
+        visited[node] = true;
+        for (int next = 0; next < graph.capacity(); next++) {
+            long lightest = Long.MAX_VALUE;
+            for (int[] edge : graph.edges.get(node)) {
+                if (edge[0] == next) {
+                    lightest = Math.min(lightest, edge[1]);
+                }
+            }
+            if (lightest != Long.MAX_VALUE && !visited[next]) {
+                enumerate(graph, next, target, visited, weight + lightest, weights);
+            }
+        }
+        visited[node] = false;
+    }
+}
@@ -0,0 +1,165 @@
+package uphill.backend.challenge.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShortestPathSearchTest {
+
+    @Test
+    void distance() {
+        TestAdjacency graph = new TestAdjacency(4);
+        graph.add(0, 1, 5);
+        graph.add(1, 2, 3);
+        graph.add(0, 2, 10);
+        ShortestPathSearch search = new ShortestPathSearch();
+
+        assertEquals(8, search.distance(graph, 0, 2));
+        assertEquals(5, search.distance(graph, 0, 1));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distance(graph, 0, 3));
+        assertEquals(ShortestPathSearch.UNREACHABLE, search.distance(graph, 2, 0));
+    }
+
+    @Test
+    void pathTo() {
+        TestAdjacency graph = new TestAdjacency(4);
+        graph.add(0, 1, 5);
+        graph.add(1, 2, 3);
+        graph.add(0, 2, 10);
+        ShortestPathSearch search = new ShortestPathSearch();
+
+        search.distance(graph, 0, 2);
+        assertArrayEquals(new int[]{0, 1, 2}, search.pathTo(2));
+        assertArrayEquals(new int[]{0}, search.pathTo(0));
+        assertNull(search.pathTo(3));
+    }
+
+    @Test
+    void settleWithin() {
+        TestAdjacency graph = new TestAdjacency(4);
+        graph.add(0, 1, 5);
+        graph.add(1, 2, 3);
+        graph.add(2, 3, 1);
+        ShortestPathSearch search = new ShortestPathSearch();
+
+        int settled = search.settleWithin(graph, 0, 9);
+        assertEquals(3, settled);
+        assertEquals(0, search.settledNode(0));
+        assertEquals(1, search.settledNode(1));
+        assertEquals(2, search.settledNode(2));
+        assertEquals(8, search.distanceTo(2));
+    }
+
+    @Test
+    void matchesBellmanFordOnRandomGraphs() {
+        Random random = new Random(42);
+        ShortestPathSearch search = new ShortestPathSearch();
+        for (int round = 0; round < 50; round++) {
+            int size = 1 + random.nextInt(60);
+            TestAdjacency graph = new TestAdjacency(size);
+            int edges = random.nextInt(size * 4);
+            for (int i = 0; i < edges; i++) {
+                graph.add(random.nextInt(size), random.nextInt(size), random.nextInt(20));
+            }
+            for (int source = 0; source < size; source++) {
+                int[] expected = bellmanFord(graph, source);
+                for (int target = 0; target < size; target++) {
+                    assertEquals(expected[target], search.distance(graph, source, target));
+                }
+                int limit = random.nextInt(40);
+                int settled = search.settleWithin(graph, source, limit);
+                long within = Arrays.stream(expected).filter(distance -> distance < limit).count();
+                assertEquals(within, settled);
+            }
+        }
+    }
+
+    @Test
+    void budgetAbortsSearchAndLeavesItReusable() throws InterruptedException {
+        TestAdjacency graph = new TestAdjacency(5000);
+        for (int i = 1; i < 5000; i++) {
+            graph.add(i - 1, i, 1);
+        }
+        ShortestPathSearch search = new ShortestPathSearch();
+
+        SearchAbortedException nodes = assertThrows(SearchAbortedException.class,
+                () -> search.distance(graph, 0, 10, new SearchBudget(3, 0, null)));
+        assertEquals(SearchAbortedException.Reason.NODE_LIMIT, nodes.getReason());
+        assertEquals(10, search.distance(graph, 0, 10));
+
+        SearchAbortedException disconnected = assertThrows(SearchAbortedException.class,
+                () -> search.settleWithin(graph, 0, 5000, new SearchBudget(0, 0, () -> true)));
+        assertEquals(SearchAbortedException.Reason.DISCONNECTED, disconnected.getReason());
+
+        SearchBudget timed = new SearchBudget(0, 1, null);
+        Thread.sleep(5);
+        SearchAbortedException time = assertThrows(SearchAbortedException.class,
+                () -> search.distance(graph, 0, 4999, timed));
+        assertEquals(SearchAbortedException.Reason.TIME_LIMIT, time.getReason());
+        assertEquals(4999, search.distance(graph, 0, 4999));
+    }
+
+    private static int[] bellmanFord(TestAdjacency graph, int source) {
+        int[] distances = new int[graph.capacity()];
+        Arrays.fill(distances, ShortestPathSearch.UNREACHABLE);
+        distances[source] = 0;
+        for (int round = 0; round < graph.capacity(); round++) {
+            for (int from = 0; from < graph.capacity(); from++) {
+                if (distances[from] == ShortestPathSearch.UNREACHABLE) {
+                    continue;
+                }
+                for (int[] edge : graph.edges.get(from)) {
+                    distances[edge[0]] = Math.min(distances[edge[0]], distances[from] + edge[1]);
+                }
+            }
+        }
+        return distances;
+    }
+
+    static class TestAdjacency implements Adjacency {
+
+        final List<List<int[]>> edges = new ArrayList<>();
+
+        TestAdjacency(int size) {
+            for (int i = 0; i < size; i++) {
+                edges.add(new ArrayList<>());
+            }
+        }
+
+        void add(int from, int to, int weight) {
+            edges.get(from).add(new int[]{to, weight});
+        }
+
+        void remove(int from, int to) {
+            edges.get(from).removeIf(edge -> edge[0] == to);
+        }
+
+        @Override
+        public int capacity() {
+            return edges.size();
+        }
+
+        @Override
+        public void forEachOutgoing(int node, EdgeVisitor visitor) {
+            for (int[] edge : edges.get(node)) {
+                visitor.visit(edge[0], edge[1]);
+            }
+        }
+
+        @Override
+        public void forEachIncoming(int node, EdgeVisitor visitor) {
+            for (int from = 0; from < edges.size(); from++) {
+                for (int[] edge : edges.get(from)) {
+                    if (edge[0] == node) {
+                        visitor.visit(from, edge[1]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,15 +2,21 @@ package uphill.backend.challenge.handlers;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import uphill.backend.challenge.metrics.CommandType;
+import uphill.backend.challenge.metrics.ServerMetrics;
+import uphill.backend.challenge.model.Batch;
 import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
 import uphill.backend.challenge.model.Session;
 
 import java.io.PrintWriter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -34,94 +40,213 @@ class CommandHandlerTest {
 
     @Test
     void handleCloserThanCommand() {
-        String[] parts = {"", "", "5", "sourceNode"};
-        CommandHandler.handleCloserThanCommand(session, parts, graph);
+        CommandLine command = new CommandLine().reset("CLOSER THAN 5 sourceNode");
+        CommandHandler.handleCloserThanCommand(session, command, graph);
         verify(graph).findNodesCloserThan(5, "sourceNode", session);
 
         // Invalid action
-        parts = new String[]{"UNKNOWN"};
-        CommandHandler.handleShortestPathCommand(session, parts, graph);
+        command.reset("UNKNOWN");
+        CommandHandler.handleShortestPathCommand(session, command, graph);
         verify(session).send(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
     }
 
     @Test
     void handleShortestPathCommand() {
-        String[] parts = {"", "", "sourceNode", "destinationNode"};
-        CommandHandler.handleShortestPathCommand(session, parts, graph);
+        CommandLine command = new CommandLine().reset("SHORTEST PATH sourceNode destinationNode");
+        CommandHandler.handleShortestPathCommand(session, command, graph);
         verify(graph).shortestPath("sourceNode", "destinationNode", session);
 
         // Invalid action
-        parts = new String[]{"UNKNOWN"};
-        CommandHandler.handleShortestPathCommand(session, parts, graph);
+        command.reset("UNKNOWN");
+        CommandHandler.handleShortestPathCommand(session, command, graph);
         verify(session).send(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
     }
 
+    @Test
+    void handleShortestRouteCommands() {
+        CommandLine command = new CommandLine().reset("SHORTEST ROUTE sourceNode destinationNode");
+        CommandHandler.handleShortestPathCommand(session, command, graph);
+        verify(graph).shortestRoute("sourceNode", "destinationNode", session);
+
+        command.reset("SHORTEST ROUTES 3 sourceNode destinationNode");
+        CommandHandler.handleShortestPathCommand(session, command, graph);
+        verify(graph).shortestRoutes(3, "sourceNode", "destinationNode", session);
+
+        CommandHandler.handleShortestPathCommand(session, command.reset("SHORTEST ROUTES sourceNode destinationNode"), graph);
+        CommandHandler.handleShortestPathCommand(session, command.reset("SHORTEST ROUTES 0 sourceNode destinationNode"), graph);
+        CommandHandler.handleShortestPathCommand(session,
+                command.reset("SHORTEST ROUTES " + (Graph.MAX_ROUTES + 1) + " sourceNode destinationNode"), graph);
+        verify(session, times(3)).send(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        verifyNoMoreInteractions(graph);
+    }
+
     @Test
     void handleRemoveCommand() {
-        String[] parts = {"", "NODE", "nodeName"};
-        CommandHandler.handleRemoveCommand(session, parts, graph);
+        CommandLine command = new CommandLine().reset("REMOVE NODE nodeName");
+        CommandHandler.handleRemoveCommand(session, command, graph);
         verify(graph).removeNode("nodeName", session);
 
-        parts = new String[]{"", "EDGE", "sourceNode", "destinationNode"};
-        CommandHandler.handleRemoveCommand(session, parts, graph);
+        command.reset("REMOVE EDGE sourceNode destinationNode");
+        CommandHandler.handleRemoveCommand(session, command, graph);
         verify(graph).removeEdge("sourceNode", "destinationNode", session);
 
         // Invalid action
-        parts = new String[]{"UNKNOWN"};
-        CommandHandler.handleRemoveCommand(session, parts, graph);
+        command.reset("UNKNOWN");
+        CommandHandler.handleRemoveCommand(session, command, graph);
         verify(session).send(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
     }
 
     @Test
     void handleAddCommand() {
-        String[] parts = {"", "NODE", "nodeName"};
-        CommandHandler.handleAddCommand(session, parts, graph);
+        CommandLine command = new CommandLine().reset("ADD NODE nodeName");
+        CommandHandler.handleAddCommand(session, command, graph);
         verify(graph).addNode("nodeName", session);
 
-        parts = new String[]{"", "EDGE", "sourceNode", "destinationNode", "5"};
-        CommandHandler.handleAddCommand(session, parts, graph);
+        command.reset("ADD EDGE sourceNode destinationNode 5");
+        CommandHandler.handleAddCommand(session, command, graph);
         verify(graph).addEdge("sourceNode", "destinationNode", 5, session);
 
         // Invalid action
-        parts = new String[]{"UNKNOWN"};
-        CommandHandler.handleAddCommand(session, parts, graph);
+        command.reset("UNKNOWN");
+        CommandHandler.handleAddCommand(session, command, graph);
         verify(session).send(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
     }
 
+    @Test
+    void incompleteOrMalformedCommandsAreNotUnderstood() {
+        CommandLine command = new CommandLine();
+        CommandHandler.handleAddCommand(session, command.reset("ADD EDGE sourceNode destinationNode"), graph);
+        CommandHandler.handleAddCommand(session, command.reset("ADD EDGE sourceNode destinationNode five"), graph);
+        CommandHandler.handleAddCommand(session, command.reset("ADD NODE"), graph);
+        CommandHandler.handleRemoveCommand(session, command.reset("REMOVE EDGE sourceNode"), graph);
+        CommandHandler.handleShortestPathCommand(session, command.reset("SHORTEST PATH sourceNode"), graph);
+        CommandHandler.handleCloserThanCommand(session, command.reset("CLOSER THAN 99999999999 sourceNode"), graph);
+        verify(session, times(6)).send(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        verifyNoInteractions(graph);
+    }
+
+    @Test
+    void batchQueuesMutationsUntilCommit() {
+        Session session = new Session(UUID.randomUUID(), out, 0);
+        CommandLine command = new CommandLine();
+        CommandHandler.handleCommitCommand(session, command.reset("COMMIT"), graph);
+        verify(out).println(CommandHandler.ERROR_NO_BATCH_STARTED);
+
+        CommandHandler.handleBeginCommand(session, command.reset("BEGIN"));
+        verify(out).println(CommandHandler.BATCH_STARTED);
+        CommandHandler.handleBeginCommand(session, command.reset("BEGIN"));
+        verify(out).println(CommandHandler.ERROR_BATCH_ALREADY_STARTED);
+
+        CommandHandler.handleAddCommand(session, command.reset("ADD NODE A"), graph);
+        CommandHandler.handleAddCommand(session, command.reset("ADD EDGE A A 1"), graph);
+        CommandHandler.handleRemoveCommand(session, command.reset("REMOVE EDGE A A"), graph);
+        verifyNoInteractions(graph);
+        Batch batch = session.getBatch();
+        assertEquals(3, batch.size());
+
+        CommandHandler.handleCommitCommand(session, command.reset("COMMIT"), graph);
+        verify(graph).commit(batch, session);
+        assertNull(session.getBatch());
+
+        CommandHandler.handleBeginCommand(session, command.reset("BEGIN"));
+        CommandHandler.handleRollbackCommand(session, command.reset("ROLLBACK"));
+        verify(out).println(CommandHandler.BATCH_DISCARDED);
+        assertNull(session.getBatch());
+    }
+
     @Test
     void handleHiCommand() {
-        String[] parts = {"HI", "I", "AM", "Cesar"};
+        CommandLine command = new CommandLine().reset("HI, I AM Cesar");
         Map<UUID, Session> sessions = new HashMap<>();
         UUID sessionId = UUID.randomUUID();
         Session session = new Session(sessionId, out, 0);
         sessions.put(sessionId, session);
 
-        CommandHandler.handleHiCommand(session, parts, sessions);
+        CommandHandler.handleHiCommand(session, command, sessions);
         verify(out).println("HI Cesar");
         verifyNoMoreInteractions(out);
 
         // Invalid command
-        parts = new String[]{"UNKNOWN"};
-        CommandHandler.handleHiCommand(session, parts, sessions);
+        command.reset("UNKNOWN");
+        CommandHandler.handleHiCommand(session, command, sessions);
         verify(out).println(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
         verifyNoMoreInteractions(out);
     }
 
     @Test
     void handleByeCommand() {
-        String[] parts = {"BYE", "MATE!"};
+        CommandLine command = new CommandLine().reset("BYE MATE!");
         Map<UUID, Session> sessions = new HashMap<>();
         UUID sessionId = UUID.randomUUID();
         Session session = new Session(sessionId, out, 0);
         sessions.put(sessionId, session);
-        CommandHandler.handleByeCommand(session, parts, new HashMap<>());
+        CommandHandler.handleByeCommand(session, command, new HashMap<>());
         verify(out).println(anyString());
         verifyNoMoreInteractions(out);
 
         // Invalid command
-        parts = new String[]{"UNKNOWN"};
-        CommandHandler.handleByeCommand(session, parts, sessions);
+        command.reset("UNKNOWN");
+        CommandHandler.handleByeCommand(session, command, sessions);
         verify(out).println(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
         verifyNoMoreInteractions(out);
     }
-}
\ No newline at end of file
+
+    @Test
+    void statsReportsCommandTimingsAndCounters() {
+        CommandDispatcher dispatcher = new CommandDispatcher(new Graph());
+        Session session = new Session(UUID.randomUUID(), out, 0);
+        dispatcher.register(session);
+        dispatcher.dispatch(session, "ADD NODE A");
+        dispatcher.dispatch(session, "ADD NODE B");
+        dispatcher.dispatch(session, "SHORTEST PATH A B");
+        dispatcher.dispatch(session, "STATS PLEASE");
+        ServerMetrics metrics = dispatcher.getMetrics();
+        assertEquals(2, metrics.getParseTimes(CommandType.ADD).getCount());
+        assertEquals(2, metrics.getLockWaitTimes(CommandType.ADD).getCount());
+        assertEquals(1, metrics.getComputeTimes(CommandType.SHORTEST).getCount());
+        assertEquals(1, metrics.getWriteTimes(CommandType.STATS).getCount());
+        verify(out).println(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
+
+        dispatcher.dispatch(session, "STATS");
+        ArgumentCaptor<String> replies = ArgumentCaptor.forClass(String.class);
+        verify(out, atLeastOnce()).println(replies.capture());
+        List<String> lines = replies.getAllValues();
+        int first = lines.indexOf(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT) + 1;
+        assertTrue(lines.get(first).startsWith("SESSIONS active=1 timeouts=0 "));
+        assertTrue(lines.get(first + 1).startsWith("LOCK acquired=2 wait_p50_us="));
+        assertTrue(lines.get(first + 2).startsWith("COMMAND ADD count=2 parse_p50_us="));
+        assertTrue(lines.get(first + 3).startsWith("COMMAND SHORTEST count=1 "));
+        assertTrue(lines.get(first + 4).startsWith("COMMAND STATS count=1 "));
+        assertEquals(ServerMetrics.END, lines.get(lines.size() - 1));
+    }
+
+    @Test
+    void useSwitchesBetweenIndependentGraphs() {
+        // Shards are explicit, so mutations are handed over even on a single core
+        GraphRegistry graphs = new GraphRegistry(new Graph(), name -> new Graph(), 2);
+        CommandDispatcher dispatcher = new CommandDispatcher(graphs, new ServerMetrics());
+        Session session = new Session(UUID.randomUUID(), out, 0);
+        dispatcher.register(session);
+        dispatcher.dispatch(session, "ADD NODE A");
+        dispatcher.dispatch(session, "USE customer-1");
+        verify(out).println(CommandHandler.USING_GRAPH + "customer-1");
+        dispatcher.dispatch(session, "SHORTEST PATH A A");
+        verify(out).println(Graph.ERROR_NODE_NOT_FOUND);
+        dispatcher.dispatch(session, "ADD NODE A");
+        verify(out, times(2)).println(Graph.NODE_ADDED);
+
+        dispatcher.dispatch(session, "BEGIN");
+        dispatcher.dispatch(session, "USE default");
+        verify(out).println(CommandHandler.ERROR_BATCH_IN_PROGRESS);
+        dispatcher.dispatch(session, "ROLLBACK");
+        dispatcher.dispatch(session, "USE default");
+        dispatcher.dispatch(session, "SHORTEST PATH A A");
+        verify(out).println("0");
+
+        dispatcher.dispatch(session, "USE bad/name");
+        dispatcher.dispatch(session, "USE");
+        verify(out, times(2)).println(CommandHandler.SORRY_I_DID_NOT_UNDERSTAND_THAT);
+        assertEquals("default", session.getGraphName());
+        graphs.close();
+    }
+}
@@ -0,0 +1,131 @@
+package uphill.backend.challenge.handlers;
+
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class CommandLineTest {
+
+    @Test
+    void tokenizesInPlace() {
+        CommandLine command = new CommandLine().reset("  ADD EDGE  A B -12 ");
+        assertEquals(5, command.tokenCount());
+        assertTrue(command.keywordEquals("ADD"));
+        assertTrue(command.tokenEquals(1, "EDGE"));
+        assertFalse(command.tokenEquals(1, "EDG"));
+        assertEquals("A", command.stringToken(2));
+        assertTrue(command.isInt(4));
+        assertEquals(-12, command.intToken(4));
+        assertFalse(command.isInt(3));
+        assertFalse(command.tokenEquals(5, "B"));
+    }
+
+    @Test
+    void keywordIgnoresCommas() {
+        CommandLine command = new CommandLine().reset("HI, I AM Cesar");
+        assertTrue(command.keywordEquals("HI"));
+        assertFalse(command.keywordEquals("H"));
+        assertFalse(new CommandLine().reset("").keywordEquals("HI"));
+    }
+
+    @Test
+    void parsesIntegersAtTheirLimits() {
+        CommandLine command = new CommandLine().reset("2147483647 -2147483648 2147483648 - +7");
+        assertEquals(Integer.MAX_VALUE, command.intToken(0));
+        assertEquals(Integer.MIN_VALUE, command.intToken(1));
+        assertFalse(command.isInt(2));
+        assertFalse(command.isInt(3));
+        assertEquals(7, command.intToken(4));
+    }
+
+    @Test
+    void reusesNameStringsOfRecentTokens() {
+        CommandLine command = new CommandLine();
+        String first = command.reset("SHORTEST PATH Lisbon Porto").stringToken(2);
+        String second = command.reset(new StringBuilder("CLOSER THAN 5 Lisbon")).stringToken(3);
+        assertSame(first, second);
+    }
+
+    @Test
+    void dispatchDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean, "needs thread allocation counters");
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+
+        RecordingGraph graph = new RecordingGraph();
+        CommandDispatcher dispatcher = new CommandDispatcher(graph);
+        Session session = new Session(UUID.randomUUID(), new PrintWriter(Writer.nullWriter()), 0);
+        CommandLine command = new CommandLine();
+        StringBuilder[] lines = {
+                new StringBuilder("ADD NODE Lisbon"),
+                new StringBuilder("ADD EDGE Lisbon Porto 313"),
+                new StringBuilder("REMOVE EDGE Lisbon Porto"),
+                new StringBuilder("REMOVE NODE Porto"),
+                new StringBuilder("SHORTEST PATH Lisbon Porto"),
+                new StringBuilder("CLOSER THAN 400 Lisbon"),
+        };
+        for (int i = 0; i < 100_000; i++) {
+            dispatcher.dispatch(session, command, lines[i % lines.length]);
+        }
+
+        int commands = 60_000;
+        long before = allocations.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < commands; i++) {
+            dispatcher.dispatch(session, command, lines[i % lines.length]);
+        }
+        long allocated = allocations.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(160_000, graph.calls);
+        assertTrue(allocated < commands, "allocated " + allocated + " bytes for " + commands + " commands");
+    }
+
+    // Counts calls without doing any graph work, so only parsing and dispatch are measured
+    static class RecordingGraph extends Graph {
+
+        int calls;
+        long checksum;
+
+        @Override
+        public void addNode(String nodeName, Session session) {
+            record(nodeName.length());
+        }
+
+        @Override
+        public void addEdge(String sourceNodeName, String destinationNodeName, int weight, Session session) {
+            record(weight);
+        }
+
+        @Override
+        public void removeNode(String nodeName, Session session) {
+            record(nodeName.length());
+        }
+
+        @Override
+        public void removeEdge(String sourceNodeName, String destinationNodeName, Session session) {
+            record(destinationNodeName.length());
+        }
+
+        @Override
+        public void shortestPath(String sourceNodeName, String destinationNodeName, Session session) {
+            record(sourceNodeName.length());
+        }
+
+        @Override
+        public void findNodesCloserThan(int weight, String sourceNodeName, Session session) {
+            record(weight);
+        }
+
+        private void record(int value) {
+            calls++;
+            checksum += value;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package uphill.backend.challenge.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbedInputStreamTest {
+
+    @Test
+    void probeDetectsClosedClientAndKeepsItsInput() throws IOException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            // Closed halfway through, so not a resource of the try
+            Socket client = new Socket("localhost", server.getLocalPort());
+            try (Socket accepted = server.accept()) {
+                ProbedInputStream input = new ProbedInputStream(accepted);
+                assertFalse(input.isDisconnected());
+
+                OutputStream out = client.getOutputStream();
+                out.write("SHORTEST PATH A B\n".getBytes(StandardCharsets.UTF_8));
+                client.close();
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (!input.isDisconnected()) {
+                    assertTrue(System.currentTimeMillis() < deadline, "Close not detected");
+                }
+
+                byte[] read = new byte[64];
+                int length = input.read(read, 0, read.length);
+                assertEquals("SHORTEST PATH A B\n", new String(read, 0, length, StandardCharsets.UTF_8));
+                assertEquals(-1, input.read());
+            } finally {
+                client.close();
+            }
+        }
+    }
+}
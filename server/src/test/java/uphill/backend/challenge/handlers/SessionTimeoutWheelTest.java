@@ -0,0 +1,52 @@
+package uphill.backend.challenge.handlers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTimeoutWheelTest {
+
+    SessionTimeoutWheel wheel = new SessionTimeoutWheel(200, 10, 8);
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    void expiresIdleSessions() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        wheel.register(expired::countDown);
+
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    }
+
+    @Test
+    void touchedSessionsStayOpen() throws InterruptedException {
+        AtomicInteger expirations = new AtomicInteger();
+        SessionTimeoutWheel.Timeout timeout = wheel.register(expirations::incrementAndGet);
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(50);
+            timeout.touch();
+        }
+        assertEquals(0, expirations.get());
+
+        Thread.sleep(400);
+        assertEquals(1, expirations.get());
+    }
+
+    @Test
+    void cancelledSessionsNeverExpire() throws InterruptedException {
+        AtomicInteger expirations = new AtomicInteger();
+        wheel.register(expirations::incrementAndGet).cancel();
+        Thread.sleep(400);
+        assertEquals(0, expirations.get());
+    }
+}
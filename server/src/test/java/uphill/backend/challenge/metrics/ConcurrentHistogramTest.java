@@ -0,0 +1,78 @@
+package uphill.backend.challenge.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentHistogramTest {
+
+    @Test
+    void quantilesStayWithinBucketPrecision() {
+        Random random = new Random(11);
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        long[] values = new long[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10_000_000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        for (double quantile : new double[]{0.5, 0.99, 0.999}) {
+            long expected = values[(int) Math.ceil(quantile * values.length) - 1];
+            long actual = histogram.valueAtQuantile(quantile);
+            assertTrue(actual >= expected && actual - expected <= expected / ConcurrentHistogram.SUB_BUCKETS,
+                    quantile + ": " + expected + " vs " + actual);
+        }
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws InterruptedException {
+        ConcurrentHistogram histogram = new ConcurrentHistogram();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long offset = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i + offset);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(200_000, histogram.getCount());
+        assertEquals(50_002, histogram.getMax());
+    }
+
+    @Test
+    void lockTimesRecordWaitAndHold() throws InterruptedException {
+        LockTimes times = new LockTimes();
+        long requested = System.nanoTime();
+        Thread.sleep(50);
+        long acquired = times.acquired(requested);
+        Thread.sleep(50);
+        times.released(acquired);
+
+        assertEquals(1, times.getWaitTimes().getCount());
+        assertEquals(1, times.getHoldTimes().getCount());
+        assertTrue(times.getWaitTimes().getMax() >= 40_000_000, String.valueOf(times.getWaitTimes().getMax()));
+        assertTrue(times.getHoldTimes().getMax() >= 40_000_000);
+    }
+}
@@ -0,0 +1,150 @@
+package uphill.backend.challenge.model;
+
+import org.junit.jupiter.api.Test;
+import uphill.backend.challenge.engine.OutgoingAdjacency;
+import uphill.backend.challenge.engine.CsrGraph;
+import uphill.backend.challenge.engine.EdgeVisitor;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgeStoreTest {
+
+    @Test
+    void arraysMatchObjectsUnderRandomMutations() {
+        Random random = new Random(9);
+        int loaded = 50;
+        CsrGraph base = randomBase(loaded, 200, random);
+        EdgeStore expected = StorageBackend.OBJECTS.createEdgeStore();
+        EdgeStore actual = StorageBackend.ARRAYS.createEdgeStore();
+        expected.load(base);
+        actual.load(base);
+        List<Integer> alive = new ArrayList<>();
+        List<Integer> free = new ArrayList<>();
+        for (int node = 0; node < loaded; node++) {
+            alive.add(node);
+        }
+        int capacity = loaded;
+        for (int i = 0; i < 5000; i++) {
+            int operation = random.nextInt(20);
+            if (operation == 0 || alive.isEmpty()) {
+                int id = free.isEmpty() ? capacity++ : free.remove(free.size() - 1);
+                expected.addNode(id);
+                actual.addNode(id);
+                alive.add(id);
+            } else if (operation == 1) {
+                Integer id = alive.remove(random.nextInt(alive.size()));
+                assertEquals(removed(visitor -> expected.removeNode(id, visitor)),
+                        removed(visitor -> actual.removeNode(id, visitor)));
+                free.add(id);
+            } else if (operation == 2) {
+                actual.compact();
+            } else {
+                int from = alive.get(random.nextInt(alive.size()));
+                int to = alive.get(random.nextInt(alive.size()));
+                if (operation < 12) {
+                    int weight = random.nextInt(4) - 1;
+                    assertEquals(expected.addEdge(from, to, weight), actual.addEdge(from, to, weight));
+                } else {
+                    assertEquals(removed(visitor -> expected.removeEdges(from, to, visitor)),
+                            removed(visitor -> actual.removeEdges(from, to, visitor)));
+                }
+            }
+        }
+        for (int node : alive) {
+            assertEquals(pairs(expected.outgoingRow(node)), pairs(actual.outgoingRow(node)));
+            assertEquals(pairs(expected.incomingRow(node)), pairs(actual.incomingRow(node)));
+        }
+    }
+
+    @Test
+    void arraysTakeAFractionOfTheHeapPerEdge() {
+        int nodes = 50_000;
+        int edgesPerNode = 8;
+        double objects = bytesPerEdge(StorageBackend.OBJECTS, nodes, edgesPerNode);
+        double arrays = bytesPerEdge(StorageBackend.ARRAYS, nodes, edgesPerNode);
+        // Measured on a 64-bit JVM with compressed references: about 126 bytes against 23
+        String numbers = "objects " + Math.round(objects) + " B/edge, arrays " + Math.round(arrays) + " B/edge";
+        assertTrue(arrays < 40, numbers);
+        assertTrue(objects > 3 * arrays, numbers);
+    }
+
+    private static double bytesPerEdge(StorageBackend backend, int nodes, int edgesPerNode) {
+        Random random = new Random(1);
+        long before = usedHeap();
+        EdgeStore store = backend.createEdgeStore();
+        for (int node = 0; node < nodes; node++) {
+            store.addNode(node);
+        }
+        int edges = 0;
+        for (int node = 0; node < nodes; node++) {
+            for (int i = 0; i < edgesPerNode; i++) {
+                if (store.addEdge(node, random.nextInt(nodes), 1 + random.nextInt(100))) {
+                    edges++;
+                }
+            }
+        }
+        store.compact();
+        long after = usedHeap();
+        Reference.reachabilityFence(store);
+        return (after - before) / (double) edges;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collections may leave garbage behind, the lowest reading is the closest to what is live
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static CsrGraph randomBase(int nodes, int edges, Random random) {
+        List<List<int[]>> rows = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            rows.add(new ArrayList<>());
+        }
+        for (int i = 0; i < edges; i++) {
+            int[] edge = {random.nextInt(nodes), random.nextInt(10)};
+            // Stores never hold the same edge twice
+            if (rows.get(i % nodes).stream().noneMatch(other -> Arrays.equals(other, edge))) {
+                rows.get(i % nodes).add(edge);
+            }
+        }
+        return CsrGraph.copyOf(new OutgoingAdjacency() {
+            @Override
+            public int capacity() {
+                return nodes;
+            }
+
+            @Override
+            public void forEachOutgoing(int node, EdgeVisitor visitor) {
+                rows.get(node).forEach(edge -> visitor.visit(edge[0], edge[1]));
+            }
+        });
+    }
+
+    private static List<String> removed(Consumer<EdgeVisitor> removal) {
+        List<String> visited = new ArrayList<>();
+        removal.accept((node, weight) -> visited.add(node + ":" + weight));
+        visited.sort(null);
+        return visited;
+    }
+
+    private static List<String> pairs(int[] row) {
+        List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < row.length; i += 2) {
+            pairs.add(row[i] + ":" + row[i + 1]);
+        }
+        pairs.sort(null);
+        return pairs;
+    }
+}
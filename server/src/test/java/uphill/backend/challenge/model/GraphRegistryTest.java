@@ -0,0 +1,132 @@
+package uphill.backend.challenge.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphRegistryTest {
+
+    @Test
+    void graphsAreCreatedOnceAndSpreadOverShards() throws IOException {
+        List<String> created = new ArrayList<>();
+        Graph defaultGraph = new Graph();
+        try (GraphRegistry graphs = new GraphRegistry(defaultGraph, name -> {
+            created.add(name);
+            return new Graph();
+        }, 2)) {
+            assertSame(defaultGraph, graphs.get(GraphRegistry.DEFAULT_GRAPH).getGraph());
+            GraphRegistry.Entry first = graphs.getOrCreate("first");
+            GraphRegistry.Entry second = graphs.getOrCreate("second");
+            assertSame(first, graphs.getOrCreate("first"));
+            assertEquals(List.of("first", "second"), created);
+
+            // The default graph mutates on session threads, named ones round robin over the shards
+            assertNull(graphs.get(GraphRegistry.DEFAULT_GRAPH).getShard());
+            assertNotNull(first.getShard());
+            assertNotNull(second.getShard());
+            assertNotSame(first.getShard(), second.getShard());
+            assertThrows(IllegalArgumentException.class, () -> graphs.getOrCreate("../escape"));
+            assertNull(graphs.get("third"));
+        }
+    }
+
+    @Test
+    void shardRunsTasksOneAtATimeOnItsThread() throws InterruptedException {
+        GraphShard shard = new GraphShard(0);
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        int[] counter = new int[1];
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            submitters.add(new Thread(() -> {
+                GraphShard.Task task = new GraphShard.Task() {
+                    @Override
+                    public void run() {
+                        threadNames.add(Thread.currentThread().getName());
+                        // Not atomic, only correct because the shard runs one task at a time
+                        counter[0]++;
+                    }
+                };
+                for (int i = 0; i < 10_000; i++) {
+                    shard.run(task);
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        assertEquals(40_000, counter[0]);
+        assertEquals(Set.of("graph-shard-0"), threadNames);
+
+        GraphShard.Task failing = new GraphShard.Task() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failed on the shard");
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> shard.run(failing));
+        shard.close();
+    }
+
+    @Test
+    void closingAShardFailsTheTasksStillQueued() throws InterruptedException {
+        GraphShard shard = new GraphShard(0);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread blocker = new Thread(() -> shard.run(new GraphShard.Task() {
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Closing interrupts the running task, it still finishes normally
+                }
+            }
+        }));
+        blocker.start();
+        running.await();
+
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiters.add(new Thread(() -> {
+                try {
+                    shard.run(new GraphShard.Task() {
+                        @Override
+                        public void run() {
+                        }
+                    });
+                } catch (IllegalStateException e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        waiters.forEach(Thread::start);
+        while (waiters.stream().anyMatch(waiter -> waiter.getState() != Thread.State.WAITING)) {
+            Thread.sleep(10);
+        }
+        shard.close();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            blocker.join();
+            for (Thread waiter : waiters) {
+                waiter.join();
+            }
+        });
+        assertEquals(3, failures.size());
+        assertThrows(IllegalStateException.class, () -> shard.run(new GraphShard.Task() {
+            @Override
+            public void run() {
+            }
+        }));
+    }
+}
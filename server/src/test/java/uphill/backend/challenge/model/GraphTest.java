@@ -8,6 +8,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.verify;
 
@@ -104,4 +110,360 @@ class GraphTest {
         graph.findNodesCloserThan(10, "C", session);
         verify(session).send(Graph.ERROR_NODE_NOT_FOUND);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shortestPathAcrossSeveralHops() {
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addNode("D", session);
+        graph.addEdge("A", "B", 1, session);
+        graph.addEdge("B", "C", 2, session);
+        graph.addEdge("A", "C", 7, session);
+        graph.shortestPath("A", "C", session);
+        verify(session).send("3");
+
+        // Unreachable node
+        graph.shortestPath("A", "D", session);
+        verify(session).send(String.valueOf(Integer.MAX_VALUE));
+
+        graph.findNodesCloserThan(4, "A", session);
+        verify(session).send("B,C");
+    }
+
+    @Test
+    void removeNodeDropsIncomingEdges() {
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addEdge("A", "B", 5, session);
+        graph.removeNode("B", session);
+        graph.addNode("B", session);
+        graph.shortestPath("A", "B", session);
+        verify(session).send(String.valueOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void cachedRepliesAreInvalidatedByMutations() {
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addEdge("A", "B", 5, session);
+        graph.shortestPath("A", "B", session);
+        graph.shortestPath("A", "B", session);
+        verify(session, Mockito.times(2)).send("5");
+        assertEquals(1, graph.getQueryCache().getHits());
+        assertEquals(1, graph.getQueryCache().getMisses());
+
+        graph.addEdge("A", "B", 2, session);
+        graph.shortestPath("A", "B", session);
+        verify(session).send("2");
+        assertEquals(2, graph.getQueryCache().getMisses());
+
+        graph.findNodesCloserThan(3, "A", session);
+        graph.findNodesCloserThan(3, "A", session);
+        verify(session, Mockito.times(2)).send("B");
+        assertEquals(2, graph.getQueryCache().getHits());
+    }
+
+    @Test
+    void shortestRoutesListNodesOfEachAlternative() {
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addNode("D", session);
+        graph.addEdge("A", "B", 1, session);
+        graph.addEdge("B", "C", 2, session);
+        graph.addEdge("A", "C", 7, session);
+        graph.shortestRoute("A", "C", session);
+        verify(session).send("3 A,B,C");
+        graph.shortestRoute("A", "A", session);
+        verify(session).send("0 A");
+        graph.shortestRoute("A", "D", session);
+        verify(session).send(String.valueOf(Integer.MAX_VALUE));
+
+        String separator = System.lineSeparator();
+        graph.shortestRoutes(5, "A", "C", session);
+        verify(session).send("3 A,B,C" + separator + "7 A,C" + separator + Graph.END_OF_ROUTES);
+        graph.shortestRoutes(5, "A", "D", session);
+        verify(session).send(Graph.END_OF_ROUTES);
+
+        // Answers follow mutations
+        graph.removeEdge("B", "C", session);
+        graph.shortestRoutes(5, "A", "C", session);
+        verify(session).send("7 A,C" + separator + Graph.END_OF_ROUTES);
+        graph.shortestRoutes(5, "A", "X", session);
+        verify(session).send(Graph.ERROR_NODE_NOT_FOUND);
+    }
+
+    @Test
+    void shortestPathUsesLandmarksOnlyForTheirVersion() {
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addEdge("A", "B", 4, session);
+        graph.addEdge("B", "C", 4, session);
+        graph.rebuildLandmarks();
+        graph.shortestPath("A", "C", session);
+        verify(session).send("8");
+
+        // Landmarks are stale after this edge, the shorter path must still be found
+        graph.addEdge("A", "C", 3, session);
+        graph.shortestPath("A", "C", session);
+        verify(session).send("3");
+    }
+
+    @Test
+    void shortestPathUsesContractionHierarchyOnlyForItsVersion() {
+        graph.setContractionHierarchy(true);
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addEdge("A", "B", 4, session);
+        graph.addEdge("B", "C", 4, session);
+        graph.rebuildContractionHierarchy();
+        graph.shortestPath("A", "C", session);
+        verify(session).send("8");
+
+        // The hierarchy is stale after this edge, the shorter path must still be found
+        graph.addEdge("A", "C", 3, session);
+        graph.shortestPath("A", "C", session);
+        verify(session).send("3");
+
+        // Rebuilt in the old order with the new node contracted first
+        graph.addNode("D", session);
+        graph.addEdge("C", "D", 2, session);
+        graph.rebuildContractionHierarchy();
+        graph.shortestPath("A", "D", session);
+        verify(session).send("5");
+    }
+
+    @Test
+    void commitAppliesWholeBatchAsOneVersion() {
+        graph.addNode("A", session);
+        Batch batch = new Batch();
+        batch.addNode("B");
+        batch.addNode("C");
+        batch.addEdge("A", "B", 1);
+        batch.addEdge("B", "C", 2);
+        batch.removeNode("C");
+        batch.addNode("C");
+        batch.addEdge("A", "C", 7);
+        graph.commit(batch, session);
+        verify(session).send(Graph.BATCH_COMMITTED + 7);
+
+        graph.shortestPath("A", "C", session);
+        verify(session).send("7");
+    }
+
+    @Test
+    void failedCommitAppliesNothing() {
+        graph.addNode("A", session);
+        Batch batch = new Batch();
+        batch.addNode("B");
+        batch.addEdge("A", "B", 1);
+        batch.removeNode("B");
+        batch.addEdge("A", "B", 1);
+        graph.commit(batch, session);
+        verify(session).send(Graph.ERROR_NODE_NOT_FOUND + Graph.AT_BATCH_COMMAND + 4);
+
+        // B was never added, so adding it now succeeds
+        graph.addNode("B", session);
+        verify(session, Mockito.times(2)).send(Graph.NODE_ADDED);
+        graph.shortestPath("A", "B", session);
+        verify(session).send(String.valueOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void hotCloserThanSourceFollowsEdgeChanges() {
+        graph = new Graph(0, 0, 1);
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addEdge("A", "B", 1, session);
+        graph.addEdge("B", "C", 1, session);
+        for (int i = 0; i < HotSources.PROMOTION_THRESHOLD; i++) {
+            graph.findNodesCloserThan(3, "A", session);
+        }
+        verify(session, Mockito.times(HotSources.PROMOTION_THRESHOLD)).send("B,C");
+
+        graph.removeEdge("B", "C", session);
+        graph.findNodesCloserThan(3, "A", session);
+        verify(session).send("B");
+
+        graph.addEdge("A", "C", 2, session);
+        graph.findNodesCloserThan(3, "A", session);
+        verify(session, Mockito.times(HotSources.PROMOTION_THRESHOLD + 1)).send("B,C");
+
+        graph.removeNode("B", session);
+        graph.addNode("D", session);
+        graph.addEdge("A", "D", 1, session);
+        graph.findNodesCloserThan(3, "A", session);
+        verify(session).send("C,D");
+    }
+
+    @Test
+    void parallelCloserThanMatchesSequentialSearch() {
+        Graph parallel = new Graph(0, 0, 0);
+        parallel.setParallelSearchNodes(1);
+        Graph sequential = new Graph(0, 0, 0);
+        sequential.setParallelSearchNodes(0);
+        Random random = new Random(5);
+        Batch batch = new Batch();
+        for (int i = 0; i < 3000; i++) {
+            batch.addNode("N" + i);
+        }
+        for (int i = 0; i < 15000; i++) {
+            batch.addEdge("N" + random.nextInt(3000), "N" + random.nextInt(3000), random.nextInt(50));
+        }
+        parallel.commit(batch, session);
+        sequential.commit(batch, session);
+
+        Session expected = Mockito.mock(Session.class);
+        Session actual = Mockito.mock(Session.class);
+        for (int i = 0; i < 30; i++) {
+            String source = "N" + random.nextInt(3000);
+            int weight = random.nextInt(200);
+            sequential.findNodesCloserThan(weight, source, expected);
+            parallel.findNodesCloserThan(weight, source, actual);
+        }
+        var expectedReplies = Mockito.mockingDetails(expected).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("send"))
+                .map(invocation -> invocation.getArgument(0)).toArray();
+        var actualReplies = Mockito.mockingDetails(actual).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("send"))
+                .map(invocation -> invocation.getArgument(0)).toArray();
+        assertArrayEquals(expectedReplies, actualReplies);
+    }
+
+    @Test
+    void queriesOverBudgetReplyWithError() {
+        graph.setQueryBudget(2, 0);
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addNode("D", session);
+        graph.addEdge("A", "B", 1, session);
+        graph.addEdge("B", "C", 1, session);
+        graph.addEdge("C", "D", 1, session);
+
+        graph.shortestPath("A", "D", session);
+        graph.findNodesCloserThan(10, "A", session);
+        verify(session, Mockito.times(2)).send(Graph.ERROR_QUERY_BUDGET_EXCEEDED);
+
+        // Within budget the same queries are answered
+        graph.shortestPath("A", "B", session);
+        verify(session).send("1");
+    }
+
+    @Test
+    void queriesReadConsistentSnapshotsWhileMutating() throws InterruptedException {
+        graph.addNode("A", session);
+        graph.addNode("B", session);
+        graph.addNode("C", session);
+        graph.addEdge("A", "B", 1, session);
+        graph.addEdge("B", "C", 1, session);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                // Every intermediate state keeps some path from A to C
+                graph.addEdge("A", "C", 2, session);
+                graph.removeEdge("B", "C", session);
+                graph.addEdge("B", "C", 1, session);
+                graph.removeEdge("A", "C", session);
+            }
+        });
+        writer.start();
+        Session reader = Mockito.mock(Session.class);
+        while (writer.isAlive()) {
+            graph.shortestPath("A", "C", reader);
+        }
+        writer.join();
+        Mockito.verify(reader, Mockito.never()).send(String.valueOf(Integer.MAX_VALUE));
+        Mockito.verify(reader, Mockito.never()).send(Graph.ERROR_NODE_NOT_FOUND);
+    }
+
+    @Test
+    void concurrentMutationsNeitherDeadlockNorLoseUpdates() {
+        int nodes = 32;
+        int writers = 8;
+        for (int i = 0; i < nodes; i++) {
+            graph.addNode("N" + i, session);
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < writers; t++) {
+                int writer = t;
+                threads.add(new Thread(() -> {
+                    Random random = new Random(writer);
+                    Session replies = Mockito.mock(Session.class);
+                    String own = "W" + writer;
+                    for (int i = 0; i < 2000; i++) {
+                        // Shared endpoints in both directions, so stripes are requested in any order
+                        String a = "N" + random.nextInt(nodes);
+                        String b = "N" + random.nextInt(nodes);
+                        switch (random.nextInt(5)) {
+                            case 0, 1 -> graph.addEdge(a, b, 1 + random.nextInt(10), replies);
+                            case 2 -> graph.removeEdge(b, a, replies);
+                            case 3 -> graph.addNode(own, replies);
+                            default -> graph.removeNode(own, replies);
+                        }
+                    }
+                    graph.addNode(own, replies);
+                    graph.addEdge("N" + writer, own, 1, replies);
+                }));
+            }
+            Thread reader = new Thread(() -> {
+                Session replies = Mockito.mock(Session.class);
+                while (threads.stream().anyMatch(Thread::isAlive)) {
+                    graph.shortestPath("N0", "N1", replies);
+                    graph.findNodesCloserThan(5, "N2", replies);
+                }
+            });
+            threads.forEach(Thread::start);
+            reader.start();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            reader.join();
+        });
+
+        // The last edge of every writer was applied and published
+        for (int t = 0; t < writers; t++) {
+            Session replies = Mockito.mock(Session.class);
+            graph.shortestPath("N" + t, "W" + t, replies);
+            verify(replies).send("1");
+        }
+    }
+
+    @Test
+    void edgeWritersOnDistinctNodesDoNotWaitForEachOther() throws InterruptedException {
+        CountDownLatch appending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MutationLog log = Mockito.mock(MutationLog.class);
+        Mockito.when(log.awaitDurable(Mockito.anyLong())).thenReturn(true);
+        Mockito.when(log.edgeAdded("A", "B", 1)).thenAnswer(invocation -> {
+            // Holds the stripes of A and B and the shared structure lock
+            appending.countDown();
+            release.await();
+            return 0L;
+        });
+        for (String name : List.of("A", "B", "C", "D")) {
+            graph.addNode(name, session);
+        }
+        graph.setMutationLog(log);
+
+        Thread slow = new Thread(() -> graph.addEdge("A", "B", 1, Mockito.mock(Session.class)));
+        slow.start();
+        appending.await();
+        Session replies = Mockito.mock(Session.class);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> graph.addEdge("C", "D", 2, replies));
+        verify(replies).send(Graph.EDGE_ADDED);
+        release.countDown();
+        slow.join();
+
+        // Both edges are published together by the next query
+        graph.shortestPath("A", "B", replies);
+        graph.shortestPath("C", "D", replies);
+        verify(replies).send("1");
+        verify(replies).send("2");
+    }
+}
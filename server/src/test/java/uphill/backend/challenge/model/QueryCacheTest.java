@@ -0,0 +1,43 @@
+package uphill.backend.challenge.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCacheTest {
+
+    @Test
+    void servesRepliesOnlyForTheirVersion() {
+        QueryCache cache = new QueryCache(10);
+        QueryCache.Key key = QueryCache.shortestPathKey("A", "B");
+        cache.put(key, 1, "5");
+
+        assertEquals("5", cache.get(QueryCache.shortestPathKey("A", "B"), 1));
+        assertNull(cache.get(key, 2));
+        assertNull(cache.get(QueryCache.closerThanKey("A", 5), 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        QueryCache cache = new QueryCache(2);
+        cache.put(QueryCache.closerThanKey("A", 1), 0, "a");
+        cache.put(QueryCache.closerThanKey("B", 1), 0, "b");
+        cache.get(QueryCache.closerThanKey("A", 1), 0);
+        cache.put(QueryCache.closerThanKey("C", 1), 0, "c");
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get(QueryCache.closerThanKey("B", 1), 0));
+        assertEquals("a", cache.get(QueryCache.closerThanKey("A", 1), 0));
+    }
+
+    @Test
+    void zeroCapacityDisablesCaching() {
+        QueryCache cache = new QueryCache(0);
+        cache.put(QueryCache.closerThanKey("A", 1), 0, "a");
+        assertNull(cache.get(QueryCache.closerThanKey("A", 1), 0));
+        assertEquals(0, cache.getSize());
+    }
+}
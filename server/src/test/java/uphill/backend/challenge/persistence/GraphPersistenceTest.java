@@ -0,0 +1,122 @@
+package uphill.backend.challenge.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.MutationLog;
+import uphill.backend.challenge.model.Session;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+
+class GraphPersistenceTest {
+
+    @TempDir
+    Path directory;
+
+    Session session = Mockito.mock(Session.class);
+
+    @Test
+    void recoversFromSnapshotAndLaterLogRecords() throws IOException {
+        Graph graph = new Graph();
+        try (GraphPersistence persistence = open(graph)) {
+            graph.addNode("A", session);
+            graph.addNode("B", session);
+            graph.addNode("C", session);
+            graph.addEdge("A", "B", 4, session);
+            // Leaves a free id inside the snapshot
+            graph.addNode("X", session);
+            graph.addEdge("X", "C", 1, session);
+            graph.removeNode("X", session);
+            persistence.snapshot();
+            graph.addEdge("B", "C", 5, session);
+        }
+        assertTrue(Files.exists(directory.resolve(SnapshotFile.FILE_NAME)));
+
+        Graph recovered = new Graph();
+        open(recovered).close();
+        // A closed log refuses mutations, the rest of the test runs in memory
+        recovered.setMutationLog(MutationLog.NONE);
+        recovered.shortestPath("A", "C", session);
+        verify(session).send("9");
+        recovered.addNode("X", session);
+        verify(session, Mockito.times(5)).send(Graph.NODE_ADDED);
+
+        // Loaded nodes take mutations like any other
+        recovered.addEdge("A", "C", 2, session);
+        recovered.removeNode("B", session);
+        recovered.shortestPath("A", "C", session);
+        verify(session).send("2");
+        recovered.removeEdge("A", "C", session);
+        recovered.shortestPath("A", "C", session);
+        verify(session).send(String.valueOf(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void snapshotMatchesGraphAfterManyMutations() throws IOException {
+        Random random = new Random(3);
+        Graph graph = new Graph();
+        try (GraphPersistence persistence = open(graph)) {
+            Batch batch = new Batch();
+            for (int i = 0; i < 2000; i++) {
+                batch.addNode("N" + i);
+            }
+            for (int i = 0; i < 20000; i++) {
+                batch.addEdge("N" + random.nextInt(2000), "N" + random.nextInt(2000), 1 + random.nextInt(100));
+            }
+            graph.commit(batch, session);
+            persistence.snapshot();
+        }
+        // Every record is covered by the snapshot, so only one log segment is left
+        try (var files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+
+        Graph recovered = new Graph();
+        open(recovered).close();
+        Session expected = Mockito.mock(Session.class);
+        Session actual = Mockito.mock(Session.class);
+        for (int i = 0; i < 50; i++) {
+            String source = "N" + random.nextInt(2000);
+            String target = "N" + random.nextInt(2000);
+            graph.shortestPath(source, target, expected);
+            recovered.shortestPath(source, target, actual);
+            graph.findNodesCloserThan(30, source, expected);
+            recovered.findNodesCloserThan(30, source, actual);
+        }
+        var expectedReplies = Mockito.mockingDetails(expected).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("send"))
+                .map(invocation -> invocation.getArgument(0)).toArray();
+        var actualReplies = Mockito.mockingDetails(actual).getInvocations().stream()
+                .filter(invocation -> invocation.getMethod().getName().equals("send"))
+                .map(invocation -> invocation.getArgument(0)).toArray();
+        assertArrayEquals(expectedReplies, actualReplies);
+    }
+
+    @Test
+    void corruptSnapshotIsRejected() throws IOException {
+        Graph graph = new Graph();
+        try (GraphPersistence persistence = open(graph)) {
+            graph.addNode("A", session);
+            persistence.snapshot();
+        }
+        Path file = directory.resolve(SnapshotFile.FILE_NAME);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(java.nio.ByteBuffer.wrap(new byte[]{9}), SnapshotFile.HEADER_SIZE + 4);
+        }
+        assertThrows(IOException.class, () -> open(new Graph()));
+    }
+
+    private GraphPersistence open(Graph graph) throws IOException {
+        return GraphPersistence.open(directory, graph, 0, WriteAheadLog.DEFAULT_SEGMENT_BYTES, 0);
+    }
+}
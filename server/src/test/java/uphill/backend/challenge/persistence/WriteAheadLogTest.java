@@ -0,0 +1,184 @@
+package uphill.backend.challenge.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.Session;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    Session session = Mockito.mock(Session.class);
+
+    @Test
+    void recoversMutationsAfterRestart() throws IOException {
+        Graph graph = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, graph)) {
+            graph.setMutationLog(log);
+            graph.addNode("A", session);
+            graph.addNode("B", session);
+            graph.addNode("C", session);
+            graph.addEdge("A", "B", 3, session);
+            graph.addEdge("B", "C", 4, session);
+            graph.addEdge("A", "C", 9, session);
+            graph.removeEdge("A", "C", session);
+            graph.addNode("D", session);
+            graph.removeNode("D", session);
+            // Failed mutations are not logged
+            graph.addNode("A", session);
+        }
+
+        Graph recovered = recover(directory);
+        recovered.shortestPath("A", "C", session);
+        verify(session).send("7");
+        recovered.addNode("D", session);
+        verify(session, Mockito.times(5)).send(Graph.NODE_ADDED);
+    }
+
+    @Test
+    void dropsTornTailAndKeepsAppending() throws IOException {
+        Graph graph = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, graph)) {
+            graph.setMutationLog(log);
+            graph.addNode("A", session);
+            graph.addNode("B", session);
+            graph.addEdge("A", "B", 3, session);
+        }
+        Path file = WriteAheadLog.segmentPath(directory, 0);
+        long complete = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Half written edge record
+            channel.truncate(complete - 3);
+        }
+
+        recover(directory).shortestPath("A", "B", session);
+        verify(session).send(String.valueOf(Integer.MAX_VALUE));
+        // The torn edge frame was cut off the file
+        assertEquals(complete - 23, Files.size(file));
+
+        Graph graph2 = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, graph2)) {
+            graph2.setMutationLog(log);
+            graph2.addEdge("A", "B", 5, session);
+        }
+        recover(directory).shortestPath("A", "B", session);
+        verify(session).send("5");
+    }
+
+    @Test
+    void batchIsRecoveredWholeOrNotAtAll() throws IOException {
+        Graph graph = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, graph)) {
+            graph.setMutationLog(log);
+            graph.addNode("A", session);
+        }
+        Path file = WriteAheadLog.segmentPath(directory, 0);
+        long beforeBatch = Files.size(file);
+        graph = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, graph)) {
+            graph.setMutationLog(log);
+            Batch batch = new Batch();
+            batch.addNode("B");
+            batch.addEdge("A", "B", 1);
+            graph.commit(batch, session);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(beforeBatch + 12);
+        }
+
+        // B was not recovered, so it can be added again
+        recover(directory).addNode("B", session);
+        verify(session, Mockito.times(2)).send(Graph.NODE_ADDED);
+    }
+
+    @Test
+    void periodicSyncAcknowledgesOnceWritten() throws IOException {
+        Graph graph = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 50, graph)) {
+            graph.setMutationLog(log);
+            for (int i = 0; i < 1000; i++) {
+                graph.addNode("N" + i, session);
+            }
+        }
+        Graph recovered = recover(directory);
+        recovered.addNode("N999", session);
+        verify(session).send(Graph.ERROR_NODE_ALREADY_EXISTS);
+    }
+
+    @Test
+    void refusesMutationsOnceTheLogFailed() throws IOException {
+        Graph graph = new Graph();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, 64, graph, 0)) {
+            graph.setMutationLog(log);
+            for (int i = 0; log.position() + WriteAheadLog.FILE_HEADER_SIZE < 64; i++) {
+                graph.addNode("N" + i, session);
+            }
+            // The next segment cannot be created, so the next write fails
+            Files.createFile(WriteAheadLog.segmentPath(directory, log.position()));
+            graph.addNode("LOST", session);
+            assertTrue(log.isFailed());
+            graph.addNode("REFUSED", session);
+            verify(session, Mockito.times(2)).send(Graph.ERROR_MUTATION_LOG_FAILED);
+        }
+
+        Session replies = Mockito.mock(Session.class);
+        graph.shortestPath("REFUSED", "REFUSED", replies);
+        verify(replies).send(Graph.ERROR_NODE_NOT_FOUND);
+    }
+
+    @Test
+    void rotatesSegmentsAndDeletesCoveredOnes() throws IOException {
+        Graph graph = new Graph();
+        long covered;
+        try (WriteAheadLog log = WriteAheadLog.open(directory, 0, 64, graph, 0)) {
+            graph.setMutationLog(log);
+            for (int i = 0; i < 20; i++) {
+                graph.addNode("N" + i, session);
+            }
+            covered = log.position();
+            graph.addNode("LAST", session);
+            log.deleteSegmentsBefore(covered);
+            graph.addNode("AFTER", session);
+        }
+        assertFalse(Files.exists(WriteAheadLog.segmentPath(directory, 0)));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+
+        // Replaying from the covered position only restores what came after it
+        Graph recovered = new Graph();
+        WriteAheadLog.open(directory, 0, 64, recovered, covered).close();
+        Session replies = Mockito.mock(Session.class);
+        recovered.addNode("N0", replies);
+        recovered.addNode("LAST", replies);
+        recovered.addNode("AFTER", replies);
+        verify(replies).send(Graph.NODE_ADDED);
+        verify(replies, Mockito.times(2)).send(Graph.ERROR_NODE_ALREADY_EXISTS);
+    }
+
+    @Test
+    void rejectsFilesThatAreNotLogs() throws IOException {
+        Files.write(WriteAheadLog.segmentPath(directory, 0), "ADD NODE A\n".getBytes());
+        assertThrows(IOException.class, () -> WriteAheadLog.open(directory, 0, new Graph()));
+    }
+
+    private static Graph recover(Path directory) throws IOException {
+        Graph graph = new Graph();
+        WriteAheadLog.open(directory, 0, graph).close();
+        return graph;
+    }
+}
@@ -0,0 +1,229 @@
+package uphill.backend.challenge.replication;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import uphill.backend.challenge.Server;
+import uphill.backend.challenge.handlers.CommandHandler;
+import uphill.backend.challenge.metrics.ReplicationMetrics;
+import uphill.backend.challenge.model.Batch;
+import uphill.backend.challenge.model.Graph;
+import uphill.backend.challenge.model.GraphRegistry;
+import uphill.backend.challenge.model.MutationLog;
+import uphill.backend.challenge.model.Session;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+
+class ReplicationTest {
+
+    private static final long AWAIT_MILLIS = 30_000;
+
+    @Test
+    void backlogKeepsTheLatestRecordsWithinItsSize() throws Exception {
+        ReplicationLog log = new ReplicationLog(MutationLog.NONE, 200);
+        for (int i = 0; i < 20; i++) {
+            log.nodeAdded("N" + i);
+        }
+        assertEquals(20, log.sequence());
+        assertNull(log.recordsAfter(0, 10, 0));
+        assertNull(log.recordsAfter(21, 10, 0));
+        assertTrue(log.recordsAfter(20, 10, 10).isEmpty());
+
+        List<byte[]> latest = log.recordsAfter(18, 10, 0);
+        assertEquals(2, latest.size());
+        Batch batch = new Batch();
+        for (byte[] record : latest) {
+            ReplicationLog.readRecord(record, record.length, batch);
+        }
+        assertEquals(2, batch.size());
+        assertEquals(Batch.ADD_NODE, batch.kind(1));
+        assertEquals("N19", batch.source(1));
+    }
+
+    @Test
+    @Timeout(60)
+    void followerLoadsSnapshotThenAppliesStreamedMutations() throws Exception {
+        Graph leaderGraph = new Graph();
+        ReplicationLog log = new ReplicationLog(MutationLog.NONE);
+        leaderGraph.setMutationLog(log);
+        Session session = Mockito.mock(Session.class);
+        leaderGraph.addNode("A", session);
+        leaderGraph.addNode("B", session);
+        leaderGraph.addEdge("A", "B", 5, session);
+
+        ReplicationMetrics leaderMetrics = ReplicationMetrics.leader(log::sequence);
+        ReplicationMetrics followerMetrics = ReplicationMetrics.follower();
+        GraphRegistry replicas = new GraphRegistry(new Graph(), name -> new Graph(), 0);
+        try (ReplicationLeader leader = new ReplicationLeader(0, leaderGraph, log, leaderMetrics)) {
+            ReplicationFollower follower = new ReplicationFollower("localhost", leader.getPort(), replicas,
+                    Graph::new, followerMetrics);
+            try {
+                await(() -> "5".equals(shortestPath(replicas, "A", "B")));
+
+                Batch batch = new Batch();
+                batch.addNode("C");
+                batch.addEdge("B", "C", 2);
+                leaderGraph.commit(batch, session);
+                leaderGraph.removeEdge("A", "B", session);
+                leaderGraph.addEdge("A", "B", 1, session);
+                await(() -> "3".equals(shortestPath(replicas, "A", "C")));
+
+                await(() -> followerMetrics.getLagRecords() == 0 && leaderMetrics.getLagRecords() == 0);
+                assertEquals(6, log.sequence());
+            } finally {
+                follower.close();
+            }
+        }
+    }
+
+    @Test
+    @Timeout(120)
+    void followerProcessServesReadsOfLeaderProcess() throws Exception {
+        int leaderPort = freePort();
+        int replicationPort = freePort();
+        int followerPort = freePort();
+        List<Process> processes = new ArrayList<>();
+        try {
+            processes.add(startServer("--port", String.valueOf(leaderPort),
+                    "--replication-port", String.valueOf(replicationPort)));
+            processes.add(startServer("--port", String.valueOf(followerPort),
+                    "--replicate-from", "localhost:" + replicationPort));
+            try (Client leader = new Client(leaderPort); Client follower = new Client(followerPort)) {
+                assertEquals(Graph.NODE_ADDED, leader.send("ADD NODE A"));
+                assertEquals(Graph.NODE_ADDED, leader.send("ADD NODE B"));
+                assertEquals(Graph.EDGE_ADDED, leader.send("ADD EDGE A B 5"));
+                await(() -> "5".equals(follower.send("SHORTEST PATH A B")));
+
+                assertEquals(CommandHandler.ERROR_READ_ONLY_REPLICA, follower.send("ADD NODE C"));
+                assertEquals(CommandHandler.BATCH_STARTED, leader.send("BEGIN"));
+                // Queued into the batch without a reply
+                leader.write("ADD NODE C");
+                leader.write("ADD EDGE B C 1");
+                assertEquals(Graph.BATCH_COMMITTED + 2, leader.send("COMMIT"));
+                await(() -> "B,C".equals(follower.send("CLOSER THAN 10 A")));
+
+                List<String> stats = follower.sendForReport("STATS");
+                assertTrue(stats.stream().anyMatch(line -> line.startsWith("REPLICATION role=follower connected=1")),
+                        stats.toString());
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static String shortestPath(GraphRegistry graphs, String source, String destination) {
+        Session session = Mockito.mock(Session.class);
+        graphs.get(GraphRegistry.DEFAULT_GRAPH).getGraph().shortestPath(source, destination, session);
+        ArgumentCaptor<String> reply = ArgumentCaptor.forClass(String.class);
+        verify(session).send(reply.capture());
+        return reply.getValue();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met in time");
+            Thread.sleep(50);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Process startServer(String... options) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx256m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Server.class.getName());
+        command.add("--mode");
+        command.add("nio");
+        command.add("--stats-interval");
+        command.add("0");
+        command.addAll(List.of(options));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+    }
+
+    // Protocol client that waits for the server process to listen
+    private static final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final OutputStream out;
+
+        Client(int port) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+            Socket connected = null;
+            while (connected == null) {
+                try {
+                    connected = new Socket("localhost", port);
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    Thread.sleep(100);
+                }
+            }
+            socket = connected;
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = socket.getOutputStream();
+            assertTrue(reader.readLine().startsWith("HI, I AM "));
+            assertEquals("HI test", send("HI, I AM test"));
+        }
+
+        void write(String command) throws IOException {
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        String send(String command) {
+            try {
+                write(command);
+                return reader.readLine();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        List<String> sendForReport(String command) {
+            List<String> lines = new ArrayList<>();
+            lines.add(send(command));
+            while (!"END".equals(lines.get(lines.size() - 1))) {
+                try {
+                    lines.add(reader.readLine());
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+            return lines;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}